@@ -1,6 +1,9 @@
 package esprit.user.config;
 
+import esprit.user.entity.UserStatus;
 import esprit.user.service.JwtService;
+import esprit.user.service.TokenRevocationCache;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -10,6 +13,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.lang.NonNull;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -18,6 +22,7 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.Collection;
 
 @Component
 @RequiredArgsConstructor
@@ -26,6 +31,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final TokenRevocationCache tokenRevocationCache;
 
     @Override
     protected void doFilterInternal(
@@ -66,28 +72,35 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         jwt = authHeader.substring(7);
         try {
             log.debug("Processing JWT token for path: {}", path);
-            userEmail = jwtService.extractUsername(jwt);
+            // Une seule vérification de signature: sujet et claims viennent du même parsing
+            Claims claims = jwtService.parseToken(jwt);
+            userEmail = claims.getSubject();
             log.debug("Extracted username from JWT: {}", userEmail);
 
             Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 
             if (userEmail != null && authentication == null) {
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
-                log.debug("Loaded user details for: {}", userEmail);
-
-                if (jwtService.isTokenValid(jwt, userDetails)) {
-                    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userDetails,
-                            null,
-                            userDetails.getAuthorities()
-                    );
-                    authToken.setDetails(
-                            new WebAuthenticationDetailsSource().buildDetails(request)
-                    );
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                    log.debug("Successfully authenticated user: {}", userEmail);
+                JwtPrincipal principal = tokenRevocationCache.isReady() ? JwtPrincipal.fromClaims(claims) : null;
+
+                if (principal != null) {
+                    // Claims signés et valables pour la durée du token: pas de lecture de users
+                    if (principal.getStatus() == UserStatus.ACTIVE
+                            && !tokenRevocationCache.isRevoked(principal.getId(), claims.getIssuedAt())) {
+                        authenticate(request, principal, principal.getAuthorities());
+                        log.debug("Successfully authenticated user from token claims: {}", userEmail);
+                    } else {
+                        log.warn("JWT token revoked for user: {}", userEmail);
+                    }
                 } else {
-                    log.warn("JWT token is not valid for user: {}", userEmail);
+                    UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
+                    log.debug("Loaded user details for: {}", userEmail);
+
+                    if (jwtService.isTokenValid(jwt, userDetails)) {
+                        authenticate(request, userDetails, userDetails.getAuthorities());
+                        log.debug("Successfully authenticated user: {}", userEmail);
+                    } else {
+                        log.warn("JWT token is not valid for user: {}", userEmail);
+                    }
                 }
             }
         } catch (Exception e) {
@@ -96,4 +109,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         filterChain.doFilter(request, response);
     }
+
+    private void authenticate(HttpServletRequest request, Object principal,
+                              Collection<? extends GrantedAuthority> authorities) {
+        UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                principal,
+                null,
+                authorities
+        );
+        authToken.setDetails(
+                new WebAuthenticationDetailsSource().buildDetails(request)
+        );
+        SecurityContextHolder.getContext().setAuthentication(authToken);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,50 @@
+package esprit.user.config;
+
+import esprit.user.entity.UserStatus;
+import esprit.user.entity.UserType;
+import esprit.user.service.JwtService;
+import io.jsonwebtoken.Claims;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.security.Principal;
+import java.util.List;
+
+// Utilisateur authentifié d'après les claims du token, sans lecture de la table users.
+// Authentication.getName() rend l'email, comme avec l'entité User.
+@Getter
+@AllArgsConstructor
+public class JwtPrincipal implements Principal {
+
+    private final Long id;
+    private final String email;
+    private final UserType userType;
+    private final UserStatus status;
+
+    @Override
+    public String getName() {
+        return email;
+    }
+
+    // Même autorité que User.getAuthorities()
+    public List<GrantedAuthority> getAuthorities() {
+        return List.of(new SimpleGrantedAuthority("ROLE_" + userType.name()));
+    }
+
+    // null pour un token émis avant l'ajout des claims: le filtre relit alors l'utilisateur en base
+    public static JwtPrincipal fromClaims(Claims claims) {
+        Number id = claims.get(JwtService.CLAIM_USER_ID, Number.class);
+        String role = claims.get(JwtService.CLAIM_ROLE, String.class);
+        String status = claims.get(JwtService.CLAIM_STATUS, String.class);
+        if (id == null || role == null || status == null || claims.getSubject() == null) {
+            return null;
+        }
+        try {
+            return new JwtPrincipal(id.longValue(), claims.getSubject(), UserType.valueOf(role), UserStatus.valueOf(status));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
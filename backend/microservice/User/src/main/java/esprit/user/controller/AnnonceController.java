@@ -3,16 +3,21 @@ package esprit.user.controller;
 import esprit.user.dto.AnnonceDto.*;
 import esprit.user.entity.Annonce;
 import esprit.user.service.AnnonceService;
+import esprit.user.service.FavoriService;
+import esprit.user.service.SearchQuotaLimiter;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -24,11 +29,14 @@ import java.util.Map;
 public class AnnonceController {
 
     private final AnnonceService annonceService;
+    private final FavoriService favoriService;
+    private final SearchQuotaLimiter searchQuotaLimiter;
 
     // GET /api/annonces - Recherche d'annonces avec filtres
     @GetMapping
     public ResponseEntity<?> searchAnnonces(
             @RequestParam(required = false) String titre,
+            @RequestParam(required = false) String motsCles,
             @RequestParam(required = false) Annonce.TypeBien typeBien,
             @RequestParam(required = false) Annonce.TypeTransaction typeTransaction,
             @RequestParam(required = false) String ville,
@@ -46,11 +54,15 @@ public class AnnonceController {
             @RequestParam(defaultValue = "dateCreation") String sortBy,
             @RequestParam(defaultValue = "desc") String sortDirection,
             @RequestParam(defaultValue = "0") int page,
-            @RequestParam(defaultValue = "20") int size) {
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean scroll,
+            @RequestParam(required = false) String cursor,
+            Authentication authentication) {
         
         try {
             AnnonceSearchDto searchDto = new AnnonceSearchDto();
             searchDto.setTitre(titre);
+            searchDto.setMotsCles(motsCles);
             searchDto.setTypeBien(typeBien);
             searchDto.setTypeTransaction(typeTransaction);
             searchDto.setVille(ville);
@@ -77,7 +89,24 @@ public class AnnonceController {
             searchDto.setPage(page);
             searchDto.setSize(size);
             
-            Page<AnnonceSummaryDto> result = annonceService.searchAnnonces(searchDto);
+            // Quota quotidien des clients abonnés: chaque jeu de filtres distinct compte une fois, quelle que soit
+            // la page ou le curseur demandé; les pages suivantes d'une recherche déjà payée sont libres
+            if (!searchQuotaLimiter.tryAcquire(authentication, searchDto)) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(searchQuotaLimiter.secondsUntilReset()))
+                    .body(Map.of("error", "Quota de recherches quotidien atteint"));
+            }
+            
+            // Mode curseur (scroll infini): ni offset ni totalElements
+            if (scroll || cursor != null) {
+                AnnonceScrollDto slice = annonceService.scrollAnnonces(searchDto, cursor);
+                Map<String, Object> body = toScrollBody(slice);
+                body.put("facettes", slice.getFacettes());
+                return ResponseEntity.ok(body);
+            }
+            
+            AnnonceSearchResultDto searchResult = annonceService.searchAnnonces(searchDto);
+            Page<AnnonceSummaryDto> result = searchResult.getPage();
             
             return ResponseEntity.ok(Map.of(
                 "content", result.getContent(),
@@ -86,9 +115,13 @@ public class AnnonceController {
                 "totalElements", result.getTotalElements(),
                 "size", result.getSize(),
                 "hasNext", result.hasNext(),
-                "hasPrevious", result.hasPrevious()
+                "hasPrevious", result.hasPrevious(),
+                "facettes", searchResult.getFacettes()
             ));
             
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode())
+                .body(Map.of("error", e.getReason()));
         } catch (Exception e) {
             log.error("Erreur lors de la recherche d'annonces: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -174,14 +207,49 @@ public class AnnonceController {
         }
     }
 
+    // POST /api/annonces/{id}/favoris - Ajouter aux favoris (sans effet si déjà présent)
+    @PostMapping("/{id}/favoris")
+    public ResponseEntity<?> addFavori(@PathVariable Long id, Authentication authentication) {
+        try {
+            return ResponseEntity.ok(favoriService.addFavori(id, authentication.getName()));
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode())
+                .body(Map.of("error", e.getReason()));
+        } catch (Exception e) {
+            log.error("Erreur lors de l'ajout de l'annonce {} aux favoris: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Erreur interne du serveur"));
+        }
+    }
+
+    // DELETE /api/annonces/{id}/favoris - Retirer des favoris (sans effet si absent)
+    @DeleteMapping("/{id}/favoris")
+    public ResponseEntity<?> removeFavori(@PathVariable Long id, Authentication authentication) {
+        try {
+            return ResponseEntity.ok(favoriService.removeFavori(id, authentication.getName()));
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode())
+                .body(Map.of("error", e.getReason()));
+        } catch (Exception e) {
+            log.error("Erreur lors du retrait de l'annonce {} des favoris: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Erreur interne du serveur"));
+        }
+    }
+
     // GET /api/annonces/me - Obtenir mes annonces
     @GetMapping("/me")
     @PreAuthorize("hasRole('CLIENT_ABONNE') or hasRole('AGENCE_IMMOBILIERE') or hasRole('ADMINISTRATEUR')")
     public ResponseEntity<?> getMyAnnonces(@RequestParam(defaultValue = "0") int page,
                                           @RequestParam(defaultValue = "10") int size,
+                                          @RequestParam(defaultValue = "false") boolean scroll,
+                                          @RequestParam(required = false) String cursor,
                                           Authentication authentication) {
         try {
             String userEmail = authentication.getName();
+            if (scroll || cursor != null) {
+                return ResponseEntity.ok(toScrollBody(annonceService.scrollMyAnnonces(userEmail, cursor, size)));
+            }
             Page<AnnonceSummaryDto> result = annonceService.getMyAnnonces(userEmail, page, size);
             
             return ResponseEntity.ok(Map.of(
@@ -193,6 +261,9 @@ public class AnnonceController {
                 "hasNext", result.hasNext(),
                 "hasPrevious", result.hasPrevious()
             ));
+        } catch (ResponseStatusException e) {
+            return ResponseEntity.status(e.getStatusCode())
+                .body(Map.of("error", e.getReason()));
         } catch (Exception e) {
             log.error("Erreur lors de la récupération des annonces utilisateur: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -289,4 +360,14 @@ public class AnnonceController {
                 .body(Map.of("error", "Erreur interne du serveur"));
         }
     }
-}
\ No newline at end of file
+
+    // nextCursor vaut null sur la dernière page: Map.of() ne l'accepte pas
+    private Map<String, Object> toScrollBody(AnnonceScrollDto slice) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("content", slice.getContent());
+        body.put("size", slice.getContent().size());
+        body.put("hasNext", slice.isHasNext());
+        body.put("nextCursor", slice.getNextCursor());
+        return body;
+    }
+}
@@ -7,6 +7,7 @@ import esprit.user.service.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -14,6 +15,7 @@ import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.util.Map;
 import java.util.Optional;
@@ -87,6 +89,12 @@ public class AuthController {
             log.error("Tentative de connexion avec des identifiants incorrects pour: {}", loginDto.getEmail());
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                 .body(Map.of("error", "Email ou mot de passe incorrect"));
+        } catch (ResponseStatusException e) {
+            // File de hachage pleine (PasswordHashingService): le client peut réessayer
+            log.warn("Connexion refusée, hachage surchargé: {}", loginDto.getEmail());
+            return ResponseEntity.status(e.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getReason()));
         } catch (Exception e) {
             log.error("Erreur lors de la connexion: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
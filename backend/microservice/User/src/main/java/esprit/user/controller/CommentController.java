@@ -1,5 +1,6 @@
 package esprit.user.controller;
 
+import esprit.user.dto.AnnonceDto.AnnonceRatingStatsDto;
 import esprit.user.dto.CommentCreateRequest;
 import esprit.user.dto.CommentResponse;
 import esprit.user.service.CommentService;
@@ -94,12 +95,13 @@ public class CommentController {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            Double averageRating = commentService.getAverageRating(annonceId);
-            Long commentCount = commentService.getCommentCount(annonceId);
+            AnnonceRatingStatsDto stats = commentService.getRatingStats(annonceId);
             
             response.put("success", true);
-            response.put("averageRating", averageRating);
-            response.put("commentCount", commentCount);
+            response.put("averageRating", stats.getAverageRating() != null ? stats.getAverageRating() : 0.0);
+            response.put("commentCount", stats.getCommentCount());
+            response.put("ratingCount", stats.getRatingCount());
+            response.put("histogram", stats.getHistogram());
             
             return ResponseEntity.ok(response);
             
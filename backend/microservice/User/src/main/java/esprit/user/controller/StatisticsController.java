@@ -1,14 +1,21 @@
 package esprit.user.controller;
 
 import esprit.user.dto.StatisticsDto;
+import esprit.user.service.AnnonceExpirySweeper;
+import esprit.user.service.PlatformVisitHistory;
+import esprit.user.service.PlatformVisitWriter;
 import esprit.user.service.StatisticsService;
+import esprit.user.service.TopPagesTracker;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.Map;
 
 @RestController
@@ -18,6 +25,10 @@ import java.util.Map;
 public class StatisticsController {
 
     private final StatisticsService statisticsService;
+    private final PlatformVisitWriter platformVisitWriter;
+    private final PlatformVisitHistory platformVisitHistory;
+    private final TopPagesTracker topPagesTracker;
+    private final AnnonceExpirySweeper annonceExpirySweeper;
 
     @GetMapping
     @PreAuthorize("hasRole('ADMINISTRATEUR')")
@@ -58,6 +69,48 @@ public class StatisticsController {
         }
     }
 
+    // Balayage des annonces expirées: passages, tranches, filigrane et dernier passage
+    @GetMapping("/annonces/expiry")
+    @PreAuthorize("hasRole('ADMINISTRATEUR')")
+    public ResponseEntity<?> getAnnonceExpiryMetrics() {
+        return ResponseEntity.ok(annonceExpirySweeper.metrics());
+    }
+
+    // File d'écriture des visites: acceptées, écartées, écrites, en attente
+    @GetMapping("/visits/ingestion")
+    @PreAuthorize("hasRole('ADMINISTRATEUR')")
+    public ResponseEntity<?> getVisitIngestionMetrics() {
+        return ResponseEntity.ok(platformVisitWriter.metrics());
+    }
+
+    // Historique sur une plage quelconque: brut pour les jours récents, agrégats au-delà de la rétention
+    @GetMapping("/visits/history")
+    @PreAuthorize("hasRole('ADMINISTRATEUR')")
+    public ResponseEntity<?> getVisitHistory(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (from.isAfter(to) || ChronoUnit.DAYS.between(from, to) > 366) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Plage de dates invalide (366 jours au plus)"));
+        }
+        try {
+            return ResponseEntity.ok(Map.of(
+                "totalVisits", platformVisitHistory.countVisits(from, to),
+                "dailyVisits", platformVisitHistory.dailyVisits(from, to),
+                "mostVisitedPages", topPagesTracker.topPages(from, to, 10)
+                    .orElseGet(() -> platformVisitHistory.mostVisitedPages(from, to, 10))
+            ));
+        } catch (Exception e) {
+            log.error("Erreur lors de la récupération de l'historique des visites: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(Map.of("error", "Erreur interne du serveur"));
+        }
+    }
+
+    @GetMapping("/visits/hourly")
+    @PreAuthorize("hasRole('ADMINISTRATEUR')")
+    public ResponseEntity<?> getHourlyVisits(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return ResponseEntity.ok(platformVisitHistory.hourlyVisits(date));
+    }
+
     @GetMapping("/dashboard")
     @PreAuthorize("hasRole('ADMINISTRATEUR') or hasRole('AGENCE_IMMOBILIERE')")
     public ResponseEntity<?> getDashboardData() {
@@ -5,10 +5,12 @@ import jakarta.validation.constraints.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import org.springframework.data.domain.Page;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 public class AnnonceDto {
 
@@ -166,6 +168,9 @@ public class AnnonceDto {
         private Annonce.StatusAnnonce status;
         private String createurNom;
         private String createurType;
+        // null sans note
+        private Double noteMoyenne;
+        private Long nombreNotes;
     }
 
     @Data
@@ -173,6 +178,7 @@ public class AnnonceDto {
     @AllArgsConstructor
     public static class AnnonceSearchDto {
         private String titre;
+        private String motsCles; // recherche dans le titre et la description
         private Annonce.TypeBien typeBien;
         private Annonce.TypeTransaction typeTransaction;
         private String ville;
@@ -194,6 +200,35 @@ public class AnnonceDto {
         private int size = 20;
     }
 
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AnnonceSearchResultDto {
+        private Page<AnnonceSummaryDto> page;
+        // ex: {"equipements": {"piscine": 123}, "typeBien": {"VILLA": 40}}; vide si une fourchette est renseignée
+        private Map<String, Map<String, Long>> facettes;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FavoriStatusDto {
+        private Long annonceId;
+        private boolean favori;
+        private long favoris;
+    }
+
+    // Page en mode curseur: pas de COUNT(*), seulement la position suivante
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AnnonceScrollDto {
+        private List<AnnonceSummaryDto> content;
+        private String nextCursor;
+        private boolean hasNext;
+        private Map<String, Map<String, Long>> facettes;
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -208,4 +243,15 @@ public class AnnonceDto {
         private BigDecimal prixMoyen;
         private int surfaceMoyenne;
     }
-}
\ No newline at end of file
+
+    // Avis d'une annonce: commentaires (réponses comprises) et histogramme des notes 1 à 5 (réponses exclues)
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class AnnonceRatingStatsDto {
+        private long commentCount;
+        private long ratingCount;
+        private Double averageRating;
+        private Map<Integer, Long> histogram;
+    }
+}
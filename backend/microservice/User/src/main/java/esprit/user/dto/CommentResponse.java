@@ -2,6 +2,7 @@ package esprit.user.dto;
 
 import esprit.user.entity.Comment;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -22,19 +23,26 @@ public class CommentResponse {
     public CommentResponse() {}
     
     public CommentResponse(Comment comment) {
+        this(comment, comment.getAnnonce().getId(),
+            comment.getParentComment() != null ? comment.getParentComment().getId() : null);
+        this.replies = comment.getReplies().stream()
+            .map(CommentResponse::new)
+            .collect(Collectors.toList());
+    }
+    
+    // Sans parcourir les associations paresseuses: l'auteur doit être chargé, les réponses sont rattachées par l'appelant
+    public CommentResponse(Comment comment, Long annonceId, Long parentCommentId) {
         this.id = comment.getId();
         this.content = comment.getContent();
         this.rating = comment.getRating();
-        this.annonceId = comment.getAnnonce().getId();
+        this.annonceId = annonceId;
         this.userId = comment.getUser().getId();
         this.userName = comment.getUser().getPrenom() + " " + comment.getUser().getNom();
         this.userType = comment.getUser().getUserType().toString();
         this.createdAt = comment.getCreatedAt();
         this.updatedAt = comment.getUpdatedAt();
-        this.parentCommentId = comment.getParentComment() != null ? comment.getParentComment().getId() : null;
-        this.replies = comment.getReplies().stream()
-            .map(CommentResponse::new)
-            .collect(Collectors.toList());
+        this.parentCommentId = parentCommentId;
+        this.replies = new ArrayList<>();
     }
     
     // Getters and Setters
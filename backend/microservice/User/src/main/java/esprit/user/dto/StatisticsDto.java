@@ -24,6 +24,9 @@ public class StatisticsDto {
     private long totalVisitsThisWeek;
     private long totalVisitsThisMonth;
     private long uniqueVisitorsToday;
+    private long uniqueVisitorsThisWeek;
+    private long uniqueVisitorsThisMonth;
+    private long uniqueSessionsToday;
     private Double averageVisitDuration;
     private Map<LocalDate, Long> dailyVisits;
     private Map<String, Long> userTypeDistribution;
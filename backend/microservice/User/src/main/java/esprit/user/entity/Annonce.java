@@ -5,7 +5,10 @@ import jakarta.validation.constraints.*;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import esprit.user.service.TextNormalizer;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -15,7 +18,14 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "annonces")
+@Table(name = "annonces", indexes = {
+    @Index(name = "idx_annonces_status_date", columnList = "status, date_creation"),
+    @Index(name = "idx_annonces_status_prix", columnList = "status, prix"),
+    @Index(name = "idx_annonces_status_surface", columnList = "status, surface"),
+    @Index(name = "idx_annonces_ville_normalisee", columnList = "ville_normalisee"),
+    @Index(name = "idx_annonces_user_status_counters", columnList = "user_id, status, vues, favoris"),
+    @Index(name = "idx_annonces_status_expiration", columnList = "status, date_expiration")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -59,6 +69,12 @@ public class Annonce {
     @Column(nullable = false, length = 100)
     private String ville;
 
+    // Ville sans casse, accents ni espaces de bord (TextNormalizer.villeKey), recalculée à chaque écriture:
+    // le filtre ville de la recherche compare un préfixe sur cette colonne. null jusqu'au rattrapage au démarrage
+    @Column(name = "ville_normalisee", length = 100)
+    @JsonIgnore
+    private String villeNormalisee;
+
     @NotBlank(message = "Le code postal est obligatoire")
     @Pattern(regexp = "\\d{4}", message = "Le code postal doit contenir 4 chiffres")
     @Column(nullable = false, length = 4)
@@ -99,7 +115,9 @@ public class Annonce {
     private StatusAnnonce status = StatusAnnonce.ACTIVE;
 
     // Stockage des URLs des images
+    // Sur une page de résultats, les images de toutes les annonces sont chargées en une requête IN
     @ElementCollection
+    @BatchSize(size = 100)
     @CollectionTable(name = "annonce_images", joinColumns = @JoinColumn(name = "annonce_id"))
     @Column(name = "image_url")
     private List<String> images = new ArrayList<>();
@@ -125,12 +143,35 @@ public class Annonce {
     @Column(length = 150)
     private String emailContact;
 
-    @Column(nullable = true)
+    // Écrit uniquement par UPDATE relatif (AnnonceCounterBuffer): une sauvegarde de l'entité ne doit pas l'écraser
+    @Column(nullable = true, updatable = false)
     private Integer vues = 0;
 
-    @Column(nullable = true)
+    // Idem: deltas des ajouts/retraits de favoris écrits par AnnonceCounterBuffer
+    @Column(nullable = true, updatable = false)
     private Integer favoris = 0;
 
+    // Agrégats des avis, écrits uniquement par UPDATE relatif (AnnonceRatingAggregates) dans la transaction du commentaire.
+    // nombreAvis compte tous les commentaires; notes1 à notes5 l'histogramme des notes, réponses exclues.
+    // null tant que le rattrapage au démarrage n'est pas passé sur la ligne
+    @Column(name = "nombre_avis", nullable = true, updatable = false)
+    private Integer nombreAvis = 0;
+
+    @Column(name = "notes_1", nullable = true, updatable = false)
+    private Integer notes1 = 0;
+
+    @Column(name = "notes_2", nullable = true, updatable = false)
+    private Integer notes2 = 0;
+
+    @Column(name = "notes_3", nullable = true, updatable = false)
+    private Integer notes3 = 0;
+
+    @Column(name = "notes_4", nullable = true, updatable = false)
+    private Integer notes4 = 0;
+
+    @Column(name = "notes_5", nullable = true, updatable = false)
+    private Integer notes5 = 0;
+
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime dateCreation;
@@ -142,6 +183,12 @@ public class Annonce {
     @Column(nullable = true)
     private LocalDateTime dateExpiration;
 
+    @PrePersist
+    @PreUpdate
+    void normaliserVille() {
+        this.villeNormalisee = ville != null ? TextNormalizer.villeKey(ville) : null;
+    }
+
     // Méthodes utilitaires
     public void incrementerVues() {
         this.vues = (this.vues == null) ? 1 : this.vues + 1;
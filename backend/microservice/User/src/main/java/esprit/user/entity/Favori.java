@@ -0,0 +1,43 @@
+package esprit.user.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+// Une ligne par couple (utilisateur, annonce): la contrainte unique rend l'ajout idempotent
+@Entity
+@Table(name = "favoris", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_favoris_user_annonce", columnNames = {"user_id", "annonce_id"})
+}, indexes = {
+    @Index(name = "idx_favoris_annonce", columnList = "annonce_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Favori {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "annonce_id", nullable = false)
+    private Annonce annonce;
+
+    @CreationTimestamp
+    @Column(name = "date_ajout", nullable = false, updatable = false)
+    private LocalDateTime dateAjout;
+
+    public Favori(User user, Annonce annonce) {
+        this.user = user;
+        this.annonce = annonce;
+    }
+}
@@ -9,7 +9,11 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "platform_visits")
+@Table(name = "platform_visits", indexes = {
+    @Index(name = "idx_platform_visits_date_page", columnList = "visit_date, page_url"),
+    @Index(name = "idx_platform_visits_date_ip", columnList = "visit_date, ip_address"),
+    @Index(name = "idx_platform_visits_key", columnList = "visit_key")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -19,6 +23,10 @@ public class PlatformVisit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Clé attribuée à l'enregistrement, avant l'écriture différée: sert à rattacher la durée à la visite
+    @Column(name = "visit_key", length = 36)
+    private String visitKey;
+
     @Column(name = "visit_date", nullable = false)
     private LocalDate visitDate = LocalDate.now();
 
@@ -0,0 +1,38 @@
+package esprit.user.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// Visites d'une heure une fois les lignes brutes de platform_visits purgées
+@Entity
+@Table(name = "visit_hourly_aggregates", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_visit_hourly_date_hour", columnNames = {"visit_date", "visit_hour"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VisitHourlyAggregate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "visit_date", nullable = false)
+    private LocalDate visitDate;
+
+    @Column(name = "visit_hour", nullable = false)
+    private Integer visitHour;
+
+    @Column(nullable = false)
+    private Long visits;
+
+    @Column(name = "duration_sum", nullable = false)
+    private Long durationSum;
+
+    @Column(name = "duration_count", nullable = false)
+    private Long durationCount;
+}
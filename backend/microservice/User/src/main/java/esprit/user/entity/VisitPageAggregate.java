@@ -0,0 +1,32 @@
+package esprit.user.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// Visites par page et par jour une fois les lignes brutes de platform_visits purgées
+@Entity
+@Table(name = "visit_page_aggregates", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_visit_pages_date_page", columnNames = {"visit_date", "page_url"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VisitPageAggregate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "visit_date", nullable = false)
+    private LocalDate visitDate;
+
+    @Column(name = "page_url", nullable = false)
+    private String pageUrl;
+
+    @Column(nullable = false)
+    private Long visits;
+}
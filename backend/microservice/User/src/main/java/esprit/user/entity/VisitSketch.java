@@ -0,0 +1,50 @@
+package esprit.user.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Registres HyperLogLog d'une journée (visiteurs distincts par IP ou par session), un octet par registre
+@Entity
+@Table(name = "visit_sketches", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_visit_sketches_date_kind", columnNames = {"visit_date", "kind"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VisitSketch {
+
+    public enum Kind {
+        IP,
+        SESSION
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "visit_date", nullable = false)
+    private LocalDate visitDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Kind kind;
+
+    @Lob
+    @Column(nullable = false, length = 16384)
+    private byte[] registers;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    public VisitSketch(LocalDate visitDate, Kind kind, byte[] registers) {
+        this.visitDate = visitDate;
+        this.kind = kind;
+        this.registers = registers;
+        this.updatedAt = LocalDateTime.now();
+    }
+}
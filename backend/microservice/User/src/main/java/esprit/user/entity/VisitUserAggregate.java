@@ -0,0 +1,32 @@
+package esprit.user.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+// Visites par utilisateur connecté et par jour une fois les lignes brutes de platform_visits purgées
+@Entity
+@Table(name = "visit_user_aggregates", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_visit_users_user_date", columnNames = {"user_id", "visit_date"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VisitUserAggregate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "visit_date", nullable = false)
+    private LocalDate visitDate;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long visits;
+}
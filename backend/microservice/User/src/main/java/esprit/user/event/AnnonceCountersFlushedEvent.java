@@ -0,0 +1,18 @@
+package esprit.user.event;
+
+import esprit.user.service.AnnonceCounterBuffer;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+// Publié par AnnonceCounterBuffer après chaque lot écrit en base: id d'annonce -> delta appliqué
+@Getter
+@AllArgsConstructor
+public class AnnonceCountersFlushedEvent {
+
+    private final AnnonceCounterBuffer.Counter counter;
+    private final Map<Long, Long> deltas;
+    // Numéro du lot, croissant dans l'ordre des commits (voir AnnonceCounterBuffer.readConsistent)
+    private final long sequence;
+}
@@ -0,0 +1,46 @@
+package esprit.user.event;
+
+import esprit.user.entity.Annonce;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Publié par AnnonceService, consommé après commit par les index et caches en mémoire
+@Getter
+@AllArgsConstructor
+public class AnnonceEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        // Passée ACTIVE -> EXPIRE par AnnonceExpirySweeper, sans entité chargée
+        EXPIRED,
+        DELETED
+    }
+
+    private final Type type;
+    private final Long annonceId;
+    private final Long createurId;
+
+    // null pour EXPIRED et DELETED
+    private final Annonce annonce;
+
+    public static AnnonceEvent created(Annonce annonce) {
+        return new AnnonceEvent(Type.CREATED, annonce.getId(), createurIdOf(annonce), annonce);
+    }
+
+    public static AnnonceEvent updated(Annonce annonce) {
+        return new AnnonceEvent(Type.UPDATED, annonce.getId(), createurIdOf(annonce), annonce);
+    }
+
+    public static AnnonceEvent expired(Long annonceId, Long createurId) {
+        return new AnnonceEvent(Type.EXPIRED, annonceId, createurId, null);
+    }
+
+    public static AnnonceEvent deleted(Annonce annonce) {
+        return new AnnonceEvent(Type.DELETED, annonce.getId(), createurIdOf(annonce), null);
+    }
+
+    private static Long createurIdOf(Annonce annonce) {
+        return annonce.getCreateur() != null ? annonce.getCreateur().getId() : null;
+    }
+}
@@ -0,0 +1,39 @@
+package esprit.user.event;
+
+import esprit.user.entity.PlatformVisit;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+// Publié par PlatformVisitWriter (visite écrite, puis durée rattachée par visit_key),
+// consommé par les agrégats de statistiques et les esquisses de visiteurs
+@Getter
+@AllArgsConstructor
+public class PlatformVisitEvent {
+
+    public enum Type {
+        RECORDED,
+        DURATION_UPDATED
+    }
+
+    private final Type type;
+    private final LocalDate visitDate;
+    private final String ipAddress;
+    private final String sessionId;
+    private final String pageUrl;
+
+    // Durées avant/après pour DURATION_UPDATED (previousDuration null si la visite n'en avait pas)
+    private final Long previousDuration;
+    private final Long duration;
+
+    public static PlatformVisitEvent recorded(PlatformVisit visit) {
+        return new PlatformVisitEvent(Type.RECORDED, visit.getVisitDate(), visit.getIpAddress(),
+            visit.getSessionId(), visit.getPageUrl(), null, visit.getDurationSeconds());
+    }
+
+    public static PlatformVisitEvent durationUpdated(PlatformVisit visit, Long previousDuration) {
+        return new PlatformVisitEvent(Type.DURATION_UPDATED, visit.getVisitDate(), visit.getIpAddress(),
+            visit.getSessionId(), visit.getPageUrl(), previousDuration, visit.getDurationSeconds());
+    }
+}
@@ -0,0 +1,50 @@
+package esprit.user.event;
+
+import esprit.user.entity.AgenceImmobiliere;
+import esprit.user.entity.User;
+import esprit.user.entity.UserStatus;
+import esprit.user.entity.UserType;
+import jakarta.persistence.DiscriminatorValue;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Publié par UserService, consommé après commit par les agrégats de statistiques
+@Getter
+@AllArgsConstructor
+public class UserEvent {
+
+    public enum Type {
+        REGISTERED,
+        STATUS_CHANGED,
+        AGENCY_VERIFIED
+    }
+
+    private final Type type;
+    private final Long userId;
+    private final UserType userType;
+
+    // null pour REGISTERED
+    private final UserStatus previousStatus;
+    private final UserStatus status;
+
+    public static UserEvent registered(User user) {
+        return new UserEvent(Type.REGISTERED, user.getId(), userTypeOf(user), null, user.getStatus());
+    }
+
+    public static UserEvent statusChanged(User user, UserStatus previousStatus) {
+        return new UserEvent(Type.STATUS_CHANGED, user.getId(), userTypeOf(user), previousStatus, user.getStatus());
+    }
+
+    public static UserEvent agencyVerified(AgenceImmobiliere agence) {
+        return new UserEvent(Type.AGENCY_VERIFIED, agence.getId(), UserType.AGENCE_IMMOBILIERE, agence.getStatus(), agence.getStatus());
+    }
+
+    // user_type n'est pas insérable: sur une entité qui vient d'être créée, seul le discriminant de la classe le donne
+    private static UserType userTypeOf(User user) {
+        if (user.getUserType() != null) {
+            return user.getUserType();
+        }
+        DiscriminatorValue discriminator = user.getClass().getAnnotation(DiscriminatorValue.class);
+        return discriminator != null ? UserType.valueOf(discriminator.value()) : UserType.UTILISATEUR;
+    }
+}
@@ -30,6 +30,12 @@ public interface AgenceImmobiliereRepository extends JpaRepository<AgenceImmobil
     @Query("SELECT SUM(a.currentAnnonces) FROM AgenceImmobiliere a WHERE a.isVerified = true")
     Long getTotalActiveAnnonces();
 
+    @Query("SELECT a.isVerified, COUNT(a) FROM AgenceImmobiliere a GROUP BY a.isVerified")
+    List<Object[]> countByVerified();
+
+    @Query("SELECT a.id FROM AgenceImmobiliere a WHERE a.isVerified = true")
+    List<Long> findVerifiedIds();
+
     @Query("SELECT a FROM AgenceImmobiliere a WHERE a.currentAnnonces >= a.maxAnnonces")
     List<AgenceImmobiliere> findAgenciesAtCapacity();
 
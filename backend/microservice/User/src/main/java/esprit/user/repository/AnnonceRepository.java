@@ -2,16 +2,22 @@ package esprit.user.repository;
 
 import esprit.user.entity.Annonce;
 import esprit.user.entity.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,7 +27,13 @@ public interface AnnonceRepository extends JpaRepository<Annonce, Long>, JpaSpec
     // Trouver toutes les annonces d'un utilisateur
     Page<Annonce> findByCreateurOrderByDateCreationDesc(User createur, Pageable pageable);
     
+    // Recherche multi-critères (AnnonceSpecifications): le créateur est joint dans la même requête
+    @Override
+    @EntityGraph(attributePaths = "createur")
+    Page<Annonce> findAll(Specification<Annonce> spec, Pageable pageable);
+
     // Trouver toutes les annonces actives
+    @EntityGraph(attributePaths = "createur")
     Page<Annonce> findByStatusOrderByDateCreationDesc(Annonce.StatusAnnonce status, Pageable pageable);
 
     // Trouver les annonces par ville
@@ -48,72 +60,113 @@ public interface AnnonceRepository extends JpaRepository<Annonce, Long>, JpaSpec
     Page<Annonce> findByTitreContainingIgnoreCaseAndStatusOrderByDateCreationDesc(
         String titre, Annonce.StatusAnnonce status, Pageable pageable);
 
-    // Recherche complexe avec Query personnalisée
-    @Query("SELECT a FROM Annonce a WHERE " +
-           "(:titre IS NULL OR LOWER(a.titre) LIKE LOWER(CONCAT('%', :titre, '%'))) AND " +
-           "(:ville IS NULL OR LOWER(a.ville) LIKE LOWER(CONCAT('%', :ville, '%'))) AND " +
-           "(:typeBien IS NULL OR a.typeBien = :typeBien) AND " +
-           "(:typeTransaction IS NULL OR a.typeTransaction = :typeTransaction) AND " +
-           "(:prixMin IS NULL OR a.prix >= :prixMin) AND " +
-           "(:prixMax IS NULL OR a.prix <= :prixMax) AND " +
-           "(:surfaceMin IS NULL OR a.surface >= :surfaceMin) AND " +
-           "(:surfaceMax IS NULL OR a.surface <= :surfaceMax) AND " +
-           "(:nombreChambres IS NULL OR a.nombreChambres >= :nombreChambres) AND " +
-           "(:nombreSallesBain IS NULL OR a.nombreSallesBain >= :nombreSallesBain) AND " +
-           "(:garage IS NULL OR a.garage = :garage) AND " +
-           "(:jardin IS NULL OR a.jardin = :jardin) AND " +
-           "(:piscine IS NULL OR a.piscine = :piscine) AND " +
-           "(:climatisation IS NULL OR a.climatisation = :climatisation) AND " +
-           "(:ascenseur IS NULL OR a.ascenseur = :ascenseur) AND " +
-           "a.status = :status")
-    Page<Annonce> findWithFilters(
-        @Param("titre") String titre,
-        @Param("ville") String ville,
-        @Param("typeBien") Annonce.TypeBien typeBien,
-        @Param("typeTransaction") Annonce.TypeTransaction typeTransaction,
-        @Param("prixMin") BigDecimal prixMin,
-        @Param("prixMax") BigDecimal prixMax,
-        @Param("surfaceMin") Integer surfaceMin,
-        @Param("surfaceMax") Integer surfaceMax,
-        @Param("nombreChambres") Integer nombreChambres,
-        @Param("nombreSallesBain") Integer nombreSallesBain,
-        @Param("garage") Boolean garage,
-        @Param("jardin") Boolean jardin,
-        @Param("piscine") Boolean piscine,
-        @Param("climatisation") Boolean climatisation,
-        @Param("ascenseur") Boolean ascenseur,
+    // La recherche multi-critères passe par findAll(Specification, Pageable), voir AnnonceSpecifications
+
+    // Chargement de l'index de recherche par lots (id croissant)
+    @Query("SELECT a.id, a.titre, a.description, a.ville FROM Annonce a " +
+           "WHERE a.status = :status AND a.id > :afterId ORDER BY a.id")
+    List<Object[]> findTextFieldsByStatusAfterId(
         @Param("status") Annonce.StatusAnnonce status,
+        @Param("afterId") Long afterId,
         Pageable pageable
     );
 
-    // Statistiques
-    @Query("SELECT COUNT(a) FROM Annonce a WHERE a.createur = :createur")
-    long countByCreateur(@Param("createur") User createur);
-
-    @Query("SELECT COUNT(a) FROM Annonce a WHERE a.createur = :createur AND a.status = :status")
-    long countByCreateurAndStatus(@Param("createur") User createur, @Param("status") Annonce.StatusAnnonce status);
-
-    @Query("SELECT SUM(a.vues) FROM Annonce a WHERE a.createur = :createur")
-    Long sumVuesByCreateur(@Param("createur") User createur);
-
-    @Query("SELECT SUM(a.favoris) FROM Annonce a WHERE a.createur = :createur")
-    Long sumFavorisByCreateur(@Param("createur") User createur);
-
-    @Query("SELECT AVG(a.prix) FROM Annonce a WHERE a.status = :status")
-    Double avgPrixByStatus(@Param("status") Annonce.StatusAnnonce status);
-
-    @Query("SELECT AVG(a.surface) FROM Annonce a WHERE a.status = :status AND a.surface IS NOT NULL")
-    Double avgSurfaceByStatus(@Param("status") Annonce.StatusAnnonce status);
+    // Chargement de l'index des facettes par lots (id croissant)
+    @Query("SELECT a.id, a.status, a.typeBien, a.typeTransaction, " +
+           "a.garage, a.jardin, a.piscine, a.climatisation, a.ascenseur FROM Annonce a " +
+           "WHERE a.id > :afterId ORDER BY a.id")
+    List<Object[]> findFacetFieldsAfterId(@Param("afterId") Long afterId, Pageable pageable);
+
+    // Statistiques: tous les statuts et les sommes de compteurs en un seul parcours, sur l'index
+    // (user_id, status, vues, favoris) qui suffit à la requête sans lire les lignes
+    @Query("SELECT a.status, COUNT(a), SUM(a.vues), SUM(a.favoris) FROM Annonce a " +
+           "WHERE a.createur.id = :createurId GROUP BY a.status")
+    List<Object[]> getStatsByCreateurId(@Param("createurId") Long createurId);
+
+    // (statut, nombre, prix moyen, surface moyenne); AVG ignore les surfaces NULL
+    @Query("SELECT a.status, COUNT(a), AVG(a.prix), AVG(a.surface) FROM Annonce a GROUP BY a.status")
+    List<Object[]> getStatsByStatus();
+
+    // Propriétaires d'un lot d'annonces: (id, créateur)
+    @Query("SELECT a.id, a.createur.id FROM Annonce a WHERE a.id IN :ids")
+    List<Object[]> findCreateurIdsByIdIn(@Param("ids") Collection<Long> ids);
+
+    // Faits par annonce d'une agence pour les analytics (AnalyticsAggregates)
+    @Query("SELECT a.id, a.typeBien, a.typeTransaction, a.status, a.prix, a.ville, a.vues, a.favoris, " +
+           "a.dateCreation, a.dateMiseAJour FROM Annonce a WHERE a.createur.id = :createurId")
+    List<Object[]> findAnalyticsRowsByCreateurId(@Param("createurId") Long createurId);
+
+    // Marché: (ville, nombre, prix moyen) des annonces de vente publiées dans la période
+    @Query("SELECT a.ville, COUNT(a), AVG(a.prix) FROM Annonce a WHERE a.typeTransaction = :typeTransaction " +
+           "AND a.dateCreation >= :since AND a.dateCreation < :until GROUP BY a.ville")
+    List<Object[]> getMarketRowsByVille(@Param("typeTransaction") Annonce.TypeTransaction typeTransaction,
+                                        @Param("since") LocalDateTime since, @Param("until") LocalDateTime until);
+
+    // Parts de marché: annonces actives par (ville, créateur)
+    @Query("SELECT a.ville, a.createur.id, COUNT(a) FROM Annonce a WHERE a.status = :status GROUP BY a.ville, a.createur.id")
+    List<Object[]> countByVilleAndCreateur(@Param("status") Annonce.StatusAnnonce status);
 
     // Trouver les annonces les plus populaires
+    @EntityGraph(attributePaths = "createur")
     Page<Annonce> findByStatusOrderByVuesDescDateCreationDesc(Annonce.StatusAnnonce status, Pageable pageable);
 
     // Trouver les annonces récentes
+    @EntityGraph(attributePaths = "createur")
     Page<Annonce> findByStatusAndDateCreationAfterOrderByDateCreationDesc(
         Annonce.StatusAnnonce status, LocalDateTime date, Pageable pageable);
 
-    // Trouver les annonces expirées
-    List<Annonce> findByDateExpirationBefore(LocalDateTime date);
+    // Chargement de l'index de similarité par lots (id croissant)
+    @Query("SELECT a.id, a.typeTransaction, a.typeBien, a.ville, a.prix, a.surface, a.nombreChambres, a.nombreSallesBain, " +
+           "a.garage, a.jardin, a.piscine, a.climatisation, a.ascenseur FROM Annonce a " +
+           "WHERE a.status = :status AND a.id > :afterId ORDER BY a.id")
+    List<Object[]> findSimilarityFieldsByStatusAfterId(
+        @Param("status") Annonce.StatusAnnonce status,
+        @Param("afterId") Long afterId,
+        Pageable pageable
+    );
+
+    // Lignes minimales des classements en mémoire (AnnonceRankings): id, vues, dateCreation
+    @Query("SELECT a.id, a.vues, a.dateCreation FROM Annonce a WHERE a.status = :status " +
+           "ORDER BY a.vues DESC, a.dateCreation DESC, a.id DESC")
+    List<Object[]> findPopularRankingRows(@Param("status") Annonce.StatusAnnonce status, Pageable pageable);
+
+    @Query("SELECT a.id, a.vues, a.dateCreation FROM Annonce a WHERE a.status = :status " +
+           "ORDER BY a.dateCreation DESC, a.id DESC")
+    List<Object[]> findRecentRankingRows(@Param("status") Annonce.StatusAnnonce status, Pageable pageable);
+
+    @Query("SELECT a.id, a.vues, a.dateCreation FROM Annonce a WHERE a.status = :status AND a.id IN :ids")
+    List<Object[]> findRankingRowsByStatusAndIdIn(@Param("status") Annonce.StatusAnnonce status,
+                                                  @Param("ids") Collection<Long> ids);
+
+    // Annonces d'une liste d'ids avec leur créateur (une requête)
+    @EntityGraph(attributePaths = "createur")
+    List<Annonce> findByIdIn(Collection<Long> ids);
+
+    // Lignes (id, createurId) des annonces du statut dont l'expiration est passée, les plus anciennes d'abord:
+    // parcours de l'index (status, date_expiration) limité à la page demandée.
+    // FOR UPDATE: une ligne passée à un autre statut entre la lecture et la mise à jour ne peut pas être retenue
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a.id, a.createur.id FROM Annonce a WHERE a.status = :status AND a.dateExpiration < :date " +
+           "ORDER BY a.dateExpiration, a.id")
+    List<Object[]> findExpiredIdsByStatus(@Param("status") Annonce.StatusAnnonce status,
+                                          @Param("date") LocalDateTime date, Pageable pageable);
+
+    // Lignes (nombreAvis, notes1, notes2, notes3, notes4, notes5): lecture par clé primaire
+    @Query("SELECT a.nombreAvis, a.notes1, a.notes2, a.notes3, a.notes4, a.notes5 FROM Annonce a WHERE a.id = :id")
+    List<Object[]> findRatingAggregatesById(@Param("id") Long id);
+
+    // Mise à jour ensembliste sans charger les entités; le statut est revérifié si une autre instance est passée
+    @Modifying
+    @Query("UPDATE Annonce a SET a.status = :status, a.dateMiseAJour = :now " +
+           "WHERE a.id IN :ids AND a.status = :previousStatus")
+    int updateStatusByIdIn(@Param("ids") Collection<Long> ids, @Param("previousStatus") Annonce.StatusAnnonce previousStatus,
+                           @Param("status") Annonce.StatusAnnonce status, @Param("now") LocalDateTime now);
+
+    // Annonces publiées par les agences vérifiées (current_annonces n'est tenu par aucune écriture)
+    @Query("SELECT COUNT(a) FROM Annonce a JOIN AgenceImmobiliere ag ON ag.id = a.createur.id WHERE ag.isVerified = true")
+    long countPublishedByVerifiedAgencies();
+
+    long countByCreateurId(Long createurId);
 
     // Compter les annonces par ville
     @Query("SELECT a.ville, COUNT(a) FROM Annonce a WHERE a.status = :status GROUP BY a.ville ORDER BY COUNT(a) DESC")
@@ -123,10 +176,8 @@ public interface AnnonceRepository extends JpaRepository<Annonce, Long>, JpaSpec
     @Query("SELECT a.typeBien, COUNT(a) FROM Annonce a WHERE a.status = :status GROUP BY a.typeBien ORDER BY COUNT(a) DESC")
     List<Object[]> countByTypeBienAndStatus(@Param("status") Annonce.StatusAnnonce status);
 
-    // Compter les annonces par status
-    long countByStatus(Annonce.StatusAnnonce status);
-
     // Annonces similaires basées sur type, prix et ville
+    @EntityGraph(attributePaths = "createur")
     @Query("SELECT a FROM Annonce a WHERE " +
            "a.id != :excludeId AND " +
            "a.status = :status AND " +
@@ -0,0 +1,145 @@
+package esprit.user.repository;
+
+import esprit.user.dto.AnnonceDto.AnnonceSearchDto;
+import esprit.user.entity.Annonce;
+import esprit.user.entity.User;
+import esprit.user.service.TextNormalizer;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+// Compile un AnnonceSearchDto en n'émettant que les clauses des champs renseignés,
+// pour que l'optimiseur voie une requête qui correspond aux index (status, prix/surface, ville)
+public final class AnnonceSpecifications {
+
+    private AnnonceSpecifications() {
+    }
+
+    // Recherche entièrement résolue par la base
+    public static Specification<Annonce> forSearch(AnnonceSearchDto search, Annonce.StatusAnnonce status) {
+        List<Specification<Annonce>> clauses = new ArrayList<>();
+        clauses.add(hasStatus(status));
+        addTextClauses(clauses, search);
+        addFacetClauses(clauses, search);
+        addRangeClauses(clauses, search);
+        return Specification.allOf(clauses);
+    }
+
+    // Recherche dont le texte (et éventuellement les facettes) est déjà résolu en mémoire
+    public static Specification<Annonce> forCandidates(AnnonceSearchDto search, Annonce.StatusAnnonce status,
+                                                       Collection<Long> ids, boolean facetsResolved) {
+        List<Specification<Annonce>> clauses = new ArrayList<>();
+        clauses.add(idIn(ids));
+        clauses.add(hasStatus(status));
+        if (!facetsResolved) {
+            addFacetClauses(clauses, search);
+        }
+        addRangeClauses(clauses, search);
+        return Specification.allOf(clauses);
+    }
+
+    public static Specification<Annonce> hasStatus(Annonce.StatusAnnonce status) {
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<Annonce> idIn(Collection<Long> ids) {
+        return (root, query, cb) -> root.get("id").in(ids);
+    }
+
+    public static Specification<Annonce> hasCreateur(User createur) {
+        return (root, query, cb) -> cb.equal(root.get("createur"), createur);
+    }
+
+    // Pagination par clé: lignes strictement après (value, id) dans l'ordre (property, id).
+    // NULL est la plus petite valeur, comme dans l'ordre de tri de MySQL et H2.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Specification<Annonce> seekAfter(String property, boolean nullable, boolean ascending,
+                                                   Comparable value, Long id) {
+        return (root, query, cb) -> {
+            Path key = root.get(property);
+            Path<Long> idPath = root.get("id");
+            Predicate idAfter = ascending ? cb.greaterThan(idPath, id) : cb.lessThan(idPath, id);
+            if (value == null) {
+                Predicate sameNull = cb.and(cb.isNull(key), idAfter);
+                return ascending ? cb.or(sameNull, cb.isNotNull(key)) : sameNull;
+            }
+            Predicate beyond = ascending ? cb.greaterThan(key, value) : cb.lessThan(key, value);
+            Predicate tie = cb.and(cb.equal(key, value), idAfter);
+            if (nullable && !ascending) {
+                return cb.or(beyond, tie, cb.isNull(key));
+            }
+            return cb.or(beyond, tie);
+        };
+    }
+
+    private static void addTextClauses(List<Specification<Annonce>> clauses, AnnonceSearchDto search) {
+        if (hasText(search.getTitre())) {
+            String pattern = containsPattern(search.getTitre());
+            clauses.add((root, query, cb) -> cb.like(cb.lower(root.get("titre")), pattern, '\\'));
+        }
+        if (hasText(search.getMotsCles())) {
+            String pattern = containsPattern(search.getMotsCles());
+            clauses.add((root, query, cb) -> cb.or(
+                cb.like(cb.lower(root.get("titre")), pattern, '\\'),
+                cb.like(cb.lower(root.get("description")), pattern, '\\')));
+        }
+        if (hasText(search.getVille())) {
+            // Début du nom de ville sur la colonne normalisée à l'écriture (casse, accents, espaces):
+            // préfixe sur la colonne nue, servi par idx_annonces_ville_normalisee, comme l'index en mémoire
+            String pattern = escape(TextNormalizer.villeKey(search.getVille())) + "%";
+            clauses.add((root, query, cb) -> cb.like(root.get("villeNormalisee"), pattern, '\\'));
+        }
+    }
+
+    private static void addFacetClauses(List<Specification<Annonce>> clauses, AnnonceSearchDto search) {
+        addEquals(clauses, "typeBien", search.getTypeBien());
+        addEquals(clauses, "typeTransaction", search.getTypeTransaction());
+        addEquals(clauses, "garage", search.getGarage());
+        addEquals(clauses, "jardin", search.getJardin());
+        addEquals(clauses, "piscine", search.getPiscine());
+        addEquals(clauses, "climatisation", search.getClimatisation());
+        addEquals(clauses, "ascenseur", search.getAscenseur());
+    }
+
+    private static void addRangeClauses(List<Specification<Annonce>> clauses, AnnonceSearchDto search) {
+        addRange(clauses, "prix", search.getPrixMin(), search.getPrixMax());
+        addRange(clauses, "surface", search.getSurfaceMin(), search.getSurfaceMax());
+        addRange(clauses, "nombreChambres", search.getNombreChambresMin(), null);
+        addRange(clauses, "nombreSallesBain", search.getNombreSallesBainMin(), null);
+    }
+
+    private static void addEquals(List<Specification<Annonce>> clauses, String attribute, Object value) {
+        if (value != null) {
+            clauses.add((root, query, cb) -> cb.equal(root.get(attribute), value));
+        }
+    }
+
+    // BETWEEN quand les deux bornes sont connues: un seul range seek sur l'index
+    private static <T extends Comparable<? super T>> void addRange(List<Specification<Annonce>> clauses,
+                                                                  String attribute, T min, T max) {
+        if (min != null && max != null) {
+            clauses.add((root, query, cb) -> cb.between(root.get(attribute), min, max));
+        } else if (min != null) {
+            clauses.add((root, query, cb) -> cb.greaterThanOrEqualTo(root.get(attribute), min));
+        } else if (max != null) {
+            clauses.add((root, query, cb) -> cb.lessThanOrEqualTo(root.get(attribute), max));
+        }
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    private static String containsPattern(String value) {
+        return "%" + escape(value.toLowerCase(Locale.ROOT)) + "%";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
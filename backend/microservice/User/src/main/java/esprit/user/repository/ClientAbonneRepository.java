@@ -27,4 +27,8 @@ public interface ClientAbonneRepository extends JpaRepository<ClientAbonne, Long
 
     @Query("SELECT SUM(c.currentSearchesToday) FROM ClientAbonne c WHERE c.lastSearchReset = :date")
     Long getTotalSearchesToday(@Param("date") LocalDate date);
-}
\ No newline at end of file
+
+    // Lignes (subscriptionType, maxSearchesPerDay, currentSearchesToday, lastSearchReset)
+    @Query("SELECT c.subscriptionType, c.maxSearchesPerDay, c.currentSearchesToday, c.lastSearchReset FROM ClientAbonne c WHERE c.id = :id")
+    List<Object[]> findSearchQuotaById(@Param("id") Long id);
+}
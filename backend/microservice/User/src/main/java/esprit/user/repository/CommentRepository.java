@@ -3,11 +3,13 @@ package esprit.user.repository;
 import esprit.user.entity.Comment;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -15,13 +17,38 @@ public interface CommentRepository extends JpaRepository<Comment, Long> {
     
     List<Comment> findByAnnonceIdAndParentCommentIsNullOrderByCreatedAtDesc(Long annonceId);
     
+    @EntityGraph(attributePaths = "user")
     Page<Comment> findByAnnonceIdAndParentCommentIsNullOrderByCreatedAtDesc(Long annonceId, Pageable pageable);
+
+    // Fil complet d'une annonce en une requête: (commentaire avec son auteur, id du parent), du plus ancien au plus récent
+    @Query("SELECT c, c.parentComment.id FROM Comment c JOIN FETCH c.user WHERE c.annonce.id = :annonceId " +
+           "ORDER BY c.createdAt, c.id")
+    List<Object[]> findThreadRowsByAnnonceId(@Param("annonceId") Long annonceId);
+
+    // Réponses seules, même forme que findThreadRowsByAnnonceId
+    @Query("SELECT c, c.parentComment.id FROM Comment c JOIN FETCH c.user " +
+           "WHERE c.annonce.id = :annonceId AND c.parentComment IS NOT NULL ORDER BY c.createdAt, c.id")
+    List<Object[]> findReplyRowsByAnnonceId(@Param("annonceId") Long annonceId);
     
-    @Query("SELECT AVG(c.rating) FROM Comment c WHERE c.annonce.id = :annonceId")
-    Double getAverageRatingByAnnonceId(@Param("annonceId") Long annonceId);
+    // Histogramme (note, nombre) des commentaires de premier niveau: les réponses portent la note 0
+    @Query("SELECT c.rating, COUNT(c) FROM Comment c WHERE c.annonce.id = :annonceId AND c.parentComment IS NULL " +
+           "AND c.rating BETWEEN 1 AND 5 GROUP BY c.rating")
+    List<Object[]> countRatingsByAnnonceId(@Param("annonceId") Long annonceId);
     
     Long countByAnnonceId(Long annonceId);
     
     @Query("SELECT c FROM Comment c WHERE c.annonce.createur.id = :userId ORDER BY c.createdAt DESC")
     Page<Comment> findCommentsForUserAnnonces(@Param("userId") Long userId, Pageable pageable);
-}
\ No newline at end of file
+
+    // Clients d'une agence (hors ses propres réponses): (utilisateur, type de transaction, premier avis,
+    // dernier avis, somme des notes, nombre de notes, nombre d'avis)
+    @Query("SELECT c.user.id, a.typeTransaction, MIN(c.createdAt), MAX(c.createdAt), SUM(c.rating), COUNT(c.rating), COUNT(c) " +
+           "FROM Comment c JOIN c.annonce a WHERE a.createur.id = :createurId AND c.user.id <> :createurId " +
+           "GROUP BY c.user.id, a.typeTransaction")
+    List<Object[]> findClientRowsByCreateurId(@Param("createurId") Long createurId);
+
+    // Avis d'un client depuis une date: (date, titre de l'annonce), les plus récents d'abord
+    @Query("SELECT c.createdAt, a.titre FROM Comment c JOIN c.annonce a WHERE c.user.id = :userId AND c.createdAt >= :since " +
+           "ORDER BY c.createdAt DESC")
+    List<Object[]> findAnalyticsRowsByUserId(@Param("userId") Long userId, @Param("since") LocalDateTime since);
+}
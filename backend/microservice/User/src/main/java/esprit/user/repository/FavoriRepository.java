@@ -0,0 +1,37 @@
+package esprit.user.repository;
+
+import esprit.user.entity.Favori;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface FavoriRepository extends JpaRepository<Favori, Long> {
+
+    boolean existsByUserIdAndAnnonceId(Long userId, Long annonceId);
+
+    // Renvoie le nombre de lignes supprimées: 0 si le favori n'existait pas
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Favori f WHERE f.user.id = :userId AND f.annonce.id = :annonceId")
+    int deleteByUserIdAndAnnonceId(@Param("userId") Long userId, @Param("annonceId") Long annonceId);
+
+    @Modifying
+    @Query("DELETE FROM Favori f WHERE f.annonce.id = :annonceId")
+    int deleteByAnnonceId(@Param("annonceId") Long annonceId);
+
+    // Clients d'une agence: (utilisateur, type de transaction, premier ajout, dernier ajout)
+    @Query("SELECT f.user.id, a.typeTransaction, MIN(f.dateAjout), MAX(f.dateAjout) FROM Favori f JOIN f.annonce a " +
+           "WHERE a.createur.id = :createurId GROUP BY f.user.id, a.typeTransaction")
+    List<Object[]> findClientRowsByCreateurId(@Param("createurId") Long createurId);
+
+    // Favoris d'un client: (type de bien, ville, date d'ajout, titre), les plus récents d'abord
+    @Query("SELECT a.typeBien, a.ville, f.dateAjout, a.titre FROM Favori f JOIN f.annonce a " +
+           "WHERE f.user.id = :userId ORDER BY f.dateAjout DESC")
+    List<Object[]> findAnalyticsRowsByUserId(@Param("userId") Long userId);
+}
@@ -1,6 +1,7 @@
 package esprit.user.repository;
 
 import esprit.user.entity.PlatformVisit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -30,6 +31,9 @@ public interface PlatformVisitRepository extends JpaRepository<PlatformVisit, Lo
     @Query("SELECT COUNT(DISTINCT pv.ipAddress) FROM PlatformVisit pv WHERE pv.visitDate = :date")
     long countUniqueVisitorsByDate(@Param("date") LocalDate date);
 
+    @Query("SELECT COUNT(DISTINCT pv.ipAddress) FROM PlatformVisit pv WHERE pv.visitDate >= :startDate AND pv.visitDate <= :endDate")
+    long countUniqueVisitorsBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
     @Query("SELECT COUNT(DISTINCT pv.sessionId) FROM PlatformVisit pv WHERE pv.visitDate = :date")
     long countUniqueSessionsByDate(@Param("date") LocalDate date);
 
@@ -38,4 +42,30 @@ public interface PlatformVisitRepository extends JpaRepository<PlatformVisit, Lo
 
     @Query("SELECT pv.pageUrl, COUNT(pv) FROM PlatformVisit pv WHERE pv.visitDate >= :startDate AND pv.visitDate <= :endDate GROUP BY pv.pageUrl ORDER BY COUNT(pv) DESC")
     List<Object[]> getMostVisitedPages(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
-}
\ No newline at end of file
+
+    @Query("SELECT pv.visitDate, pv.pageUrl, COUNT(pv) FROM PlatformVisit pv WHERE pv.visitDate >= :startDate AND pv.visitDate <= :endDate AND pv.pageUrl IS NOT NULL GROUP BY pv.visitDate, pv.pageUrl")
+    List<Object[]> countPagesByDateRange(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    @Query("SELECT DISTINCT pv.ipAddress FROM PlatformVisit pv WHERE pv.visitDate = :date AND pv.ipAddress IS NOT NULL")
+    List<String> findDistinctIpAddressesByDate(@Param("date") LocalDate date);
+
+    @Query("SELECT DISTINCT pv.sessionId FROM PlatformVisit pv WHERE pv.visitDate = :date AND pv.sessionId IS NOT NULL")
+    List<String> findDistinctSessionIdsByDate(@Param("date") LocalDate date);
+
+    @Query("SELECT SUM(pv.durationSeconds), COUNT(pv.durationSeconds) FROM PlatformVisit pv WHERE pv.visitDate = :date")
+    List<Object[]> sumAndCountDurationsByDate(@Param("date") LocalDate date);
+
+    @Query("SELECT MIN(pv.visitDate) FROM PlatformVisit pv")
+    LocalDate findFirstVisitDate();
+
+    @Query("SELECT EXTRACT(HOUR FROM pv.visitTimestamp), COUNT(pv) FROM PlatformVisit pv WHERE pv.visitDate = :date GROUP BY EXTRACT(HOUR FROM pv.visitTimestamp)")
+    List<Object[]> countVisitsByHour(@Param("date") LocalDate date);
+
+    // Purge par tranches: ids d'une journée, supprimés ensuite avec deleteAllByIdInBatch
+    @Query("SELECT pv.id FROM PlatformVisit pv WHERE pv.visitDate = :date ORDER BY pv.id")
+    List<Long> findIdsByVisitDate(@Param("date") LocalDate date, Pageable pageable);
+
+    @Query("SELECT pv.visitDate, COUNT(pv) FROM PlatformVisit pv WHERE pv.user.id = :userId AND pv.visitDate >= :startDate AND pv.visitDate <= :endDate GROUP BY pv.visitDate")
+    List<Object[]> countVisitsByUserIdBetween(@Param("userId") Long userId, @Param("startDate") LocalDate startDate,
+                                              @Param("endDate") LocalDate endDate);
+}
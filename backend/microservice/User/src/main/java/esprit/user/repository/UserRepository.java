@@ -9,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,12 +28,20 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     boolean existsByEmail(String email);
 
+    // Comptes bloqués qui peuvent encore détenir un token (connexion récente)
+    @Query("SELECT u.id FROM User u WHERE u.status IN :statuses AND u.lastLogin >= :since")
+    List<Long> findIdsByStatusInAndLastLoginSince(@Param("statuses") Collection<UserStatus> statuses,
+                                                  @Param("since") LocalDateTime since);
+
     @Query("SELECT COUNT(u) FROM User u WHERE u.userType = :userType")
     long countByUserType(@Param("userType") UserType userType);
 
     @Query("SELECT COUNT(u) FROM User u WHERE u.status = :status")
     long countByStatus(@Param("status") UserStatus status);
 
+    @Query("SELECT u.userType, u.status, COUNT(u) FROM User u GROUP BY u.userType, u.status")
+    List<Object[]> countByUserTypeAndStatus();
+
     @Query("SELECT u FROM User u WHERE u.createdAt >= :startDate AND u.createdAt <= :endDate")
     List<User> findUsersCreatedBetween(@Param("startDate") LocalDateTime startDate, @Param("endDate") LocalDateTime endDate);
 
@@ -0,0 +1,28 @@
+package esprit.user.repository;
+
+import esprit.user.entity.VisitHourlyAggregate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface VisitHourlyAggregateRepository extends JpaRepository<VisitHourlyAggregate, Long> {
+
+    boolean existsByVisitDate(LocalDate visitDate);
+
+    // Dernier jour agrégé: toutes les journées jusqu'à celle-ci sont lues dans les agrégats
+    @Query("SELECT MAX(a.visitDate) FROM VisitHourlyAggregate a")
+    LocalDate findLastAggregatedDate();
+
+    List<VisitHourlyAggregate> findByVisitDateOrderByVisitHour(LocalDate visitDate);
+
+    @Query("SELECT a.visitDate, SUM(a.visits) FROM VisitHourlyAggregate a WHERE a.visitDate >= :startDate AND a.visitDate <= :endDate GROUP BY a.visitDate ORDER BY a.visitDate")
+    List<Object[]> getVisitStatsByDateRange(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    @Query("SELECT COALESCE(SUM(a.visits), 0) FROM VisitHourlyAggregate a WHERE a.visitDate >= :startDate AND a.visitDate <= :endDate")
+    long countVisitsBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+}
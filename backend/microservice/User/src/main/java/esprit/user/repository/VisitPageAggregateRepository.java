@@ -0,0 +1,20 @@
+package esprit.user.repository;
+
+import esprit.user.entity.VisitPageAggregate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface VisitPageAggregateRepository extends JpaRepository<VisitPageAggregate, Long> {
+
+    @Query("SELECT a.pageUrl, SUM(a.visits) FROM VisitPageAggregate a WHERE a.visitDate >= :startDate AND a.visitDate <= :endDate GROUP BY a.pageUrl ORDER BY SUM(a.visits) DESC")
+    List<Object[]> getMostVisitedPages(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+
+    @Query("SELECT a.visitDate, a.pageUrl, a.visits FROM VisitPageAggregate a WHERE a.visitDate >= :startDate AND a.visitDate <= :endDate")
+    List<Object[]> countPagesByDateRange(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+}
@@ -0,0 +1,23 @@
+package esprit.user.repository;
+
+import esprit.user.entity.VisitSketch;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface VisitSketchRepository extends JpaRepository<VisitSketch, Long> {
+
+    // Verrou de ligne pendant la fusion: deux instances qui écrivent la même journée ne s'écrasent pas
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Optional<VisitSketch> findByVisitDateAndKind(LocalDate visitDate, VisitSketch.Kind kind);
+
+    List<VisitSketch> findByKindAndVisitDateBetween(VisitSketch.Kind kind, LocalDate startDate, LocalDate endDate);
+
+    List<VisitSketch> findByVisitDateBetween(LocalDate startDate, LocalDate endDate);
+}
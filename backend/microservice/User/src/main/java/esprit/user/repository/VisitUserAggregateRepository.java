@@ -0,0 +1,18 @@
+package esprit.user.repository;
+
+import esprit.user.entity.VisitUserAggregate;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface VisitUserAggregateRepository extends JpaRepository<VisitUserAggregate, Long> {
+
+    @Query("SELECT a.visitDate, a.visits FROM VisitUserAggregate a WHERE a.userId = :userId AND a.visitDate >= :startDate AND a.visitDate <= :endDate")
+    List<Object[]> countVisitsByUserIdBetween(@Param("userId") Long userId, @Param("startDate") LocalDate startDate,
+                                              @Param("endDate") LocalDate endDate);
+}
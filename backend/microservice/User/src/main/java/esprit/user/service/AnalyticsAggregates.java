@@ -0,0 +1,392 @@
+package esprit.user.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import esprit.user.entity.Annonce;
+import esprit.user.event.AnnonceCountersFlushedEvent;
+import esprit.user.event.AnnonceEvent;
+import esprit.user.repository.AnnonceRepository;
+import esprit.user.repository.CommentRepository;
+import esprit.user.repository.FavoriRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Agrégats des analytics d'agence: les faits de chaque annonce (type, statut, prix, vues, favoris, dates)
+// et les clients (favoris et avis reçus) d'une agence, chargés à sa première consultation puis tenus à jour
+// par les événements d'annonce et de compteurs; clients et marché sont recalculés périodiquement.
+@Component
+@Slf4j
+public class AnalyticsAggregates {
+
+    static final class Listing {
+        final Long id;
+        final Annonce.TypeBien typeBien;
+        final Annonce.TypeTransaction typeTransaction;
+        final Annonce.StatusAnnonce status;
+        final double prix;
+        final String ville;
+        final long vues;
+        final long favoris;
+        final LocalDateTime dateCreation;
+        final LocalDateTime dateMiseAJour;
+
+        private Listing(Long id, Annonce.TypeBien typeBien, Annonce.TypeTransaction typeTransaction,
+                        Annonce.StatusAnnonce status, double prix, String ville, long vues, long favoris,
+                        LocalDateTime dateCreation, LocalDateTime dateMiseAJour) {
+            this.id = id;
+            this.typeBien = typeBien;
+            this.typeTransaction = typeTransaction;
+            this.status = status;
+            this.prix = prix;
+            this.ville = ville;
+            this.vues = vues;
+            this.favoris = favoris;
+            this.dateCreation = dateCreation;
+            this.dateMiseAJour = dateMiseAJour;
+        }
+
+        private static Listing fromRow(Object[] row) {
+            return new Listing((Long) row[0], (Annonce.TypeBien) row[1], (Annonce.TypeTransaction) row[2],
+                (Annonce.StatusAnnonce) row[3], row[4] != null ? ((BigDecimal) row[4]).doubleValue() : 0.0,
+                (String) row[5], row[6] != null ? ((Number) row[6]).longValue() : 0L,
+                row[7] != null ? ((Number) row[7]).longValue() : 0L, (LocalDateTime) row[8], (LocalDateTime) row[9]);
+        }
+
+        // Les compteurs de l'entité peuvent être en retard sur les lots de AnnonceCounterBuffer: on garde les nôtres
+        private static Listing fromAnnonce(Annonce annonce, Listing previous) {
+            long vues = previous != null ? previous.vues : annonce.getVues() != null ? annonce.getVues() : 0L;
+            long favoris = previous != null ? previous.favoris : annonce.getFavoris() != null ? annonce.getFavoris() : 0L;
+            return new Listing(annonce.getId(), annonce.getTypeBien(), annonce.getTypeTransaction(), annonce.getStatus(),
+                annonce.getPrix() != null ? annonce.getPrix().doubleValue() : 0.0, annonce.getVille(), vues, favoris,
+                annonce.getDateCreation(), annonce.getDateMiseAJour());
+        }
+
+        private Listing withStatus(Annonce.StatusAnnonce newStatus) {
+            return new Listing(id, typeBien, typeTransaction, newStatus, prix, ville, vues, favoris, dateCreation, dateMiseAJour);
+        }
+
+        private Listing withCounter(AnnonceCounterBuffer.Counter counter, long delta) {
+            return counter == AnnonceCounterBuffer.Counter.VUES
+                ? new Listing(id, typeBien, typeTransaction, status, prix, ville, vues + delta, favoris, dateCreation, dateMiseAJour)
+                : new Listing(id, typeBien, typeTransaction, status, prix, ville, vues, Math.max(0L, favoris + delta), dateCreation, dateMiseAJour);
+        }
+    }
+
+    // Un utilisateur ayant mis en favori ou commenté au moins une annonce de l'agence
+    static final class Client {
+        final LocalDateTime firstInteraction;
+        final LocalDateTime lastInteraction;
+        final boolean vente;
+        final boolean location;
+
+        private Client(LocalDateTime firstInteraction, LocalDateTime lastInteraction, boolean vente, boolean location) {
+            this.firstInteraction = firstInteraction;
+            this.lastInteraction = lastInteraction;
+            this.vente = vente;
+            this.location = location;
+        }
+
+        private Client merge(Client other) {
+            return new Client(earliest(firstInteraction, other.firstInteraction), latest(lastInteraction, other.lastInteraction),
+                vente || other.vente, location || other.location);
+        }
+
+        private static LocalDateTime earliest(LocalDateTime a, LocalDateTime b) {
+            return a == null ? b : b == null || a.isBefore(b) ? a : b;
+        }
+
+        private static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+            return a == null ? b : b == null || a.isAfter(b) ? a : b;
+        }
+    }
+
+    static final class Engagement {
+        final List<Client> clients;
+        final long comments;
+        final long ratingSum;
+        final long ratingCount;
+
+        private Engagement(List<Client> clients, long comments, long ratingSum, long ratingCount) {
+            this.clients = clients;
+            this.comments = comments;
+            this.ratingSum = ratingSum;
+            this.ratingCount = ratingCount;
+        }
+    }
+
+    static final class AgencyFacts {
+        private final Map<Long, Listing> listings = new HashMap<>();
+        private Engagement engagement;
+        // Dernier lot de compteurs contenu dans les listings; un lot déjà lu en base n'est pas réappliqué
+        private long counterVersion;
+        // Pendant un rechargement, les lots arrivés sont mis de côté puis appliqués ou écartés à la fin
+        private boolean reloading;
+        private final List<AnnonceCountersFlushedEvent> flushedDuringReload = new ArrayList<>();
+        private volatile boolean loaded;
+        private final Object loadLock = new Object();
+
+        synchronized List<Listing> listings() {
+            return List.copyOf(listings.values());
+        }
+
+        synchronized Engagement engagement() {
+            return engagement;
+        }
+
+        // Appelé sous le verrou de l'agence; les lots arrivent dans l'ordre de leurs numéros (un seul thread de flush)
+        private void applyCounters(long sequence, AnnonceCounterBuffer.Counter counter, Map<Long, Long> deltas) {
+            if (sequence <= counterVersion) {
+                return;
+            }
+            deltas.forEach((annonceId, delta) -> {
+                Listing listing = listings.get(annonceId);
+                if (listing != null) {
+                    listings.put(annonceId, listing.withCounter(counter, delta));
+                }
+            });
+            counterVersion = sequence;
+        }
+    }
+
+    private record AnalyticsRows(long counterVersion, List<Object[]> rows) {
+    }
+
+    // Prix moyen et volume des annonces de vente par ville sur deux périodes de 30 jours
+    static final class Market {
+        final Map<String, double[]> recent;
+        final Map<String, double[]> previous;
+        final long recentCount;
+        final long previousCount;
+        final Map<String, Map<Long, Long>> activeByVille;
+
+        private Market(Map<String, double[]> recent, Map<String, double[]> previous,
+                       Map<String, Map<Long, Long>> activeByVille) {
+            this.recent = recent;
+            this.previous = previous;
+            this.recentCount = recent.values().stream().mapToLong(v -> (long) v[0]).sum();
+            this.previousCount = previous.values().stream().mapToLong(v -> (long) v[0]).sum();
+            this.activeByVille = activeByVille;
+        }
+    }
+
+    private final AnnonceRepository annonceRepository;
+    private final FavoriRepository favoriRepository;
+    private final CommentRepository commentRepository;
+    private final AnnonceCounterBuffer counterBuffer;
+    private final Cache<Long, AgencyFacts> agencies;
+    // Agences en cours de (re)chargement: leurs annonces ne sont pas encore toutes dans owners
+    private final Map<Long, AgencyFacts> reloading = new ConcurrentHashMap<>();
+    // id d'annonce -> agence chargée, pour router les lots de compteurs
+    private final Map<Long, Long> owners = new ConcurrentHashMap<>();
+    private volatile Market market;
+
+    public AnalyticsAggregates(AnnonceRepository annonceRepository, FavoriRepository favoriRepository,
+                               CommentRepository commentRepository, AnnonceCounterBuffer counterBuffer,
+                               @Value("${app.analytics.max-agencies:500}") long maxAgencies,
+                               @Value("${app.analytics.idle-minutes:60}") long idleMinutes) {
+        this.annonceRepository = annonceRepository;
+        this.favoriRepository = favoriRepository;
+        this.commentRepository = commentRepository;
+        this.counterBuffer = counterBuffer;
+        this.agencies = Caffeine.newBuilder()
+            .maximumSize(maxAgencies)
+            .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+            .removalListener((Long agencyId, AgencyFacts facts, RemovalCause cause) -> {
+                if (facts != null && cause != RemovalCause.REPLACED) {
+                    owners.values().removeIf(agencyId::equals);
+                }
+            })
+            .build();
+    }
+
+    // L'agence entre dans le cache avant son chargement, pour que les lots de compteurs arrivés entre-temps la trouvent
+    AgencyFacts agency(Long agencyId) {
+        AgencyFacts facts = agencies.get(agencyId, id -> new AgencyFacts());
+        if (!facts.loaded) {
+            synchronized (facts.loadLock) {
+                if (!facts.loaded) {
+                    reloadAgency(agencyId, facts);
+                }
+            }
+        }
+        return facts;
+    }
+
+    Market market() {
+        Market current = market;
+        if (current == null) {
+            synchronized (this) {
+                current = market;
+                if (current == null) {
+                    current = loadMarket();
+                    market = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Les requêtes tournent hors du verrou de l'agence; les lots de compteurs reçus pendant ce temps ne sont
+    // appliqués à la fin que s'ils ne figurent pas déjà dans les lignes lues
+    private void reloadAgency(Long agencyId, AgencyFacts facts) {
+        synchronized (facts.loadLock) {
+            synchronized (facts) {
+                facts.reloading = true;
+            }
+            reloading.put(agencyId, facts);
+            try {
+                AnalyticsRows rows = counterBuffer.readConsistent(version ->
+                    new AnalyticsRows(version, annonceRepository.findAnalyticsRowsByCreateurId(agencyId)));
+                Engagement engagement = loadEngagement(agencyId);
+                synchronized (facts) {
+                    facts.listings.clear();
+                    for (Object[] row : rows.rows()) {
+                        Listing listing = Listing.fromRow(row);
+                        facts.listings.put(listing.id, listing);
+                        owners.put(listing.id, agencyId);
+                    }
+                    facts.counterVersion = rows.counterVersion();
+                    facts.engagement = engagement;
+                    facts.loaded = true;
+                }
+            } finally {
+                synchronized (facts) {
+                    for (AnnonceCountersFlushedEvent event : facts.flushedDuringReload) {
+                        facts.applyCounters(event.getSequence(), event.getCounter(), event.getDeltas());
+                    }
+                    facts.flushedDuringReload.clear();
+                    facts.reloading = false;
+                }
+                reloading.remove(agencyId, facts);
+            }
+        }
+    }
+
+    private Engagement loadEngagement(Long agencyId) {
+        Map<Long, Client> clients = new HashMap<>();
+        for (Object[] row : favoriRepository.findClientRowsByCreateurId(agencyId)) {
+            mergeClient(clients, row);
+        }
+        long comments = 0L;
+        long ratingSum = 0L;
+        long ratingCount = 0L;
+        for (Object[] row : commentRepository.findClientRowsByCreateurId(agencyId)) {
+            mergeClient(clients, row);
+            ratingSum += row[4] != null ? ((Number) row[4]).longValue() : 0L;
+            ratingCount += ((Number) row[5]).longValue();
+            comments += ((Number) row[6]).longValue();
+        }
+        return new Engagement(List.copyOf(clients.values()), comments, ratingSum, ratingCount);
+    }
+
+    private static void mergeClient(Map<Long, Client> clients, Object[] row) {
+        Annonce.TypeTransaction typeTransaction = (Annonce.TypeTransaction) row[1];
+        clients.merge((Long) row[0], new Client((LocalDateTime) row[2], (LocalDateTime) row[3],
+            typeTransaction == Annonce.TypeTransaction.VENTE, typeTransaction == Annonce.TypeTransaction.LOCATION), Client::merge);
+    }
+
+    private Market loadMarket() {
+        LocalDateTime now = LocalDateTime.now();
+        Map<String, double[]> recent = marketRows(now.minusDays(30), now);
+        Map<String, double[]> previous = marketRows(now.minusDays(60), now.minusDays(30));
+        Map<String, Map<Long, Long>> activeByVille = new HashMap<>();
+        for (Object[] row : annonceRepository.countByVilleAndCreateur(Annonce.StatusAnnonce.ACTIVE)) {
+            activeByVille.computeIfAbsent((String) row[0], v -> new HashMap<>()).put((Long) row[1], (Long) row[2]);
+        }
+        return new Market(recent, previous, activeByVille);
+    }
+
+    private Map<String, double[]> marketRows(LocalDateTime since, LocalDateTime until) {
+        Map<String, double[]> rows = new HashMap<>();
+        for (Object[] row : annonceRepository.getMarketRowsByVille(Annonce.TypeTransaction.VENTE, since, until)) {
+            rows.put((String) row[0], new double[]{((Number) row[1]).doubleValue(),
+                row[2] != null ? ((Number) row[2]).doubleValue() : 0.0});
+        }
+        return rows;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAnnonceEvent(AnnonceEvent event) {
+        if (event.getCreateurId() == null) {
+            return;
+        }
+        AgencyFacts facts = agencies.getIfPresent(event.getCreateurId());
+        if (facts == null) {
+            return;
+        }
+        synchronized (facts) {
+            if (event.getType() == AnnonceEvent.Type.DELETED) {
+                facts.listings.remove(event.getAnnonceId());
+                owners.remove(event.getAnnonceId());
+                return;
+            }
+            if (event.getType() == AnnonceEvent.Type.EXPIRED) {
+                facts.listings.computeIfPresent(event.getAnnonceId(),
+                    (id, listing) -> listing.withStatus(Annonce.StatusAnnonce.EXPIRE));
+                return;
+            }
+            facts.listings.put(event.getAnnonceId(),
+                Listing.fromAnnonce(event.getAnnonce(), facts.listings.get(event.getAnnonceId())));
+            owners.put(event.getAnnonceId(), event.getCreateurId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCountersFlushed(AnnonceCountersFlushedEvent event) {
+        for (AgencyFacts facts : reloading.values()) {
+            synchronized (facts) {
+                if (facts.reloading) {
+                    facts.flushedDuringReload.add(event);
+                }
+            }
+        }
+        Map<AgencyFacts, Map<Long, Long>> byAgency = new HashMap<>();
+        event.getDeltas().forEach((annonceId, delta) -> {
+            Long agencyId = owners.get(annonceId);
+            AgencyFacts facts = agencyId != null ? agencies.getIfPresent(agencyId) : null;
+            if (facts != null) {
+                byAgency.computeIfAbsent(facts, f -> new HashMap<>()).put(annonceId, delta);
+            }
+        });
+        byAgency.forEach((facts, deltas) -> {
+            synchronized (facts) {
+                if (!facts.reloading) {
+                    facts.applyCounters(event.getSequence(), event.getCounter(), deltas);
+                }
+            }
+        });
+    }
+
+    // Recalage des agences consultées (écritures d'autres instances, favoris et avis) et du marché
+    @Scheduled(initialDelayString = "${app.analytics.refresh-interval-ms:600000}",
+               fixedDelayString = "${app.analytics.refresh-interval-ms:600000}")
+    public void refresh() {
+        long start = System.currentTimeMillis();
+        Collection<Map.Entry<Long, AgencyFacts>> loaded = new ArrayList<>(agencies.asMap().entrySet());
+        try {
+            for (Map.Entry<Long, AgencyFacts> entry : loaded) {
+                reloadAgency(entry.getKey(), entry.getValue());
+            }
+            market = loadMarket();
+        } catch (DataAccessException e) {
+            log.warn("Recalage des analytics interrompu: {}", e.getMessage());
+            return;
+        }
+        log.debug("Analytics recalées en {} ms ({} agences)", System.currentTimeMillis() - start, loaded.size());
+    }
+}
@@ -1,229 +1,453 @@
 package esprit.user.service;
 
 import esprit.user.dto.AnalyticsDto.*;
+import esprit.user.entity.AgenceImmobiliere;
+import esprit.user.entity.Annonce;
+import esprit.user.entity.ClientAbonne;
+import esprit.user.entity.SubscriptionType;
 import esprit.user.entity.User;
-import esprit.user.entity.UserType;
+import esprit.user.repository.CommentRepository;
+import esprit.user.repository.FavoriRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 
+// Analytics calculées sur les données réelles: annonces, favoris, avis et visites.
+// Les agences passent par AnalyticsAggregates (faits en mémoire), les clients par quelques requêtes sur leurs propres lignes.
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class AnalyticsService {
-    
-    private final Random random = new Random();
-    
+
+    private static final int MONTHS = 6;
+    private static final int WEEKS = 4;
+    private static final String[] MONTH_LABELS = {"Jan", "Fév", "Mar", "Avr", "Mai", "Jun", "Jul", "Aoû", "Sep", "Oct", "Nov", "Déc"};
+    private static final String[] COLORS = {"#4CAF50", "#2196F3", "#FF9800", "#9C27B0", "#F44336",
+        "#00BCD4", "#795548", "#607D8B", "#E91E63", "#CDDC39"};
+
+    private final AnalyticsAggregates analyticsAggregates;
+    private final FavoriRepository favoriRepository;
+    private final CommentRepository commentRepository;
+    private final PlatformVisitHistory platformVisitHistory;
+    private final SearchQuotaLimiter searchQuotaLimiter;
+
     public ClientAnalytics getClientAnalytics(User user) {
-        log.info("Generating client analytics for user: {}", user.getEmail());
-        
+        log.debug("Calcul des analytics client pour l'utilisateur {}", user.getId());
+        LocalDate today = LocalDate.now();
+        YearMonth currentMonth = YearMonth.from(today);
+        LocalDate seriesStart = currentMonth.minusMonths(MONTHS - 1).atDay(1);
+        LocalDate weeksStart = today.minusDays(WEEKS * 7L - 1);
+
+        List<Object[]> favorites = favoriRepository.findAnalyticsRowsByUserId(user.getId());
+        List<Object[]> comments = commentRepository.findAnalyticsRowsByUserId(user.getId(), seriesStart.atStartOfDay());
+
+        long[] visitsByMonth = new long[MONTHS];
+        long[][] weekly = new long[3][WEEKS];
+        // Lignes brutes sur la rétention, agrégats par utilisateur au-delà: les six mois restent complets
+        platformVisitHistory.userDailyVisits(user.getId(), seriesStart, today).forEach((date, count) -> {
+            addToMonth(visitsByMonth, currentMonth, date, count);
+            addToWeek(weekly[0], weeksStart, date, count);
+        });
+        long[] favoritesByMonth = new long[MONTHS];
+        Map<Annonce.TypeBien, Long> favoritesByType = new EnumMap<>(Annonce.TypeBien.class);
+        Map<String, Long> favoritesByVille = new HashMap<>();
+        for (Object[] row : favorites) {
+            favoritesByType.merge((Annonce.TypeBien) row[0], 1L, Long::sum);
+            favoritesByVille.merge((String) row[1], 1L, Long::sum);
+            if (row[2] != null) {
+                LocalDate date = ((LocalDateTime) row[2]).toLocalDate();
+                addToMonth(favoritesByMonth, currentMonth, date, 1L);
+                addToWeek(weekly[1], weeksStart, date, 1L);
+            }
+        }
+        long[] commentsByMonth = new long[MONTHS];
+        for (Object[] row : comments) {
+            LocalDate date = ((LocalDateTime) row[0]).toLocalDate();
+            addToMonth(commentsByMonth, currentMonth, date, 1L);
+            addToWeek(weekly[2], weeksStart, date, 1L);
+        }
+
+        ClientAbonne client = user instanceof ClientAbonne abonne ? abonne : null;
+        int maxSearches = client != null && client.getMaxSearchesPerDay() != null ? client.getMaxSearchesPerDay() : 0;
+        int searchesToday = client != null
+            ? searchQuotaLimiter.searchesToday(client.getId(), client.getCurrentSearchesToday(), client.getLastSearchReset()) : 0;
+        double usage = maxSearches > 0 ? round(searchesToday * 100.0 / maxSearches) : 0.0;
+
         List<MetricData> keyMetrics = Arrays.asList(
-            new MetricData("Recherches ce mois", 47 + random.nextInt(20), "positive", 23.5 + random.nextDouble() * 10, "search", "#4CAF50"),
-            new MetricData("Biens consultés", 156 + random.nextInt(50), "positive", 15.2 + random.nextDouble() * 10, "visibility", "#2196F3"),
-            new MetricData("Favoris ajoutés", 12 + random.nextInt(10), "neutral", -2.1 + random.nextDouble() * 5, "favorite", "#FF9800"),
-            new MetricData("Alertes actives", 5 + random.nextInt(5), "positive", 8.7 + random.nextDouble() * 5, "notifications", "#9C27B0")
+            new MetricData("Recherches aujourd'hui", searchesToday, "neutral", usage, "search", "#4CAF50"),
+            metric("Pages consultées", last(visitsByMonth), previous(visitsByMonth), "visibility", "#2196F3"),
+            metric("Favoris ajoutés", last(favoritesByMonth), previous(favoritesByMonth), "favorite", "#FF9800"),
+            metric("Avis publiés", last(commentsByMonth), previous(commentsByMonth), "comment", "#9C27B0")
         );
-        
+
         List<ChartData> charts = Arrays.asList(
-            createSearchActivityChart(),
-            createViewsByPropertyTypeChart(),
-            createMonthlyEngagementChart()
+            new ChartData("line", "Pages consultées par mois", monthLabels(currentMonth),
+                List.of(new ChartDataset("Pages consultées", toInts(visitsByMonth), "rgba(76, 175, 80, 0.2)", "#4CAF50", 2, true))),
+            doughnut("Favoris par type de bien", "Favoris", displayNames(favoritesByType)),
+            new ChartData("bar", "Engagement des 4 dernières semaines", weekLabels(), Arrays.asList(
+                new ChartDataset("Pages consultées", toInts(weekly[0]), "rgba(33, 150, 243, 0.8)", "#2196F3", 1, false),
+                new ChartDataset("Favoris", toInts(weekly[1]), "rgba(255, 152, 0, 0.8)", "#FF9800", 1, false),
+                new ChartDataset("Avis", toInts(weekly[2]), "rgba(156, 39, 176, 0.8)", "#9C27B0", 1, false)))
         );
-        
+
+        // Pas d'historique des recherches: seuls le quota et la consommation du jour sont connus
         SearchAnalytics searchAnalytics = new SearchAnalytics(
-            320 + random.nextInt(100),
-            47 + random.nextInt(20),
-            53 + random.nextInt(50), // remaining searches
-            1.56 + random.nextDouble() * 2,
-            Arrays.asList("Appartement", "Villa", "Studio", "Duplex"),
-            Arrays.asList("Tunis", "Sousse", "Sfax", "Monastir")
+            null,
+            null,
+            client != null ? Math.max(0, maxSearches - searchesToday) : null,
+            null,
+            topKeys(displayNames(favoritesByType), 4),
+            topKeys(favoritesByVille, 4)
         );
-        
-        List<ActivityData> recentActivity = Arrays.asList(
-            new ActivityData(LocalDate.now().minusDays(1), "Recherche", "Appartement 3 pièces à Tunis", "search", "#4CAF50"),
-            new ActivityData(LocalDate.now().minusDays(2), "Favori", "Villa ajoutée aux favoris", "favorite", "#FF9800"),
-            new ActivityData(LocalDate.now().minusDays(3), "Alerte", "Nouvelle alerte créée pour Sousse", "notifications", "#9C27B0"),
-            new ActivityData(LocalDate.now().minusDays(5), "Visite", "Consultation détaillée d'un bien", "visibility", "#2196F3")
-        );
-        
-        SubscriptionInsights subscriptionInsights = new SubscriptionInsights(
-            "PREMIUM",
-            25 + random.nextInt(10),
-            67.5 + random.nextDouble() * 30,
-            Arrays.asList("Recherches illimitées", "Alertes avancées", "Support prioritaire"),
-            Arrays.asList("Passer à VIP pour encore plus de fonctionnalités", "Profitez des rapports détaillés")
+
+        List<ActivityData> recentActivity = new ArrayList<>();
+        for (int i = 0; i < favorites.size() && i < 5; i++) {
+            Object[] row = favorites.get(i);
+            if (row[2] != null) {
+                recentActivity.add(new ActivityData(((LocalDateTime) row[2]).toLocalDate(), "Favori",
+                    row[3] + " ajouté aux favoris", "favorite", "#FF9800"));
+            }
+        }
+        for (int i = 0; i < comments.size() && i < 5; i++) {
+            Object[] row = comments.get(i);
+            recentActivity.add(new ActivityData(((LocalDateTime) row[0]).toLocalDate(), "Avis",
+                "Avis publié sur " + row[1], "comment", "#9C27B0"));
+        }
+        recentActivity.sort(Comparator.comparing(ActivityData::getDate).reversed());
+
+        return new ClientAnalytics(keyMetrics, charts, searchAnalytics,
+            recentActivity.subList(0, Math.min(5, recentActivity.size())), subscriptionInsights(client, today, usage));
+    }
+
+    private SubscriptionInsights subscriptionInsights(ClientAbonne client, LocalDate today, double usage) {
+        if (client == null || client.getSubscriptionType() == null) {
+            return new SubscriptionInsights(null, null, usage, List.of(), List.of());
+        }
+        SubscriptionType plan = client.getSubscriptionType();
+        Integer daysRemaining = client.getSubscriptionEndDate() != null
+            ? (int) Math.max(0L, ChronoUnit.DAYS.between(today, client.getSubscriptionEndDate())) : null;
+        List<String> features = Arrays.asList(
+            plan.getMaxSearchesPerDay() == Integer.MAX_VALUE ? "Recherches illimitées" : plan.getMaxSearchesPerDay() + " recherches par jour",
+            "Abonnement de " + plan.getDurationInDays() + " jours",
+            "Favoris et avis sur les annonces"
         );
-        
-        return new ClientAnalytics(keyMetrics, charts, searchAnalytics, recentActivity, subscriptionInsights);
+        List<String> recommendations = new ArrayList<>();
+        if (plan.ordinal() + 1 < SubscriptionType.values().length) {
+            SubscriptionType next = SubscriptionType.values()[plan.ordinal() + 1];
+            recommendations.add("Passer à " + next.name() + " pour " + (next.getMaxSearchesPerDay() == Integer.MAX_VALUE
+                ? "des recherches illimitées" : next.getMaxSearchesPerDay() + " recherches par jour"));
+        }
+        if (usage >= 80.0) {
+            recommendations.add("Vous avez utilisé " + Math.round(usage) + " % de vos recherches du jour");
+        }
+        if (daysRemaining != null && daysRemaining <= 7) {
+            recommendations.add("Votre abonnement expire dans " + daysRemaining + " jours");
+        }
+        return new SubscriptionInsights(plan.name(), daysRemaining, usage, features, recommendations);
     }
-    
+
     public AgencyAnalytics getAgencyAnalytics(User user) {
-        log.info("Generating agency analytics for user: {}", user.getEmail());
-        
+        log.debug("Calcul des analytics agence pour l'utilisateur {}", user.getId());
+        AnalyticsAggregates.AgencyFacts facts = analyticsAggregates.agency(user.getId());
+        List<AnalyticsAggregates.Listing> listings = facts.listings();
+        AnalyticsAggregates.Engagement engagement = facts.engagement();
+        AnalyticsAggregates.Market market = analyticsAggregates.market();
+
+        LocalDateTime now = LocalDateTime.now();
+        YearMonth currentMonth = YearMonth.from(now);
+        Map<Annonce.StatusAnnonce, Long> byStatus = new EnumMap<>(Annonce.StatusAnnonce.class);
+        Map<Annonce.TypeBien, long[]> byType = new EnumMap<>(Annonce.TypeBien.class);
+        Map<Annonce.TypeBien, Long> vuesByType = new EnumMap<>(Annonce.TypeBien.class);
+        Map<String, Long> byVille = new HashMap<>();
+        long[] revenueByMonth = new long[MONTHS];
+        long[] transactionsByMonth = new long[MONTHS];
+        long[] listingsByMonth = new long[MONTHS];
+        double[] prixByType = new double[Annonce.TypeBien.values().length];
+        long vues = 0L;
+        long favoris = 0L;
+        long saleDays = 0L;
+        long sales = 0L;
+        long rentDays = 0L;
+        long rentals = 0L;
+        for (AnalyticsAggregates.Listing listing : listings) {
+            byStatus.merge(listing.status, 1L, Long::sum);
+            byType.computeIfAbsent(listing.typeBien, t -> new long[1])[0]++;
+            prixByType[listing.typeBien.ordinal()] += listing.prix;
+            vuesByType.merge(listing.typeBien, listing.vues, Long::sum);
+            byVille.merge(listing.ville, 1L, Long::sum);
+            vues += listing.vues;
+            favoris += listing.favoris;
+            if (listing.dateCreation != null) {
+                addToMonth(listingsByMonth, currentMonth, listing.dateCreation.toLocalDate(), 1L);
+            }
+            boolean closed = listing.status == Annonce.StatusAnnonce.VENDU || listing.status == Annonce.StatusAnnonce.LOUE;
+            if (!closed || listing.dateMiseAJour == null) {
+                continue;
+            }
+            // Revenu estimé: prix de vente, ou un mois de loyer pour une location conclue
+            addToMonth(revenueByMonth, currentMonth, listing.dateMiseAJour.toLocalDate(), Math.round(listing.prix));
+            addToMonth(transactionsByMonth, currentMonth, listing.dateMiseAJour.toLocalDate(), 1L);
+            long days = listing.dateCreation != null ? ChronoUnit.DAYS.between(listing.dateCreation, listing.dateMiseAJour) : 0L;
+            if (listing.status == Annonce.StatusAnnonce.VENDU) {
+                saleDays += days;
+                sales++;
+            } else {
+                rentDays += days;
+                rentals++;
+            }
+        }
+
+        long[] newClientsByMonth = new long[MONTHS];
+        long activeClients = 0L;
+        long vente = 0L;
+        long location = 0L;
+        long mixed = 0L;
+        for (AnalyticsAggregates.Client client : engagement.clients) {
+            if (client.firstInteraction != null) {
+                addToMonth(newClientsByMonth, currentMonth, client.firstInteraction.toLocalDate(), 1L);
+            }
+            if (client.lastInteraction != null && client.lastInteraction.isAfter(now.minusDays(30))) {
+                activeClients++;
+            }
+            if (client.vente && client.location) {
+                mixed++;
+            } else if (client.vente) {
+                vente++;
+            } else {
+                location++;
+            }
+        }
+        long totalClients = engagement.clients.size();
+        Double satisfaction = engagement.ratingCount > 0 ? round((double) engagement.ratingSum / engagement.ratingCount) : null;
+        long transactions = byStatus.getOrDefault(Annonce.StatusAnnonce.VENDU, 0L) + byStatus.getOrDefault(Annonce.StatusAnnonce.LOUE, 0L);
+
         List<MetricData> kpis = Arrays.asList(
-            new MetricData("Chiffre d'affaires", 127500 + random.nextInt(50000), "positive", 18.3 + random.nextDouble() * 10, "euro", "#4CAF50"),
-            new MetricData("Transactions", 23 + random.nextInt(10), "positive", 12.5 + random.nextDouble() * 10, "handshake", "#2196F3"),
-            new MetricData("Clients actifs", 89 + random.nextInt(20), "positive", 7.8 + random.nextDouble() * 5, "people", "#FF9800"),
-            new MetricData("Taux conversion", 15 + random.nextInt(10), "neutral", -1.2 + random.nextDouble() * 3, "trending_up", "#9C27B0")
+            metric("Chiffre d'affaires estimé", last(revenueByMonth), previous(revenueByMonth), "euro", "#4CAF50"),
+            metric("Transactions", last(transactionsByMonth), previous(transactionsByMonth), "handshake", "#2196F3"),
+            metric("Nouveaux clients", last(newClientsByMonth), previous(newClientsByMonth), "people", "#FF9800"),
+            new MetricData("Taux conversion", listings.isEmpty() ? 0 : (int) Math.round(transactions * 100.0 / listings.size()),
+                "neutral", 0.0, "trending_up", "#9C27B0")
         );
-        
+
+        long[] revenueThousands = new long[MONTHS];
+        for (int i = 0; i < MONTHS; i++) {
+            revenueThousands[i] = Math.round(revenueByMonth[i] / 1000.0);
+        }
         List<ChartData> performanceCharts = Arrays.asList(
-            createRevenueChart(),
-            createSalesPerformanceChart(),
-            createClientAcquisitionChart()
+            new ChartData("line", "Chiffre d'affaires estimé (milliers)", monthLabels(currentMonth),
+                List.of(new ChartDataset("Revenu estimé", toInts(revenueThousands), "rgba(76, 175, 80, 0.2)", "#4CAF50", 3, true))),
+            new ChartData("bar", "Entonnoir de conversion", Arrays.asList("Vues", "Favoris", "Avis", "Transactions"),
+                List.of(new ChartDataset("Annonces", toInts(new long[]{vues, favoris, engagement.comments, transactions}),
+                    String.join(",", Arrays.copyOf(COLORS, 4)), "", 1, false))),
+            new ChartData("line", "Nouvelles annonces et nouveaux clients", monthLabels(currentMonth), Arrays.asList(
+                new ChartDataset("Nouvelles annonces", toInts(listingsByMonth), "rgba(33, 150, 243, 0.3)", "#2196F3", 2, true),
+                new ChartDataset("Nouveaux clients", toInts(newClientsByMonth), "rgba(76, 175, 80, 0.3)", "#4CAF50", 2, true)))
         );
-        
+
+        List<PropertyTypeData> propertyByType = new ArrayList<>();
+        byType.entrySet().stream()
+            .sorted(Map.Entry.<Annonce.TypeBien, long[]>comparingByValue(Comparator.comparingLong(v -> v[0])).reversed())
+            .forEach(entry -> propertyByType.add(new PropertyTypeData(entry.getKey().getDisplayName(), (int) entry.getValue()[0],
+                round(prixByType[entry.getKey().ordinal()] / entry.getValue()[0]), COLORS[propertyByType.size() % COLORS.length])));
         PropertyAnalytics propertyAnalytics = new PropertyAnalytics(
-            145 + random.nextInt(50),
-            23 + random.nextInt(10),
-            67 + random.nextInt(20),
-            55 + random.nextInt(15),
-            45.5 + random.nextDouble() * 20,
-            12.3 + random.nextDouble() * 10,
-            Arrays.asList(
-                new PropertyTypeData("Appartement", 65 + random.nextInt(20), 250000.0 + random.nextDouble() * 100000, "#4CAF50"),
-                new PropertyTypeData("Villa", 35 + random.nextInt(15), 450000.0 + random.nextDouble() * 200000, "#2196F3"),
-                new PropertyTypeData("Studio", 25 + random.nextInt(10), 150000.0 + random.nextDouble() * 50000, "#FF9800"),
-                new PropertyTypeData("Commercial", 20 + random.nextInt(10), 350000.0 + random.nextDouble() * 150000, "#9C27B0")
-            )
+            listings.size(),
+            toInt(byStatus.getOrDefault(Annonce.StatusAnnonce.VENDU, 0L)),
+            toInt(byStatus.getOrDefault(Annonce.StatusAnnonce.LOUE, 0L)),
+            toInt(byStatus.getOrDefault(Annonce.StatusAnnonce.ACTIVE, 0L)),
+            sales > 0 ? round((double) saleDays / sales) : null,
+            rentals > 0 ? round((double) rentDays / rentals) : null,
+            propertyByType
         );
-        
+
         ClientAnalyticsData clientAnalytics = new ClientAnalyticsData(
-            156 + random.nextInt(50),
-            89 + random.nextInt(20),
-            12 + random.nextInt(8),
-            4.7 + random.nextDouble() * 0.3,
+            toInt(totalClients),
+            toInt(activeClients),
+            toInt(last(newClientsByMonth)),
+            satisfaction,
             Arrays.asList(
-                new ClientSegment("Acheteurs", 45, 45.0, "#4CAF50"),
-                new ClientSegment("Locataires", 35, 35.0, "#2196F3"),
-                new ClientSegment("Investisseurs", 20, 20.0, "#FF9800")
-            )
+                segment("Acheteurs", vente, totalClients, "#4CAF50"),
+                segment("Locataires", location, totalClients, "#2196F3"),
+                segment("Acheteurs et locataires", mixed, totalClients, "#FF9800"))
         );
-        
+
+        // Pas de données par agent: l'équipe se limite à l'effectif déclaré et aux moyennes par annonce
+        Integer members = user instanceof AgenceImmobiliere agence ? agence.getNombreEmployes() : null;
         TeamPerformance teamPerformance = new TeamPerformance(
-            8 + random.nextInt(5),
-            4.3 + random.nextDouble() * 0.5,
-            Arrays.asList(
-                new MemberPerformance("Sarah Ahmed", "Agent Senior", 4.8, 15 + random.nextInt(5), 45000.0 + random.nextDouble() * 20000, "SA"),
-                new MemberPerformance("Mohamed Ben Ali", "Agent Commercial", 4.6, 12 + random.nextInt(5), 38000.0 + random.nextDouble() * 15000, "MB"),
-                new MemberPerformance("Fatima Trabelsi", "Négociatrice", 4.5, 10 + random.nextInt(5), 32000.0 + random.nextDouble() * 12000, "FT")
-            ),
+            members,
+            satisfaction,
+            List.of(),
             Arrays.asList(
-                new MetricData("Performance moyenne", 85 + random.nextInt(10), "positive", 5.2, "trending_up", "#4CAF50"),
-                new MetricData("Objectifs atteints", 92, "positive", 8.5, "flag", "#2196F3")
-            )
-        );
-        
-        MarketInsights marketInsights = new MarketInsights(
-            "growing",
-            5.7 + random.nextDouble() * 3,
-            Arrays.asList(
-                new MarketData("Concurrent A", 25 + random.nextInt(10), "#4CAF50"),
-                new MarketData("Concurrent B", 20 + random.nextInt(8), "#2196F3"),
-                new MarketData("Concurrent C", 15 + random.nextInt(5), "#FF9800"),
-                new MarketData("Autres", 40, "#E0E0E0")
-            ),
-            Arrays.asList(
-                new PriceInsight("Centre-ville Tunis", 280000.0 + random.nextDouble() * 50000, 5.2 + random.nextDouble() * 3, "positive"),
-                new PriceInsight("Banlieue Tunis", 180000.0 + random.nextDouble() * 40000, 3.8 + random.nextDouble() * 2, "positive"),
-                new PriceInsight("Sousse", 220000.0 + random.nextDouble() * 45000, -1.2 + random.nextDouble() * 3, "negative")
-            ),
-            Arrays.asList(
-                "Concentrez-vous sur les appartements familiaux",
-                "Le marché des villas est en croissance",
-                "Considérez l'expansion vers Monastir"
-            )
-        );
-        
-        return new AgencyAnalytics(kpis, performanceCharts, propertyAnalytics, clientAnalytics, teamPerformance, marketInsights);
-    }
-    
-    private ChartData createSearchActivityChart() {
-        List<String> labels = Arrays.asList("Jan", "Fév", "Mar", "Avr", "Mai", "Jun", "Jul", "Aoû", "Sep", "Oct", "Nov", "Déc");
-        List<Integer> data = Arrays.asList(12, 19, 23, 35, 42, 38, 45, 41, 47, 52, 48, 55);
-        
-        return new ChartData(
-            "line",
-            "Activité de recherche mensuelle",
-            labels,
-            Arrays.asList(new ChartDataset("Recherches", data, "rgba(76, 175, 80, 0.2)", "#4CAF50", 2, true))
+                new MetricData("Vues par annonce", listings.isEmpty() ? 0 : toInt(vues / listings.size()), "neutral", 0.0, "visibility", "#4CAF50"),
+                new MetricData("Favoris par annonce", listings.isEmpty() ? 0 : toInt(favoris / listings.size()), "neutral", 0.0, "favorite", "#2196F3"))
         );
+
+        return new AgencyAnalytics(kpis, performanceCharts, propertyAnalytics, clientAnalytics, teamPerformance,
+            marketInsights(market, user.getId(), byVille, byStatus, vuesByType, byType));
     }
-    
-    private ChartData createViewsByPropertyTypeChart() {
-        List<String> labels = Arrays.asList("Appartement", "Villa", "Studio", "Duplex", "Commercial");
-        List<Integer> data = Arrays.asList(65, 35, 25, 15, 10);
-        List<String> colors = Arrays.asList("#4CAF50", "#2196F3", "#FF9800", "#9C27B0", "#F44336");
-        
-        return new ChartData(
-            "doughnut",
-            "Consultations par type de bien",
-            labels,
-            Arrays.asList(new ChartDataset("Consultations", data, String.join(",", colors), "", 0, false))
-        );
+
+    private MarketInsights marketInsights(AnalyticsAggregates.Market market, Long agencyId, Map<String, Long> byVille,
+                                          Map<Annonce.StatusAnnonce, Long> byStatus, Map<Annonce.TypeBien, Long> vuesByType,
+                                          Map<Annonce.TypeBien, long[]> byType) {
+        double growth = market.previousCount > 0 ? round((market.recentCount - market.previousCount) * 100.0 / market.previousCount) : 0.0;
+        String trend = growth > 2.0 ? "growing" : growth < -2.0 ? "declining" : "stable";
+        List<String> villes = topKeys(byVille, 3);
+
+        // Parts des annonces actives dans la ville principale de l'agence; les concurrents restent anonymes
+        List<MarketData> competitors = new ArrayList<>();
+        Map<Long, Long> active = !villes.isEmpty() ? market.activeByVille.getOrDefault(villes.get(0), Map.of()) : Map.of();
+        long activeTotal = active.values().stream().mapToLong(Long::longValue).sum();
+        if (activeTotal > 0) {
+            int own = share(active.getOrDefault(agencyId, 0L), activeTotal);
+            competitors.add(new MarketData("Votre agence", own, COLORS[0]));
+            int others = 100 - own;
+            List<Long> rivals = active.entrySet().stream()
+                .filter(entry -> !entry.getKey().equals(agencyId))
+                .map(Map.Entry::getValue)
+                .sorted(Comparator.reverseOrder())
+                .limit(3)
+                .toList();
+            for (int i = 0; i < rivals.size(); i++) {
+                int rivalShare = share(rivals.get(i), activeTotal);
+                competitors.add(new MarketData("Concurrent " + (i + 1), rivalShare, COLORS[i + 1]));
+                others -= rivalShare;
+            }
+            if (others > 0) {
+                competitors.add(new MarketData("Autres", others, "#E0E0E0"));
+            }
+        }
+
+        List<PriceInsight> priceInsights = new ArrayList<>();
+        for (String ville : villes) {
+            double[] recent = market.recent.get(ville);
+            double[] previous = market.previous.get(ville);
+            if (recent == null) {
+                continue;
+            }
+            double change = previous != null && previous[1] > 0 ? round((recent[1] - previous[1]) * 100.0 / previous[1]) : 0.0;
+            priceInsights.add(new PriceInsight(ville, round(recent[1]), change,
+                change > 0 ? "positive" : change < 0 ? "negative" : "neutral"));
+        }
+
+        List<String> recommendations = new ArrayList<>();
+        vuesByType.entrySet().stream()
+            .max(Comparator.comparingDouble(entry -> (double) entry.getValue() / byType.get(entry.getKey())[0]))
+            .filter(entry -> entry.getValue() > 0)
+            .ifPresent(entry -> recommendations.add("Les biens de type " + entry.getKey().getDisplayName()
+                + " obtiennent le plus de vues par annonce"));
+        long dormant = byStatus.getOrDefault(Annonce.StatusAnnonce.EXPIRE, 0L) + byStatus.getOrDefault(Annonce.StatusAnnonce.INACTIVE, 0L);
+        if (dormant > 0) {
+            recommendations.add(dormant + " annonces expirées ou inactives peuvent être republiées");
+        }
+        market.recent.entrySet().stream()
+            .filter(entry -> entry.getValue()[0] >= 3 && market.previous.containsKey(entry.getKey()))
+            .max(Comparator.comparingDouble(entry -> entry.getValue()[0] / market.previous.get(entry.getKey())[0]))
+            .filter(entry -> entry.getValue()[0] > market.previous.get(entry.getKey())[0])
+            .ifPresent(entry -> recommendations.add("Le marché de " + entry.getKey() + " est le plus dynamique sur 30 jours"));
+
+        return new MarketInsights(trend, growth, competitors, priceInsights, recommendations);
     }
-    
-    private ChartData createMonthlyEngagementChart() {
-        List<String> labels = Arrays.asList("Semaine 1", "Semaine 2", "Semaine 3", "Semaine 4");
-        List<Integer> searches = Arrays.asList(12, 15, 8, 12);
-        List<Integer> favorites = Arrays.asList(3, 5, 2, 2);
-        List<Integer> contacts = Arrays.asList(1, 2, 1, 3);
-        
-        return new ChartData(
-            "bar",
-            "Engagement mensuel",
-            labels,
-            Arrays.asList(
-                new ChartDataset("Recherches", searches, "rgba(76, 175, 80, 0.8)", "#4CAF50", 1, false),
-                new ChartDataset("Favoris", favorites, "rgba(255, 152, 0, 0.8)", "#FF9800", 1, false),
-                new ChartDataset("Contacts", contacts, "rgba(33, 150, 243, 0.8)", "#2196F3", 1, false)
-            )
-        );
+
+    private static MetricData metric(String label, long current, long previous, String icon, String color) {
+        double change = previous > 0 ? round((current - previous) * 100.0 / previous) : current > 0 ? 100.0 : 0.0;
+        String trend = change > 0 ? "positive" : change < 0 ? "negative" : "neutral";
+        return new MetricData(label, toInt(current), trend, change, icon, color);
     }
-    
-    private ChartData createRevenueChart() {
-        List<String> labels = Arrays.asList("Jan", "Fév", "Mar", "Avr", "Mai", "Jun");
-        List<Integer> revenue = Arrays.asList(85000, 92000, 78000, 105000, 127500, 134000);
-        
-        return new ChartData(
-            "line",
-            "Évolution du chiffre d'affaires",
-            labels,
-            Arrays.asList(new ChartDataset("Revenue", revenue, "rgba(76, 175, 80, 0.2)", "#4CAF50", 3, true))
-        );
+
+    private static ClientSegment segment(String label, long count, long total, String color) {
+        return new ClientSegment(label, toInt(count), total > 0 ? round(count * 100.0 / total) : 0.0, color);
     }
-    
-    private ChartData createSalesPerformanceChart() {
-        List<String> labels = Arrays.asList("Ventes", "Locations", "Évaluations", "Prospection");
-        List<Integer> data = Arrays.asList(23, 45, 12, 67);
-        List<String> colors = Arrays.asList("#4CAF50", "#2196F3", "#FF9800", "#9C27B0");
-        
-        return new ChartData(
-            "bar",
-            "Performance par activité",
-            labels,
-            Arrays.asList(new ChartDataset("Activités", data, String.join(",", colors), "", 1, false))
-        );
+
+    private static ChartData doughnut(String title, String label, Map<String, Long> counts) {
+        List<String> labels = topKeys(counts, COLORS.length);
+        List<Integer> data = labels.stream().map(key -> toInt(counts.get(key))).toList();
+        return new ChartData("doughnut", title, labels,
+            List.of(new ChartDataset(label, data, String.join(",", Arrays.copyOf(COLORS, labels.size())), "", 0, false)));
     }
-    
-    private ChartData createClientAcquisitionChart() {
-        List<String> labels = Arrays.asList("Jan", "Fév", "Mar", "Avr", "Mai", "Jun");
-        List<Integer> newClients = Arrays.asList(8, 12, 6, 15, 18, 12);
-        List<Integer> retainedClients = Arrays.asList(45, 47, 44, 52, 58, 62);
-        
-        return new ChartData(
-            "line",
-            "Acquisition et fidélisation clients",
-            labels,
-            Arrays.asList(
-                new ChartDataset("Nouveaux clients", newClients, "rgba(33, 150, 243, 0.3)", "#2196F3", 2, true),
-                new ChartDataset("Clients fidélisés", retainedClients, "rgba(76, 175, 80, 0.3)", "#4CAF50", 2, true)
-            )
-        );
+
+    // Index 0 = il y a MONTHS - 1 mois, dernier index = mois courant
+    private static void addToMonth(long[] months, YearMonth currentMonth, LocalDate date, long value) {
+        long index = MONTHS - 1 - ChronoUnit.MONTHS.between(YearMonth.from(date), currentMonth);
+        if (index >= 0 && index < MONTHS) {
+            months[(int) index] += value;
+        }
+    }
+
+    // Semaines glissantes de 7 jours, la dernière se termine aujourd'hui
+    private static void addToWeek(long[] weeks, LocalDate start, LocalDate date, long value) {
+        long index = ChronoUnit.DAYS.between(start, date) / 7;
+        if (!date.isBefore(start) && index < WEEKS) {
+            weeks[(int) index] += value;
+        }
+    }
+
+    private static List<String> monthLabels(YearMonth currentMonth) {
+        List<String> labels = new ArrayList<>(MONTHS);
+        for (int i = MONTHS - 1; i >= 0; i--) {
+            labels.add(MONTH_LABELS[currentMonth.minusMonths(i).getMonthValue() - 1]);
+        }
+        return labels;
+    }
+
+    private static List<String> weekLabels() {
+        List<String> labels = new ArrayList<>(WEEKS);
+        for (int i = 1; i <= WEEKS; i++) {
+            labels.add("Semaine " + i);
+        }
+        return labels;
+    }
+
+    private static Map<String, Long> displayNames(Map<Annonce.TypeBien, Long> byType) {
+        Map<String, Long> named = new HashMap<>();
+        byType.forEach((type, count) -> named.put(type.getDisplayName(), count));
+        return named;
+    }
+
+    private static List<String> topKeys(Map<String, Long> counts, int limit) {
+        return counts.entrySet().stream()
+            .filter(entry -> entry.getKey() != null)
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .limit(limit)
+            .map(Map.Entry::getKey)
+            .toList();
+    }
+
+    private static List<Integer> toInts(long[] values) {
+        List<Integer> ints = new ArrayList<>(values.length);
+        for (long value : values) {
+            ints.add(toInt(value));
+        }
+        return ints;
+    }
+
+    private static long last(long[] months) {
+        return months[MONTHS - 1];
+    }
+
+    private static long previous(long[] months) {
+        return months[MONTHS - 2];
+    }
+
+    private static int share(long count, long total) {
+        return (int) Math.round(count * 100.0 / total);
+    }
+
+    private static int toInt(long value) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10.0) / 10.0;
     }
-}
\ No newline at end of file
+}
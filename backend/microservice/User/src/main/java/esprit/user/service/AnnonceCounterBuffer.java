@@ -0,0 +1,158 @@
+package esprit.user.service;
+
+import esprit.user.event.AnnonceCountersFlushedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongFunction;
+
+// Compteurs d'annonces (vues, favoris) en écriture différée: les incréments s'accumulent en mémoire
+// et partent en base par lots d'UPDATE relatifs (col = col + ?), sans relire la ligne
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AnnonceCounterBuffer {
+
+    public enum Counter {
+        VUES("UPDATE annonces SET vues = COALESCE(vues, 0) + ? WHERE id = ?"),
+        // Le delta peut être négatif (retraits): le compteur ne descend jamais sous zéro
+        FAVORIS("UPDATE annonces SET favoris = GREATEST(COALESCE(favoris, 0) + ?, 0) WHERE id = ?");
+
+        private final String updateSql;
+
+        Counter(String updateSql) {
+            this.updateSql = updateSql;
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final Map<Counter, ConcurrentHashMap<Long, LongAdder>> pending = new EnumMap<>(Counter.class);
+    private volatile boolean shuttingDown;
+    // Écriture d'un lot (verrou exclusif) contre lecture des compteurs en base (verrou partagé)
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private long flushedBatches;
+
+    {
+        for (Counter counter : Counter.values()) {
+            pending.put(counter, new ConcurrentHashMap<>());
+        }
+    }
+
+    public void increment(Counter counter, Long annonceId) {
+        add(counter, annonceId, 1L);
+    }
+
+    public void add(Counter counter, Long annonceId, long delta) {
+        ConcurrentHashMap<Long, LongAdder> deltas = pending.get(counter);
+        LongAdder adder = deltas.computeIfAbsent(annonceId, id -> new LongAdder());
+        adder.add(delta);
+        // Compteur retiré par flush entre-temps: ce que son sumThenReset n'a pas ramassé est reporté ici.
+        // Chaque incrément est récupéré par un seul des deux sumThenReset, jamais perdu ni compté deux fois
+        if (deltas.get(annonceId) != adder) {
+            long detached = adder.sumThenReset();
+            if (detached != 0) {
+                add(counter, annonceId, detached);
+            }
+        }
+    }
+
+    // Delta pas encore écrit en base, à ajouter à la valeur lue pour l'affichage
+    public long pendingDelta(Counter counter, Long annonceId) {
+        LongAdder adder = pending.get(counter).get(annonceId);
+        return adder != null ? adder.sum() : 0L;
+    }
+
+    // Lecture en base qui ne chevauche aucun commit de lot: elle contient exactement les lots numérotés
+    // jusqu'à la valeur reçue, les suivants arriveront par AnnonceCountersFlushedEvent
+    public <T> T readConsistent(LongFunction<T> read) {
+        flushLock.readLock().lock();
+        try {
+            return read.apply(flushedBatches);
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.counters.flush-interval-ms:5000}")
+    public void flush() {
+        for (Counter counter : Counter.values()) {
+            flush(counter);
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.info("Écriture des compteurs d'annonces en attente avant l'arrêt");
+        shuttingDown = true;
+        flush();
+    }
+
+    private void flush(Counter counter) {
+        ConcurrentHashMap<Long, LongAdder> deltas = pending.get(counter);
+        List<Object[]> batch = new ArrayList<>();
+        // Ordre des ids stable: deux instances qui flushent en même temps verrouillent les lignes dans le même ordre
+        deltas.keySet().stream().sorted().forEach(id -> {
+            LongAdder adder = deltas.get(id);
+            // sumThenReset ne perd aucun incrément concurrent (chaque cellule est remise à zéro atomiquement)
+            long delta = adder.sumThenReset();
+            if (delta != 0) {
+                batch.add(new Object[] {delta, id});
+            } else if (deltas.remove(id, adder)) {
+                // Entrée inactive retirée; un incrément arrivé avant le retrait est réinjecté, ceux d'après
+                // sont reportés par add, qui voit le compteur détaché
+                long late = adder.sumThenReset();
+                if (late != 0) {
+                    add(counter, id, late);
+                }
+            }
+        });
+        if (batch.isEmpty()) {
+            return;
+        }
+        long sequence;
+        flushLock.writeLock().lock();
+        try {
+            // Une seule transaction: un lot en échec est annulé en entier et peut être rejoué sans double comptage
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(counter.updateSql, batch));
+            sequence = ++flushedBatches;
+            log.debug("Compteur {}: {} annonces mises à jour", counter, batch.size());
+        } catch (DataAccessException | TransactionException e) {
+            // Les deltas sont remis dans le tampon et repartiront au prochain passage
+            log.warn("Échec de l'écriture du compteur {} ({} annonces): {}", counter, batch.size(), e.getMessage());
+            for (Object[] row : batch) {
+                add(counter, (Long) row[1], (Long) row[0]);
+            }
+            return;
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+        // Les caches et classements en mémoire disparaissent avec le contexte: inutile de les prévenir à l'arrêt
+        if (shuttingDown) {
+            return;
+        }
+        Map<Long, Long> flushed = new HashMap<>();
+        for (Object[] row : batch) {
+            flushed.put((Long) row[1], (Long) row[0]);
+        }
+        eventPublisher.publishEvent(new AnnonceCountersFlushedEvent(counter, flushed, sequence));
+    }
+}
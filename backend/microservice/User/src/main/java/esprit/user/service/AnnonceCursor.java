@@ -0,0 +1,109 @@
+package esprit.user.service;
+
+import esprit.user.entity.Annonce;
+import lombok.Getter;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.function.Function;
+
+// Position de pagination par clé (seek): dernier couple (clé de tri, id) renvoyé au client.
+// Le client ne voit qu'une chaîne base64url opaque.
+@Getter
+public final class AnnonceCursor {
+
+    private static final String SEPARATOR = "|";
+
+    public enum SortKey {
+        DATE_CREATION("dateCreation", false, LocalDateTime::parse, Annonce::getDateCreation),
+        PRIX("prix", false, BigDecimal::new, Annonce::getPrix),
+        SURFACE("surface", true, Integer::valueOf, Annonce::getSurface),
+        VUES("vues", true, Integer::valueOf, Annonce::getVues),
+        FAVORIS("favoris", true, Integer::valueOf, Annonce::getFavoris),
+        VILLE("ville", false, Function.identity(), Annonce::getVille);
+
+        private final String property;
+        private final boolean nullable;
+        private final Function<String, ? extends Comparable<?>> parser;
+        private final Function<Annonce, ? extends Comparable<?>> extractor;
+
+        SortKey(String property, boolean nullable, Function<String, ? extends Comparable<?>> parser,
+                Function<Annonce, ? extends Comparable<?>> extractor) {
+            this.property = property;
+            this.nullable = nullable;
+            this.parser = parser;
+            this.extractor = extractor;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public boolean isNullable() {
+            return nullable;
+        }
+
+        // Mêmes valeurs que le sortBy de la recherche classique, dateCreation par défaut
+        public static SortKey from(String sortBy) {
+            if (sortBy != null) {
+                for (SortKey key : values()) {
+                    if (key.property.equalsIgnoreCase(sortBy)) {
+                        return key;
+                    }
+                }
+            }
+            return DATE_CREATION;
+        }
+    }
+
+    private final SortKey sortKey;
+    private final Sort.Direction direction;
+    private final Comparable<?> value;
+    private final Long id;
+
+    private AnnonceCursor(SortKey sortKey, Sort.Direction direction, Comparable<?> value, Long id) {
+        this.sortKey = sortKey;
+        this.direction = direction;
+        this.value = value;
+        this.id = id;
+    }
+
+    public boolean isAscending() {
+        return direction == Sort.Direction.ASC;
+    }
+
+    // L'id départage les ex aequo: l'ordre est total et stable d'une page à l'autre
+    public static Sort sort(SortKey sortKey, Sort.Direction direction) {
+        return Sort.by(direction, sortKey.getProperty()).and(Sort.by(direction, "id"));
+    }
+
+    public static AnnonceCursor after(Annonce annonce, SortKey sortKey, Sort.Direction direction) {
+        return new AnnonceCursor(sortKey, direction, sortKey.extractor.apply(annonce), annonce.getId());
+    }
+
+    public String encode() {
+        String raw = sortKey.name() + SEPARATOR + direction.name() + SEPARATOR + id
+            + (value != null ? SEPARATOR + value : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Le curseur doit avoir été produit pour le même tri que la requête en cours
+    public static AnnonceCursor decode(String token, SortKey sortKey, Sort.Direction direction) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\" + SEPARATOR, 4);
+            if (parts.length < 3 || SortKey.valueOf(parts[0]) != sortKey || Sort.Direction.valueOf(parts[1]) != direction) {
+                throw new IllegalArgumentException("Tri incompatible");
+            }
+            Comparable<?> value = parts.length == 4 ? sortKey.parser.apply(parts[3]) : null;
+            return new AnnonceCursor(sortKey, direction, value, Long.valueOf(parts[2]));
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Curseur de pagination invalide");
+        }
+    }
+}
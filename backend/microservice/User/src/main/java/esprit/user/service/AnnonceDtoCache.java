@@ -0,0 +1,184 @@
+package esprit.user.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import esprit.user.dto.AnnonceDto.AnnonceResponseDto;
+import esprit.user.dto.AnnonceDto.AnnonceSummaryDto;
+import esprit.user.event.AnnonceCountersFlushedEvent;
+import esprit.user.event.AnnonceEvent;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+// Cache des DTO d'annonce par id: L1 Caffeine local, L2 partagé optionnel (SharedAnnonceCache).
+// Les appelants reçoivent toujours une copie: les DTO sont mutables.
+@Component
+@Slf4j
+public class AnnonceDtoCache {
+
+    private static final String DETAIL_KEY = "annonce:detail:";
+    private static final String SUMMARY_KEY = "annonce:summary:";
+
+    private final boolean enabled;
+    private final Duration sharedTtl;
+    private final SharedAnnonceCache shared;
+    private final Cache<Long, CachedDetail> details;
+    private final Cache<Long, AnnonceSummaryDto> summaries;
+
+    public AnnonceDtoCache(@Value("${app.cache.annonces.enabled:true}") boolean enabled,
+                           @Value("${app.cache.annonces.max-size:10000}") long maxSize,
+                           @Value("${app.cache.annonces.ttl-seconds:300}") long ttlSeconds,
+                           @Value("${app.cache.annonces.l2.ttl-seconds:600}") long sharedTtlSeconds,
+                           ObjectProvider<SharedAnnonceCache> sharedCache) {
+        this.enabled = enabled;
+        this.sharedTtl = Duration.ofSeconds(sharedTtlSeconds);
+        this.details = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+        this.summaries = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+        this.shared = sharedCache.getIfAvailable();
+        if (this.shared != null) {
+            // Une modification faite sur une autre instance vide aussi notre L1
+            this.shared.subscribe(this::evictLocal);
+            log.info("Cache des annonces: L2 partagé {}", shared.getClass().getSimpleName());
+        }
+    }
+
+    public CachedDetail getDetail(Long id, Supplier<CachedDetail> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return details.get(id, key -> loadShared(DETAIL_KEY + key, loader, CachedDetail::copy)).copy();
+    }
+
+    public AnnonceSummaryDto getSummary(Long id, Supplier<AnnonceSummaryDto> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return copy(summaries.get(id, key -> loadShared(SUMMARY_KEY + key, loader, AnnonceDtoCache::copy)));
+    }
+
+    // Résumé déjà en cache, sans chargement: l'appelant charge les absents en une seule requête
+    public Optional<AnnonceSummaryDto> peekSummary(Long id) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        AnnonceSummaryDto cached = summaries.getIfPresent(id);
+        if (cached == null && shared != null) {
+            cached = shared.get(SUMMARY_KEY + id).map(value -> (AnnonceSummaryDto) value).orElse(null);
+            if (cached != null) {
+                summaries.put(id, copy(cached));
+            }
+        }
+        return Optional.ofNullable(cached).map(AnnonceDtoCache::copy);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T loadShared(String key, Supplier<T> loader, UnaryOperator<T> copier) {
+        if (shared == null) {
+            return loader.get();
+        }
+        return shared.get(key)
+            .map(value -> copier.apply((T) value))
+            .orElseGet(() -> {
+                T value = loader.get();
+                shared.put(key, copier.apply(value), sharedTtl);
+                return value;
+            });
+    }
+
+    // Mise à jour, suppression, changement de statut: invalidation après commit
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAnnonceEvent(AnnonceEvent event) {
+        evict(event.getAnnonceId());
+    }
+
+    // Les deltas écrits par cette instance sont reportés sur le L1 sans invalider l'entrée.
+    // Le L2 n'est pas réécrit: ses compteurs peuvent retarder au plus de son TTL.
+    @EventListener
+    public void onCountersFlushed(AnnonceCountersFlushedEvent event) {
+        boolean vues = event.getCounter() == AnnonceCounterBuffer.Counter.VUES;
+        event.getDeltas().forEach((id, delta) -> {
+            details.asMap().computeIfPresent(id, (key, cached) -> {
+                CachedDetail updated = cached.copy();
+                AnnonceResponseDto dto = updated.getDto();
+                if (vues) {
+                    dto.setVues(add(dto.getVues(), delta));
+                } else {
+                    dto.setFavoris(add(dto.getFavoris(), delta));
+                }
+                return updated;
+            });
+            summaries.asMap().computeIfPresent(id, (key, cached) -> {
+                AnnonceSummaryDto updated = copy(cached);
+                if (vues) {
+                    updated.setVues(add(updated.getVues(), delta));
+                } else {
+                    updated.setFavoris(add(updated.getFavoris(), delta));
+                }
+                return updated;
+            });
+        });
+    }
+
+    public void evict(Long id) {
+        evictLocal(id);
+        if (shared != null) {
+            shared.evict(id, DETAIL_KEY + id, SUMMARY_KEY + id);
+        }
+    }
+
+    public void clear() {
+        details.invalidateAll();
+        summaries.invalidateAll();
+    }
+
+    private void evictLocal(Long id) {
+        details.invalidate(id);
+        summaries.invalidate(id);
+    }
+
+    private static Integer add(Integer value, long delta) {
+        return (int) Math.max((value != null ? value : 0) + delta, 0);
+    }
+
+    private static AnnonceSummaryDto copy(AnnonceSummaryDto source) {
+        AnnonceSummaryDto copy = new AnnonceSummaryDto();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
+    }
+
+    // Détail + email du créateur: suffit pour savoir si le lecteur est le propriétaire, sans lire User
+    @Getter
+    public static class CachedDetail {
+        private final AnnonceResponseDto dto;
+        private final String createurEmail;
+
+        public CachedDetail(AnnonceResponseDto dto, String createurEmail) {
+            this.dto = dto;
+            this.createurEmail = createurEmail;
+        }
+
+        CachedDetail copy() {
+            AnnonceResponseDto copy = new AnnonceResponseDto();
+            BeanUtils.copyProperties(dto, copy);
+            copy.setImages(dto.getImages() != null ? new ArrayList<>(dto.getImages()) : null);
+            return new CachedDetail(copy, createurEmail);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package esprit.user.service;
+
+import esprit.user.entity.Annonce;
+import esprit.user.entity.JobWatermark;
+import esprit.user.event.AnnonceEvent;
+import esprit.user.repository.AnnonceRepository;
+import esprit.user.repository.JobWatermarkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Passage des annonces ACTIVE dont la date d'expiration est dépassée à EXPIRE, par tranches de chunk-size:
+// chaque tranche lit ses ids sur l'index (status, date_expiration) puis les met à jour par clé primaire,
+// dans une transaction courte. Le premier passage a lieu au démarrage et rattrape l'arriéré.
+// Le filigrane en base (job_watermarks) est la date de coupure du dernier passage complet: toute annonce
+// ACTIVE expirée avant lui a été traitée. Une instance qui le trouve récent laisse passer son tour.
+@Component
+@Slf4j
+public class AnnonceExpirySweeper {
+
+    static final String JOB_NAME = "annonce-expiry";
+
+    private final AnnonceRepository annonceRepository;
+    private final JobWatermarkRepository jobWatermarkRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final boolean enabled;
+    private final int chunkSize;
+    private final long intervalMs;
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private volatile Map<String, Object> lastRun = Map.of();
+
+    public AnnonceExpirySweeper(AnnonceRepository annonceRepository, JobWatermarkRepository jobWatermarkRepository,
+                                TransactionTemplate transactionTemplate, ApplicationEventPublisher eventPublisher,
+                                @Value("${app.annonces.expiry.enabled:true}") boolean enabled,
+                                @Value("${app.annonces.expiry.chunk-size:500}") int chunkSize,
+                                @Value("${app.annonces.expiry.interval-ms:300000}") long intervalMs) {
+        this.annonceRepository = annonceRepository;
+        this.jobWatermarkRepository = jobWatermarkRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.eventPublisher = eventPublisher;
+        this.enabled = enabled;
+        this.chunkSize = chunkSize;
+        this.intervalMs = intervalMs;
+    }
+
+    @Scheduled(fixedDelayString = "${app.annonces.expiry.interval-ms:300000}")
+    public void scheduledSweep() {
+        if (enabled) {
+            sweep(false);
+        }
+    }
+
+    // force: ignore le filigrane d'une autre instance (appel explicite). Retourne le nombre d'annonces expirées
+    public synchronized long sweep(boolean force) {
+        LocalDateTime cutoff = LocalDateTime.now();
+        long start = System.currentTimeMillis();
+        LocalDateTime watermark;
+        try {
+            watermark = jobWatermarkRepository.findById(JOB_NAME).map(JobWatermark::getWatermark).orElse(null);
+        } catch (DataAccessException e) {
+            log.warn("Impossible de lire le filigrane d'expiration: {}", e.getMessage());
+            failed.increment();
+            record("FAILED", cutoff, null, 0, 0L, start);
+            return 0L;
+        }
+        if (!force && watermark != null && watermark.isAfter(cutoff.minus(Duration.ofMillis(intervalMs / 2)))) {
+            skipped.increment();
+            record("SKIPPED", cutoff, watermark, 0, 0L, start);
+            return 0L;
+        }
+
+        int chunks = 0;
+        long count = 0L;
+        try {
+            int size;
+            do {
+                Integer chunk = transactionTemplate.execute(status -> expireChunk(cutoff));
+                size = chunk != null ? chunk : 0;
+                count += size;
+                chunks++;
+            } while (size == chunkSize);
+            jobWatermarkRepository.save(new JobWatermark(JOB_NAME, cutoff, LocalDateTime.now()));
+            watermark = cutoff;
+        } catch (DataAccessException e) {
+            // Les tranches déjà validées restent acquises; le filigrane n'avance pas et le passage suivant reprend
+            log.warn("Expiration des annonces interrompue après {} annonces: {}", count, e.getMessage());
+            failed.increment();
+            expired.add(count);
+            record("FAILED", cutoff, watermark, chunks, count, start);
+            return count;
+        }
+        runs.increment();
+        expired.add(count);
+        record("OK", cutoff, watermark, chunks, count, start);
+        if (count > 0) {
+            log.info("{} annonces expirées en {} tranches ({} ms)", count, chunks, System.currentTimeMillis() - start);
+        }
+        return count;
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("chunkSize", chunkSize);
+        metrics.put("runs", runs.sum());
+        metrics.put("skipped", skipped.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("expired", expired.sum());
+        metrics.put("lastRun", lastRun);
+        return metrics;
+    }
+
+    // Les lignes lues sont verrouillées jusqu'au commit: toutes passent à EXPIRE et leurs événements
+    // partent après le commit de la tranche (TransactionalEventListener)
+    private int expireChunk(LocalDateTime cutoff) {
+        List<Object[]> rows = annonceRepository.findExpiredIdsByStatus(Annonce.StatusAnnonce.ACTIVE, cutoff,
+            PageRequest.of(0, chunkSize));
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            ids.add((Long) row[0]);
+        }
+        annonceRepository.updateStatusByIdIn(ids, Annonce.StatusAnnonce.ACTIVE, Annonce.StatusAnnonce.EXPIRE,
+            LocalDateTime.now());
+        for (Object[] row : rows) {
+            eventPublisher.publishEvent(AnnonceEvent.expired((Long) row[0], (Long) row[1]));
+        }
+        return rows.size();
+    }
+
+    private void record(String outcome, LocalDateTime cutoff, LocalDateTime watermark, int chunks, long count, long start) {
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("outcome", outcome);
+        run.put("cutoff", cutoff);
+        run.put("watermark", watermark);
+        run.put("chunks", chunks);
+        run.put("expired", count);
+        run.put("durationMs", System.currentTimeMillis() - start);
+        lastRun = run;
+    }
+}
@@ -0,0 +1,312 @@
+package esprit.user.service;
+
+import esprit.user.dto.AnnonceDto.AnnonceSearchDto;
+import esprit.user.entity.Annonce;
+import esprit.user.event.AnnonceEvent;
+import esprit.user.repository.AnnonceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Un bitmap par valeur d'enum et par équipement, indexé par id d'annonce
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AnnonceFacetIndex {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    public enum Equipement {
+        GARAGE("garage"),
+        JARDIN("jardin"),
+        PISCINE("piscine"),
+        CLIMATISATION("climatisation"),
+        ASCENSEUR("ascenseur");
+
+        private final String key;
+
+        Equipement(String key) {
+            this.key = key;
+        }
+
+        public String getKey() {
+            return key;
+        }
+    }
+
+    private final AnnonceRepository annonceRepository;
+
+    @Value("${app.search.facets.enabled:true}")
+    private boolean enabled;
+
+    private final Map<Annonce.StatusAnnonce, BitSet> byStatus = new EnumMap<>(Annonce.StatusAnnonce.class);
+    private final Map<Annonce.TypeBien, BitSet> byTypeBien = new EnumMap<>(Annonce.TypeBien.class);
+    private final Map<Annonce.TypeTransaction, BitSet> byTypeTransaction = new EnumMap<>(Annonce.TypeTransaction.class);
+    // Deux bitmaps par équipement: un équipement null ne correspond ni à true ni à false, comme en SQL
+    private final Map<Equipement, BitSet> withEquipement = new EnumMap<>(Equipement.class);
+    private final Map<Equipement, BitSet> withoutEquipement = new EnumMap<>(Equipement.class);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+
+    {
+        for (Annonce.StatusAnnonce status : Annonce.StatusAnnonce.values()) {
+            byStatus.put(status, new BitSet());
+        }
+        for (Annonce.TypeBien typeBien : Annonce.TypeBien.values()) {
+            byTypeBien.put(typeBien, new BitSet());
+        }
+        for (Annonce.TypeTransaction typeTransaction : Annonce.TypeTransaction.values()) {
+            byTypeTransaction.put(typeTransaction, new BitSet());
+        }
+        for (Equipement equipement : Equipement.values()) {
+            withEquipement.put(equipement, new BitSet());
+            withoutEquipement.put(equipement, new BitSet());
+        }
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long afterId = 0L;
+        int loaded = 0;
+        List<Object[]> rows;
+        try {
+            do {
+                rows = annonceRepository.findFacetFieldsAfterId(afterId, PageRequest.of(0, LOAD_BATCH_SIZE));
+                for (Object[] row : rows) {
+                    afterId = (Long) row[0];
+                    put(afterId, (Annonce.StatusAnnonce) row[1], (Annonce.TypeBien) row[2],
+                        (Annonce.TypeTransaction) row[3],
+                        new Boolean[] {(Boolean) row[4], (Boolean) row[5], (Boolean) row[6], (Boolean) row[7], (Boolean) row[8]});
+                    loaded++;
+                }
+            } while (rows.size() == LOAD_BATCH_SIZE);
+        } catch (DataAccessException e) {
+            log.warn("Impossible de charger l'index des facettes: {}", e.getMessage());
+            return;
+        }
+        ready = true;
+        log.info("Index des facettes chargé: {} annonces en {} ms", loaded, System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAnnonceEvent(AnnonceEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (event.getType() == AnnonceEvent.Type.EXPIRED) {
+            changeStatus(event.getAnnonceId(), Annonce.StatusAnnonce.EXPIRE);
+            return;
+        }
+        Annonce annonce = event.getAnnonce();
+        if (annonce == null) {
+            remove(event.getAnnonceId());
+            return;
+        }
+        put(annonce.getId(), annonce.getStatus(), annonce.getTypeBien(), annonce.getTypeTransaction(),
+            new Boolean[] {annonce.getGarage(), annonce.getJardin(), annonce.getPiscine(),
+                annonce.getClimatisation(), annonce.getAscenseur()});
+    }
+
+    private void put(Long id, Annonce.StatusAnnonce status, Annonce.TypeBien typeBien,
+                     Annonce.TypeTransaction typeTransaction, Boolean[] equipements) {
+        int bit = toBit(id);
+        lock.writeLock().lock();
+        try {
+            clear(bit);
+            set(byStatus.get(status), bit);
+            set(byTypeBien.get(typeBien), bit);
+            set(byTypeTransaction.get(typeTransaction), bit);
+            for (Equipement equipement : Equipement.values()) {
+                Boolean value = equipements[equipement.ordinal()];
+                if (value != null) {
+                    (value ? withEquipement : withoutEquipement).get(equipement).set(bit);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Seul le statut change: les autres bitmaps restent tels quels. Sans effet si l'annonce n'est pas indexée
+    public void changeStatus(Long id, Annonce.StatusAnnonce status) {
+        int bit = toBit(id);
+        lock.writeLock().lock();
+        try {
+            boolean indexed = false;
+            for (BitSet bitmap : byStatus.values()) {
+                indexed |= bitmap.get(bit);
+                bitmap.clear(bit);
+            }
+            if (indexed) {
+                byStatus.get(status).set(bit);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            clear(toBit(id));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Candidats et compteurs de facettes calculés dans la même passe; vide si l'index n'est pas prêt.
+    // textCandidates: ids déjà résolus par l'index texte, null si aucun prédicat texte.
+    public Optional<Result> query(AnnonceSearchDto searchDto, Annonce.StatusAnnonce status, Collection<Long> textCandidates) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            // Base commune: statut, texte et équipements demandés
+            BitSet base = (BitSet) byStatus.get(status).clone();
+            if (textCandidates != null) {
+                base.and(toBitSet(textCandidates));
+            }
+            for (Equipement equipement : Equipement.values()) {
+                Boolean wanted = requested(searchDto, equipement);
+                if (wanted != null) {
+                    base.and((wanted ? withEquipement : withoutEquipement).get(equipement));
+                }
+            }
+
+            BitSet typeBienFilter = searchDto.getTypeBien() != null ? byTypeBien.get(searchDto.getTypeBien()) : null;
+            BitSet typeTransactionFilter = searchDto.getTypeTransaction() != null
+                ? byTypeTransaction.get(searchDto.getTypeTransaction()) : null;
+
+            // Chaque facette d'enum ignore son propre filtre pour afficher les alternatives
+            BitSet forTypeBien = and(base, typeTransactionFilter);
+            BitSet forTypeTransaction = and(base, typeBienFilter);
+            BitSet candidates = and(forTypeBien, typeBienFilter);
+
+            Map<String, Map<String, Long>> facettes = new LinkedHashMap<>();
+            facettes.put("typeBien", count(forTypeBien, byTypeBien));
+            facettes.put("typeTransaction", count(forTypeTransaction, byTypeTransaction));
+            Map<String, Long> equipements = new LinkedHashMap<>();
+            for (Equipement equipement : Equipement.values()) {
+                equipements.put(equipement.getKey(), intersectionSize(candidates, withEquipement.get(equipement)));
+            }
+            facettes.put("equipements", equipements);
+
+            return Optional.of(new Result(candidates, facettes));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Boolean requested(AnnonceSearchDto searchDto, Equipement equipement) {
+        return switch (equipement) {
+            case GARAGE -> searchDto.getGarage();
+            case JARDIN -> searchDto.getJardin();
+            case PISCINE -> searchDto.getPiscine();
+            case CLIMATISATION -> searchDto.getClimatisation();
+            case ASCENSEUR -> searchDto.getAscenseur();
+        };
+    }
+
+    private <E extends Enum<E>> Map<String, Long> count(BitSet candidates, Map<E, BitSet> bitmaps) {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        bitmaps.forEach((value, bitmap) -> {
+            long count = intersectionSize(candidates, bitmap);
+            if (count > 0) {
+                counts.put(value.name(), count);
+            }
+        });
+        return counts;
+    }
+
+    private static long intersectionSize(BitSet a, BitSet b) {
+        BitSet copy = (BitSet) a.clone();
+        copy.and(b);
+        return copy.cardinality();
+    }
+
+    private static BitSet and(BitSet base, BitSet filter) {
+        BitSet result = (BitSet) base.clone();
+        if (filter != null) {
+            result.and(filter);
+        }
+        return result;
+    }
+
+    private void clear(int bit) {
+        byStatus.values().forEach(b -> b.clear(bit));
+        byTypeBien.values().forEach(b -> b.clear(bit));
+        byTypeTransaction.values().forEach(b -> b.clear(bit));
+        withEquipement.values().forEach(b -> b.clear(bit));
+        withoutEquipement.values().forEach(b -> b.clear(bit));
+    }
+
+    private static void set(BitSet bitmap, int bit) {
+        if (bitmap != null) {
+            bitmap.set(bit);
+        }
+    }
+
+    private static BitSet toBitSet(Collection<Long> ids) {
+        BitSet bits = new BitSet();
+        for (Long id : ids) {
+            bits.set(toBit(id));
+        }
+        return bits;
+    }
+
+    // Les ids IDENTITY sont denses: le bitmap reste compact (1 bit par annonce)
+    private static int toBit(Long id) {
+        return Math.toIntExact(id);
+    }
+
+    public static class Result {
+
+        private final BitSet candidates;
+        private final Map<String, Map<String, Long>> facettes;
+
+        Result(BitSet candidates, Map<String, Map<String, Long>> facettes) {
+            this.candidates = candidates;
+            this.facettes = facettes;
+        }
+
+        public int size() {
+            return candidates.cardinality();
+        }
+
+        public List<Long> ids() {
+            List<Long> ids = new ArrayList<>(candidates.cardinality());
+            candidates.stream().forEach(bit -> ids.add((long) bit));
+            return ids;
+        }
+
+        public Map<String, Map<String, Long>> getFacettes() {
+            return facettes;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package esprit.user.service;
+
+import esprit.user.entity.Annonce;
+import esprit.user.event.AnnonceCountersFlushedEvent;
+import esprit.user.event.AnnonceEvent;
+import esprit.user.repository.AnnonceRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+// Classements en mémoire des annonces ACTIVE pour la page d'accueil: top K par vues et K plus récentes.
+// Tenus à jour par les événements d'annonce et les écritures de compteurs, recalés périodiquement sur la base.
+@Component
+@Slf4j
+public class AnnonceRankings {
+
+    // Même ordre que findByStatusOrderByVuesDescDateCreationDesc, l'id départage les ex aequo
+    private static final Comparator<Entry> BY_VUES = Comparator.comparingLong(Entry::getVues)
+        .thenComparing(Entry::getDateCreation)
+        .thenComparingLong(Entry::getId)
+        .reversed();
+
+    private static final Comparator<Entry> BY_DATE = Comparator.comparing(Entry::getDateCreation)
+        .thenComparingLong(Entry::getId)
+        .reversed();
+
+    private final AnnonceRepository annonceRepository;
+    private final AnnonceCounterBuffer counterBuffer;
+    private final boolean enabled;
+    private final Ranking popular;
+    private final Ranking recent;
+    private volatile boolean ready;
+
+    public AnnonceRankings(AnnonceRepository annonceRepository, AnnonceCounterBuffer counterBuffer,
+                           @Value("${app.rankings.enabled:true}") boolean enabled,
+                           @Value("${app.rankings.popular.capacity:100}") int popularCapacity,
+                           @Value("${app.rankings.recent.capacity:100}") int recentCapacity) {
+        this.annonceRepository = annonceRepository;
+        this.counterBuffer = counterBuffer;
+        this.enabled = enabled;
+        this.popular = new Ranking(BY_VUES, popularCapacity);
+        this.recent = new Ranking(BY_DATE, recentCapacity);
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    // Ids des annonces les plus vues; vide si le classement ne couvre pas la demande (la base répond)
+    public Optional<List<Long>> popular(int limit) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+        Ranking.View view = popular.view();
+        if (limit > view.entries.size() && !view.exhaustive) {
+            return Optional.empty();
+        }
+        return Optional.of(view.entries.stream()
+            .limit(limit)
+            .map(Entry::getId)
+            .collect(Collectors.toList()));
+    }
+
+    // Ids des annonces créées depuis since, les plus récentes d'abord
+    public Optional<List<Long>> recent(LocalDateTime since, int limit) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+        Ranking.View view = recent.view();
+        List<Long> ids = new ArrayList<>();
+        for (Entry entry : view.entries) {
+            if (ids.size() == limit || !entry.getDateCreation().isAfter(since)) {
+                return Optional.of(ids);
+            }
+            ids.add(entry.getId());
+        }
+        // Fin du classement atteinte: la réponse n'est complète que s'il contient toutes les annonces ACTIVE
+        return ids.size() == limit || view.exhaustive ? Optional.of(ids) : Optional.empty();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            log.info("Classements d'annonces désactivés");
+            return;
+        }
+        reconcile();
+    }
+
+    // Corrige la dérive (écritures hors service, événements perdus, trous laissés par les retraits)
+    @Scheduled(initialDelayString = "${app.rankings.reconcile-interval-ms:300000}",
+               fixedDelayString = "${app.rankings.reconcile-interval-ms:300000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            synchronized (this) {
+                // Les vues lues contiennent exactement les lots de compteurs jusqu'à version: les suivants s'appliquent
+                // par onCountersFlushed, les précédents déjà livrés ne sont pas réappliqués
+                RankingRows rows = counterBuffer.readConsistent(version -> new RankingRows(version,
+                    annonceRepository.findPopularRankingRows(Annonce.StatusAnnonce.ACTIVE, PageRequest.of(0, popular.capacity + 1)),
+                    annonceRepository.findRecentRankingRows(Annonce.StatusAnnonce.ACTIVE, PageRequest.of(0, recent.capacity + 1))));
+                popular.reset(toEntries(rows.popular(), rows.version()));
+                recent.reset(toEntries(rows.recent(), rows.version()));
+            }
+        } catch (DataAccessException e) {
+            // Les deux endpoints retombent sur la requête SQL tant que les classements ne sont pas chargés
+            log.warn("Impossible de charger les classements d'annonces: {}", e.getMessage());
+            return;
+        }
+        ready = true;
+        log.debug("Classements d'annonces recalés en {} ms", System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAnnonceEvent(AnnonceEvent event) {
+        if (!isReady()) {
+            return;
+        }
+        Annonce annonce = event.getAnnonce();
+        synchronized (this) {
+            if (annonce == null || annonce.getStatus() != Annonce.StatusAnnonce.ACTIVE) {
+                popular.remove(event.getAnnonceId());
+                recent.remove(event.getAnnonceId());
+                return;
+            }
+            Entry entry = Entry.of(annonce.getId(), annonce.getVues(), annonce.getDateCreation(), 0L);
+            // vues n'est pas écrit par l'entité: la valeur connue du classement est plus fraîche que celle lue par la transaction
+            Entry known = popular.get(entry.getId());
+            popular.offer(known != null ? known : entry);
+            recent.offer(entry);
+        }
+    }
+
+    @EventListener
+    public void onCountersFlushed(AnnonceCountersFlushedEvent event) {
+        if (!isReady() || event.getCounter() != AnnonceCounterBuffer.Counter.VUES) {
+            return;
+        }
+        List<Long> outsiders = new ArrayList<>();
+        synchronized (this) {
+            event.getDeltas().forEach((id, delta) -> {
+                Entry known = popular.get(id);
+                if (known != null) {
+                    // Lot déjà contenu dans les vues lues en base (recalage ou relecture): ignoré
+                    if (event.getSequence() > known.getVersion()) {
+                        popular.offer(Entry.of(id, known.getVues() + delta, known.getDateCreation(), event.getSequence()));
+                    }
+                } else if (!popular.exhaustive) {
+                    outsiders.add(id);
+                }
+            });
+        }
+        if (outsiders.isEmpty()) {
+            return;
+        }
+        // Le total d'une annonce hors classement n'est pas connu: relu en une requête pour savoir si elle y entre
+        List<Entry> entries;
+        try {
+            entries = counterBuffer.readConsistent(version -> toEntries(
+                annonceRepository.findRankingRowsByStatusAndIdIn(Annonce.StatusAnnonce.ACTIVE, outsiders), version));
+        } catch (DataAccessException e) {
+            log.warn("Relecture des vues pour le classement impossible: {}", e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            for (Entry entry : entries) {
+                Entry known = popular.get(entry.getId());
+                if (known == null || known.getVersion() < entry.getVersion()) {
+                    popular.offer(entry);
+                }
+            }
+        }
+    }
+
+    private static List<Entry> toEntries(List<Object[]> rows, long version) {
+        List<Entry> entries = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            entries.add(Entry.of((Long) row[0], (Number) row[1], (LocalDateTime) row[2], version));
+        }
+        return entries;
+    }
+
+    private record RankingRows(long version, List<Object[]> popular, List<Object[]> recent) {
+    }
+
+    // Les K premiers d'un ordre total. Tant qu'il n'a perdu que des membres ou admis des annonces qui battent
+    // son dernier, l'ensemble reste exactement le haut du classement réel (éventuellement moins de K).
+    // Mutations sous le verrou de AnnonceRankings, lectures sur un instantané immuable.
+    private static class Ranking {
+        private final int capacity;
+        private final TreeSet<Entry> entries;
+        private final Map<Long, Entry> byId = new HashMap<>();
+        // Vrai si l'ensemble contient toutes les annonces ACTIVE: toute nouvelle annonce y entre alors
+        private volatile boolean exhaustive;
+        private volatile List<Entry> snapshot = List.of();
+
+        Ranking(Comparator<Entry> order, int capacity) {
+            this.capacity = capacity;
+            this.entries = new TreeSet<>(order);
+        }
+
+        // Instantané et complétude lus ensemble
+        View view() {
+            return new View(snapshot, exhaustive);
+        }
+
+        Entry get(Long id) {
+            return byId.get(id);
+        }
+
+        // Lignes triées, capacity + 1 au plus: une ligne de trop signale que la base en a davantage
+        void reset(List<Entry> rows) {
+            entries.clear();
+            byId.clear();
+            for (Entry entry : rows.subList(0, Math.min(rows.size(), capacity))) {
+                entries.add(entry);
+                byId.put(entry.getId(), entry);
+            }
+            exhaustive = rows.size() <= capacity;
+            publish();
+        }
+
+        void offer(Entry entry) {
+            Entry previous = byId.remove(entry.getId());
+            if (previous != null) {
+                entries.remove(previous);
+            } else if (!exhaustive && (entries.isEmpty() || entries.comparator().compare(entry, entries.last()) > 0)) {
+                // Classe derrière le dernier connu: rien ne dit qu'aucune annonce hors classement ne la précède
+                return;
+            }
+            entries.add(entry);
+            byId.put(entry.getId(), entry);
+            if (entries.size() > capacity) {
+                byId.remove(entries.pollLast().getId());
+                exhaustive = false;
+            }
+            publish();
+        }
+
+        void remove(Long id) {
+            Entry previous = byId.remove(id);
+            if (previous != null) {
+                entries.remove(previous);
+                publish();
+            }
+        }
+
+        private void publish() {
+            snapshot = List.copyOf(entries);
+        }
+
+        private static final class View {
+            private final List<Entry> entries;
+            private final boolean exhaustive;
+
+            private View(List<Entry> entries, boolean exhaustive) {
+                this.entries = entries;
+                this.exhaustive = exhaustive;
+            }
+        }
+    }
+
+    private static final class Entry {
+        private final long id;
+        private final long vues;
+        private final LocalDateTime dateCreation;
+        // Dernier lot de AnnonceCounterBuffer compté dans vues (0: inconnu, tout lot suivant s'applique)
+        private final long version;
+
+        private Entry(long id, long vues, LocalDateTime dateCreation, long version) {
+            this.id = id;
+            this.vues = vues;
+            this.dateCreation = dateCreation;
+            this.version = version;
+        }
+
+        static Entry of(Long id, Number vues, LocalDateTime dateCreation, long version) {
+            return new Entry(id, vues != null ? vues.longValue() : 0L,
+                dateCreation != null ? dateCreation : LocalDateTime.MIN, version);
+        }
+
+        long getId() {
+            return id;
+        }
+
+        long getVues() {
+            return vues;
+        }
+
+        LocalDateTime getDateCreation() {
+            return dateCreation;
+        }
+
+        long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package esprit.user.service;
+
+import esprit.user.dto.AnnonceDto.AnnonceRatingStatsDto;
+import esprit.user.dto.AnnonceDto.AnnonceSummaryDto;
+import esprit.user.entity.Annonce;
+import esprit.user.repository.AnnonceRepository;
+import esprit.user.repository.CommentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Avis par annonce tenus sur la ligne annonces (nombre_avis, notes_1 à notes_5): chaque écriture de commentaire
+// applique son delta (apply) par UPDATE relatif dans la même transaction.
+// Nombre, somme et moyenne des notes se déduisent de l'histogramme; les réponses (note 0) n'y entrent pas.
+// Une ligne encore à null (colonnes ajoutées sur une base existante) est recalculée au démarrage par tranches
+// d'ids; d'ici là, la lecture retombe sur un GROUP BY des commentaires.
+@Component
+@Slf4j
+public class AnnonceRatingAggregates {
+
+    private static final String APPLY_SQL =
+        "UPDATE annonces SET nombre_avis = nombre_avis + ?, notes_1 = notes_1 + ?, notes_2 = notes_2 + ?, "
+            + "notes_3 = notes_3 + ?, notes_4 = notes_4 + ?, notes_5 = notes_5 + ? WHERE id = ?";
+    private static final String BACKFILL_SQL =
+        "UPDATE annonces SET "
+            + "notes_1 = (SELECT COUNT(*) FROM comments c WHERE c.annonce_id = annonces.id AND c.parent_comment_id IS NULL AND c.rating = 1), "
+            + "notes_2 = (SELECT COUNT(*) FROM comments c WHERE c.annonce_id = annonces.id AND c.parent_comment_id IS NULL AND c.rating = 2), "
+            + "notes_3 = (SELECT COUNT(*) FROM comments c WHERE c.annonce_id = annonces.id AND c.parent_comment_id IS NULL AND c.rating = 3), "
+            + "notes_4 = (SELECT COUNT(*) FROM comments c WHERE c.annonce_id = annonces.id AND c.parent_comment_id IS NULL AND c.rating = 4), "
+            + "notes_5 = (SELECT COUNT(*) FROM comments c WHERE c.annonce_id = annonces.id AND c.parent_comment_id IS NULL AND c.rating = 5), "
+            + "nombre_avis = (SELECT COUNT(*) FROM comments c WHERE c.annonce_id = annonces.id) "
+            + "WHERE nombre_avis IS NULL AND id BETWEEN ? AND ?";
+    private static final int STARS = 5;
+
+    private final AnnonceRepository annonceRepository;
+    private final CommentRepository commentRepository;
+    private final AnnonceDtoCache annonceDtoCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final int backfillChunkSize;
+
+    public AnnonceRatingAggregates(AnnonceRepository annonceRepository, CommentRepository commentRepository,
+                                   AnnonceDtoCache annonceDtoCache, JdbcTemplate jdbcTemplate,
+                                   @Value("${app.annonces.ratings.backfill-chunk-size:5000}") int backfillChunkSize) {
+        this.annonceRepository = annonceRepository;
+        this.commentRepository = commentRepository;
+        this.annonceDtoCache = annonceDtoCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.backfillChunkSize = backfillChunkSize;
+    }
+
+    // Création: (1, null, note). Modification de la note: (0, ancienne, nouvelle). Suppression: (-1, note, null).
+    // reply: une réponse compte dans les avis mais jamais dans les notes
+    public void apply(Long annonceId, int comments, Integer removedRating, Integer addedRating, boolean reply) {
+        int[] stars = new int[STARS];
+        if (!reply && isStar(removedRating)) {
+            stars[removedRating - 1]--;
+        }
+        if (!reply && isStar(addedRating)) {
+            stars[addedRating - 1]++;
+        }
+        if (comments == 0 && stars[0] == 0 && stars[1] == 0 && stars[2] == 0 && stars[3] == 0 && stars[4] == 0) {
+            return;
+        }
+        // Sur une ligne pas encore rattrapée, null + delta reste null: le rattrapage comptera ce commentaire
+        jdbcTemplate.update(APPLY_SQL, comments, stars[0], stars[1], stars[2], stars[3], stars[4], annonceId);
+        evictSummary(annonceId);
+    }
+
+    public AnnonceRatingStatsDto stats(Long annonceId) {
+        List<Object[]> rows = annonceRepository.findRatingAggregatesById(annonceId);
+        if (rows.isEmpty()) {
+            return toStats(0L, new long[STARS]);
+        }
+        Object[] row = rows.get(0);
+        if (row[0] == null) {
+            long[] stars = new long[STARS];
+            for (Object[] rating : commentRepository.countRatingsByAnnonceId(annonceId)) {
+                stars[((Number) rating[0]).intValue() - 1] = ((Number) rating[1]).longValue();
+            }
+            return toStats(commentRepository.countByAnnonceId(annonceId), stars);
+        }
+        long[] stars = new long[STARS];
+        for (int i = 0; i < STARS; i++) {
+            stars[i] = row[i + 1] != null ? ((Number) row[i + 1]).longValue() : 0L;
+        }
+        return toStats(((Number) row[0]).longValue(), stars);
+    }
+
+    // Moyenne et nombre de notes depuis l'entité déjà chargée, sans requête; laissés à null si la ligne n'est pas rattrapée
+    public static void fillSummary(AnnonceSummaryDto dto, Annonce annonce) {
+        if (annonce.getNombreAvis() == null) {
+            return;
+        }
+        Integer[] stars = {annonce.getNotes1(), annonce.getNotes2(), annonce.getNotes3(), annonce.getNotes4(), annonce.getNotes5()};
+        long count = 0L;
+        long sum = 0L;
+        for (int i = 0; i < STARS; i++) {
+            long n = stars[i] != null ? stars[i] : 0L;
+            count += n;
+            sum += n * (i + 1);
+        }
+        dto.setNombreNotes(count);
+        dto.setNoteMoyenne(count > 0 ? (double) sum / count : null);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long start = System.currentTimeMillis();
+        int updated = 0;
+        try {
+            Map<String, Object> range = jdbcTemplate.queryForMap(
+                "SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM annonces WHERE nombre_avis IS NULL");
+            Number minId = (Number) range.get("min_id");
+            Number maxId = (Number) range.get("max_id");
+            if (minId == null) {
+                return;
+            }
+            // Une instruction courte par tranche d'ids, hors transaction: la table reste disponible
+            for (long from = minId.longValue(); from <= maxId.longValue(); from += backfillChunkSize) {
+                updated += jdbcTemplate.update(BACKFILL_SQL, from, from + backfillChunkSize - 1);
+            }
+        } catch (DataAccessException e) {
+            // Les lignes restées à null sont lues par GROUP BY et reprises au prochain démarrage
+            log.warn("Rattrapage des avis par annonce interrompu après {} annonces: {}", updated, e.getMessage());
+            return;
+        }
+        annonceDtoCache.clear();
+        log.info("Avis par annonce rattrapés: {} annonces en {} ms", updated, System.currentTimeMillis() - start);
+    }
+
+    // Le résumé en cache porte la moyenne: il est écarté tout de suite puis après la fin de la transaction,
+    // pour qu'une lecture concurrente ne remette pas l'ancienne valeur
+    private void evictSummary(Long annonceId) {
+        annonceDtoCache.evict(annonceId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    annonceDtoCache.evict(annonceId);
+                }
+            });
+        }
+    }
+
+    private static AnnonceRatingStatsDto toStats(long comments, long[] stars) {
+        Map<Integer, Long> histogram = new LinkedHashMap<>();
+        long count = 0L;
+        long sum = 0L;
+        for (int i = 0; i < STARS; i++) {
+            histogram.put(i + 1, stars[i]);
+            count += stars[i];
+            sum += stars[i] * (i + 1);
+        }
+        return new AnnonceRatingStatsDto(comments, count, count > 0 ? (double) sum / count : null, histogram);
+    }
+
+    private static boolean isStar(Integer rating) {
+        return rating != null && rating >= 1 && rating <= STARS;
+    }
+}
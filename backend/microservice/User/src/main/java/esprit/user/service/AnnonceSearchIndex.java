@@ -0,0 +1,184 @@
+package esprit.user.service;
+
+import esprit.user.entity.Annonce;
+import esprit.user.event.AnnonceEvent;
+import esprit.user.repository.AnnonceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Index inversé en mémoire (titre, description, ville) des annonces ACTIVE.
+// Titre et description sont découpés en mots; la ville est indexée entière (villeKey) et trouvée par son début,
+// comme la clause SQL qui prend le relais quand l'index ne répond pas
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AnnonceSearchIndex {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    public enum Field {
+        TITRE,
+        DESCRIPTION,
+        VILLE
+    }
+
+    private final AnnonceRepository annonceRepository;
+
+    @Value("${app.search.index.enabled:true}")
+    private boolean enabled;
+
+    private final Map<Field, ConcurrentSkipListMap<String, Set<Long>>> postings = new EnumMap<>(Field.class);
+    private final Map<Long, Map<Field, Set<String>>> documents = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    {
+        for (Field field : Field.values()) {
+            postings.put(field, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    public int size() {
+        return documents.size();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            log.info("Index de recherche désactivé");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long afterId = 0L;
+        List<Object[]> rows;
+        try {
+            do {
+                rows = annonceRepository.findTextFieldsByStatusAfterId(
+                    Annonce.StatusAnnonce.ACTIVE, afterId, PageRequest.of(0, LOAD_BATCH_SIZE));
+                for (Object[] row : rows) {
+                    afterId = (Long) row[0];
+                    index(afterId, (String) row[1], (String) row[2], (String) row[3]);
+                }
+            } while (rows.size() == LOAD_BATCH_SIZE);
+        } catch (DataAccessException e) {
+            // La recherche retombe sur la requête SQL tant que l'index n'est pas prêt
+            log.warn("Impossible de charger l'index de recherche: {}", e.getMessage());
+            return;
+        }
+        ready = true;
+        log.info("Index de recherche chargé: {} annonces en {} ms", documents.size(), System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAnnonceEvent(AnnonceEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Annonce annonce = event.getAnnonce();
+        if (annonce != null && annonce.getStatus() == Annonce.StatusAnnonce.ACTIVE) {
+            index(annonce.getId(), annonce.getTitre(), annonce.getDescription(), annonce.getVille());
+        } else {
+            remove(event.getAnnonceId());
+        }
+    }
+
+    public synchronized void index(Long id, String titre, String description, String ville) {
+        remove(id);
+        Map<Field, Set<String>> document = new EnumMap<>(Field.class);
+        document.put(Field.TITRE, TextNormalizer.tokenize(titre));
+        document.put(Field.DESCRIPTION, TextNormalizer.tokenize(description));
+        document.put(Field.VILLE, ville != null && !ville.isBlank() ? Set.of(TextNormalizer.villeKey(ville)) : Set.of());
+        document.forEach((field, tokens) -> {
+            for (String token : tokens) {
+                postings.get(field).computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        });
+        documents.put(id, document);
+    }
+
+    public synchronized void remove(Long id) {
+        Map<Field, Set<String>> document = documents.remove(id);
+        if (document == null) {
+            return;
+        }
+        document.forEach((field, tokens) -> {
+            for (String token : tokens) {
+                postings.get(field).computeIfPresent(token, (t, ids) -> {
+                    ids.remove(id);
+                    return ids.isEmpty() ? null : ids;
+                });
+            }
+        });
+    }
+
+    // Intersection des prédicats texte renseignés; vide (Optional) si l'index ne peut pas répondre
+    public Optional<Set<Long>> resolve(String titre, String motsCles, String ville) {
+        if (!isReady()) {
+            return Optional.empty();
+        }
+        Set<Long> result = null;
+        result = restrict(result, titre, Field.TITRE);
+        result = restrict(result, motsCles, Field.TITRE, Field.DESCRIPTION);
+        if (ville != null && !ville.isBlank()) {
+            Set<Long> matches = new HashSet<>();
+            collectPrefix(postings.get(Field.VILLE), TextNormalizer.villeKey(ville), matches);
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+        }
+        return Optional.ofNullable(result);
+    }
+
+    private Set<Long> restrict(Set<Long> current, String query, Field... fields) {
+        Set<String> tokens = TextNormalizer.tokenize(query);
+        if (tokens.isEmpty()) {
+            return current;
+        }
+        Set<Long> result = current;
+        for (String token : tokens) {
+            Set<Long> matches = new HashSet<>();
+            for (Field field : fields) {
+                collectPrefix(postings.get(field), token, matches);
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+            if (result.isEmpty()) {
+                return result;
+            }
+        }
+        return result;
+    }
+
+    // "appart" trouve "appartement", comme le LIKE de la requête SQL sur un début de mot
+    private void collectPrefix(ConcurrentSkipListMap<String, Set<Long>> fieldPostings, String prefix, Set<Long> into) {
+        NavigableMap<String, Set<Long>> range = fieldPostings.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        for (Set<Long> ids : range.values()) {
+            into.addAll(ids);
+        }
+    }
+}
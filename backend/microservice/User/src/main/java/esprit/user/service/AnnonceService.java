@@ -3,12 +3,16 @@ package esprit.user.service;
 import esprit.user.dto.AnnonceDto.*;
 import esprit.user.entity.Annonce;
 import esprit.user.entity.User;
+import esprit.user.event.AnnonceEvent;
 import org.springframework.web.server.ResponseStatusException;
 import org.springframework.http.HttpStatus;
 import esprit.user.repository.AnnonceRepository;
-import esprit.user.repository.UserRepository;
+import esprit.user.repository.AnnonceSpecifications;
+import esprit.user.repository.FavoriRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -17,10 +21,18 @@ import org.springframework.data.jpa.domain.Specification;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -29,7 +41,22 @@ import java.util.stream.Collectors;
 public class AnnonceService {
     
     private final AnnonceRepository annonceRepository;
-    private final UserRepository userRepository;
+    private final UserIdentityCache userIdentityCache;
+    private final FavoriRepository favoriRepository;
+    private final AnnonceSearchIndex annonceSearchIndex;
+    private final AnnonceFacetIndex annonceFacetIndex;
+    private final AnnonceCounterBuffer annonceCounterBuffer;
+    private final AnnonceDtoCache annonceDtoCache;
+    private final AnnonceRankings annonceRankings;
+    private final AnnonceSimilarityIndex annonceSimilarityIndex;
+    private final AnnonceStatsCache annonceStatsCache;
+    private final AnnonceExpirySweeper annonceExpirySweeper;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Au-delà, la liste d'ids devient plus coûteuse que le LIKE côté base
+    @Value("${app.search.index.max-candidates:5000}")
+    private int maxIndexCandidates;
     
     // Conversion Methods
     public AnnonceResponseDto convertToResponseDto(Annonce annonce) {
@@ -53,7 +80,8 @@ public class AnnonceService {
         dto.setAscenseur(annonce.getAscenseur());
         dto.setEtage(annonce.getEtage());
         dto.setStatus(annonce.getStatus());
-        dto.setImages(annonce.getImages());
+        // Copie détachée de la collection Hibernate: le DTO peut être mis en cache et relu hors session
+        dto.setImages(annonce.getImages() != null ? new ArrayList<>(annonce.getImages()) : null);
         dto.setNomContact(annonce.getNomContact());
         dto.setTelephoneContact(annonce.getTelephoneContact());
         dto.setEmailContact(annonce.getEmailContact());
@@ -75,7 +103,12 @@ public class AnnonceService {
         return dto;
     }
     
+    // Résumé servi par le cache quand il est chaud: ni images ni créateur à charger
     public AnnonceSummaryDto convertToSummaryDto(Annonce annonce) {
+        return annonceDtoCache.getSummary(annonce.getId(), () -> buildSummaryDto(annonce));
+    }
+    
+    private AnnonceSummaryDto buildSummaryDto(Annonce annonce) {
         AnnonceSummaryDto dto = new AnnonceSummaryDto();
         dto.setId(annonce.getId());
         dto.setTitre(annonce.getTitre());
@@ -91,6 +124,7 @@ public class AnnonceService {
         dto.setFavoris(annonce.getFavoris());
         dto.setDateCreation(annonce.getDateCreation());
         dto.setStatus(annonce.getStatus());
+        AnnonceRatingAggregates.fillSummary(dto, annonce);
         
         // Info du créateur
         User createur = annonce.getCreateur();
@@ -137,29 +171,41 @@ public class AnnonceService {
     public AnnonceResponseDto createAnnonce(AnnonceCreateDto createDto, String userEmail) {
         log.info("Creating annonce for user: {}", userEmail);
         
-        User user = userRepository.findByEmail(userEmail)
+        User user = userIdentityCache.findByEmail(userEmail)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Utilisateur non trouvé"));
         
         Annonce annonce = convertFromCreateDto(createDto, user);
         Annonce savedAnnonce = annonceRepository.save(annonce);
+        eventPublisher.publishEvent(AnnonceEvent.created(savedAnnonce));
         
         log.info("Created annonce with ID: {}", savedAnnonce.getId());
         return convertToResponseDto(savedAnnonce);
     }
     
-    @Transactional(readOnly = true)
+    // Pas de transaction sur un succès de cache: seule la lecture en base en ouvre une
     public AnnonceResponseDto getAnnonceById(Long id, String userEmail) {
-        Annonce annonce = annonceRepository.findById(id)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Annonce non trouvée"));
-        
-        // Incrémenter les vues seulement si ce n'est pas le créateur
-        User user = userRepository.findByEmail(userEmail).orElse(null);
-        if (user != null && !annonce.getCreateur().getId().equals(user.getId())) {
-            annonce.incrementerVues();
-            annonceRepository.save(annonce);
+        AnnonceDtoCache.CachedDetail detail = annonceDtoCache.getDetail(id, () -> transactionTemplate.execute(status -> {
+            Annonce annonce = annonceRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Annonce non trouvée"));
+            return new AnnonceDtoCache.CachedDetail(convertToResponseDto(annonce), annonce.getCreateur().getEmail());
+        }));
+        
+        // Incrémenter les vues seulement si ce n'est pas le créateur; l'écriture est différée (AnnonceCounterBuffer)
+        if (userEmail != null && !userEmail.equals(detail.getCreateurEmail())) {
+            annonceCounterBuffer.increment(AnnonceCounterBuffer.Counter.VUES, id);
         }
         
-        return convertToResponseDto(annonce);
+        AnnonceResponseDto dto = detail.getDto();
+        // Les compteurs pas encore écrits en base restent visibles
+        long vuesEnAttente = annonceCounterBuffer.pendingDelta(AnnonceCounterBuffer.Counter.VUES, id);
+        if (vuesEnAttente != 0) {
+            dto.setVues((int) ((dto.getVues() != null ? dto.getVues() : 0) + vuesEnAttente));
+        }
+        long favorisEnAttente = annonceCounterBuffer.pendingDelta(AnnonceCounterBuffer.Counter.FAVORIS, id);
+        if (favorisEnAttente != 0) {
+            dto.setFavoris((int) Math.max((dto.getFavoris() != null ? dto.getFavoris() : 0) + favorisEnAttente, 0));
+        }
+        return dto;
     }
     
     @Transactional
@@ -169,7 +215,7 @@ public class AnnonceService {
         Annonce annonce = annonceRepository.findById(id)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Annonce non trouvée"));
         
-        User user = userRepository.findByEmail(userEmail)
+        User user = userIdentityCache.findByEmail(userEmail)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Utilisateur non trouvé"));
         
         // Vérifier que l'utilisateur est le propriétaire de l'annonce
@@ -203,6 +249,7 @@ public class AnnonceService {
         if (updateDto.getDateExpiration() != null) annonce.setDateExpiration(updateDto.getDateExpiration());
         
         Annonce savedAnnonce = annonceRepository.save(annonce);
+        eventPublisher.publishEvent(AnnonceEvent.updated(savedAnnonce));
         log.info("Updated annonce with ID: {}", savedAnnonce.getId());
         
         return convertToResponseDto(savedAnnonce);
@@ -215,7 +262,7 @@ public class AnnonceService {
         Annonce annonce = annonceRepository.findById(id)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Annonce non trouvée"));
         
-        User user = userRepository.findByEmail(userEmail)
+        User user = userIdentityCache.findByEmail(userEmail)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Utilisateur non trouvé"));
         
         // Vérifier que l'utilisateur est le propriétaire ou admin
@@ -224,39 +271,105 @@ public class AnnonceService {
             throw new AccessDeniedException("Vous n'êtes pas autorisé à supprimer cette annonce");
         }
         
+        favoriRepository.deleteByAnnonceId(id);
         annonceRepository.delete(annonce);
+        eventPublisher.publishEvent(AnnonceEvent.deleted(annonce));
         log.info("Deleted annonce with ID: {}", id);
     }
     
     // Search and Filter Operations
     @Transactional(readOnly = true)
-    public Page<AnnonceSummaryDto> searchAnnonces(AnnonceSearchDto searchDto) {
+    public AnnonceSearchResultDto searchAnnonces(AnnonceSearchDto searchDto) {
         log.info("Searching annonces with filters: {}", searchDto);
         
         Sort sort = createSort(searchDto.getSortBy(), searchDto.getSortDirection());
         Pageable pageable = PageRequest.of(searchDto.getPage(), searchDto.getSize(), sort);
+        Annonce.StatusAnnonce status = searchDto.getStatus() != null ? searchDto.getStatus() : Annonce.StatusAnnonce.ACTIVE;
         
-        Page<Annonce> annonces = annonceRepository.findWithFilters(
-            searchDto.getTitre(),
-            searchDto.getVille(),
-            searchDto.getTypeBien(),
-            searchDto.getTypeTransaction(),
-            searchDto.getPrixMin(),
-            searchDto.getPrixMax(),
-            searchDto.getSurfaceMin(),
-            searchDto.getSurfaceMax(),
-            searchDto.getNombreChambresMin(),
-            searchDto.getNombreSallesBainMin(),
-            searchDto.getGarage(),
-            searchDto.getJardin(),
-            searchDto.getPiscine(),
-            searchDto.getClimatisation(),
-            searchDto.getAscenseur(),
-            searchDto.getStatus() != null ? searchDto.getStatus() : Annonce.StatusAnnonce.ACTIVE,
-            pageable
-        );
+        SearchPlan plan = planSearch(searchDto, status);
+        if (plan.spec == null) {
+            return new AnnonceSearchResultDto(Page.empty(pageable), plan.facettes);
+        }
+        Page<Annonce> annonces = annonceRepository.findAll(plan.spec, pageable);
         
-        return annonces.map(this::convertToSummaryDto);
+        return new AnnonceSearchResultDto(annonces.map(this::convertToSummaryDto), plan.facettes);
+    }
+    
+    // Même recherche en mode curseur: pas d'offset ni de COUNT(*), coût constant quelle que soit la profondeur
+    @Transactional(readOnly = true)
+    public AnnonceScrollDto scrollAnnonces(AnnonceSearchDto searchDto, String cursor) {
+        Annonce.StatusAnnonce status = searchDto.getStatus() != null ? searchDto.getStatus() : Annonce.StatusAnnonce.ACTIVE;
+        SearchPlan plan = planSearch(searchDto, status);
+        if (plan.spec == null) {
+            return new AnnonceScrollDto(List.of(), null, false, plan.facettes);
+        }
+        AnnonceScrollDto result = scroll(plan.spec, searchDto.getSortBy(), searchDto.getSortDirection(), cursor, searchDto.getSize());
+        result.setFacettes(plan.facettes);
+        return result;
+    }
+    
+    // Critères compilés en Specification; spec null quand les index prouvent qu'aucune annonce ne correspond
+    private SearchPlan planSearch(AnnonceSearchDto searchDto, Annonce.StatusAnnonce status) {
+        // Les prédicats texte sont résolus par l'index en mémoire (annonces ACTIVE uniquement)
+        Set<Long> candidatsTexte = null;
+        boolean texteResolu = true;
+        if (hasTextCriteria(searchDto)) {
+            Optional<Set<Long>> resolus = status == Annonce.StatusAnnonce.ACTIVE
+                ? annonceSearchIndex.resolve(searchDto.getTitre(), searchDto.getMotsCles(), searchDto.getVille())
+                : Optional.empty();
+            candidatsTexte = resolus.orElse(null);
+            texteResolu = resolus.isPresent();
+        }
+        
+        // Les filtres enum/booléens et les compteurs de facettes viennent des bitmaps
+        Map<String, Map<String, Long>> facettes = Map.of();
+        Collection<Long> candidats = candidatsTexte;
+        boolean facettesResolues = false;
+        if (texteResolu) {
+            Optional<AnnonceFacetIndex.Result> resultat = annonceFacetIndex.query(searchDto, status, candidatsTexte);
+            if (resultat.isPresent()) {
+                facettesResolues = true;
+                // Les fourchettes (prix, surface, chambres, salles de bain) ne sont pas dans les bitmaps:
+                // des compteurs calculés sans elles seraient faux, ils sont omis
+                facettes = hasRangeCriteria(searchDto) ? Map.of() : resultat.get().getFacettes();
+                // Liste d'ids seulement si le texte ou un filtre bitmap a réduit l'ensemble: sinon elle ne ferait
+                // que répéter le statut, en milliers de paramètres
+                boolean reduit = candidatsTexte != null || hasFacetCriteria(searchDto);
+                candidats = reduit && resultat.get().size() <= maxIndexCandidates ? resultat.get().ids() : null;
+                if (resultat.get().size() == 0) {
+                    return new SearchPlan(null, facettes);
+                }
+            }
+        }
+        if (candidats != null && candidats.isEmpty()) {
+            return new SearchPlan(null, facettes);
+        }
+        
+        // Seules les clauses renseignées sont envoyées à la base
+        Specification<Annonce> spec = candidats != null && candidats.size() <= maxIndexCandidates
+            ? AnnonceSpecifications.forCandidates(searchDto, status, candidats, facettesResolues)
+            : AnnonceSpecifications.forSearch(searchDto, status);
+        return new SearchPlan(spec, facettes);
+    }
+    
+    private boolean hasTextCriteria(AnnonceSearchDto searchDto) {
+        return isNotBlank(searchDto.getTitre()) || isNotBlank(searchDto.getMotsCles()) || isNotBlank(searchDto.getVille());
+    }
+    
+    private boolean hasFacetCriteria(AnnonceSearchDto searchDto) {
+        return searchDto.getTypeBien() != null || searchDto.getTypeTransaction() != null
+            || searchDto.getGarage() != null || searchDto.getJardin() != null || searchDto.getPiscine() != null
+            || searchDto.getClimatisation() != null || searchDto.getAscenseur() != null;
+    }
+    
+    private boolean hasRangeCriteria(AnnonceSearchDto searchDto) {
+        return searchDto.getPrixMin() != null || searchDto.getPrixMax() != null
+            || searchDto.getSurfaceMin() != null || searchDto.getSurfaceMax() != null
+            || searchDto.getNombreChambresMin() != null || searchDto.getNombreSallesBainMin() != null;
+    }
+    
+    private boolean isNotBlank(String value) {
+        return value != null && !value.isBlank();
     }
     
     @Transactional(readOnly = true)
@@ -272,7 +385,7 @@ public class AnnonceService {
     
     @Transactional(readOnly = true)
     public Page<AnnonceSummaryDto> getMyAnnonces(String userEmail, int page, int size) {
-        User user = userRepository.findByEmail(userEmail)
+        User user = userIdentityCache.findByEmail(userEmail)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Utilisateur non trouvé"));
         
         Pageable pageable = PageRequest.of(page, size);
@@ -282,97 +395,156 @@ public class AnnonceService {
     }
     
     @Transactional(readOnly = true)
-    public List<AnnonceSummaryDto> getSimilarAnnonces(Long annonceId, int limit) {
-        Annonce annonce = annonceRepository.findById(annonceId)
-            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Annonce non trouvée"));
+    public AnnonceScrollDto scrollMyAnnonces(String userEmail, String cursor, int size) {
+        User user = userIdentityCache.findByEmail(userEmail)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Utilisateur non trouvé"));
         
-        // Calculer la fourchette de prix (±30%)
-        BigDecimal prixRef = annonce.getPrix();
-        BigDecimal prixMin = prixRef.multiply(BigDecimal.valueOf(0.7));
-        BigDecimal prixMax = prixRef.multiply(BigDecimal.valueOf(1.3));
-        
-        Pageable pageable = PageRequest.of(0, limit);
-        List<Annonce> similaires = annonceRepository.findSimilarAnnonces(
-            annonceId,
-            Annonce.StatusAnnonce.ACTIVE,
-            annonce.getTypeBien(),
-            annonce.getVille(),
-            prixMin,
-            prixMax,
-            prixRef,
-            pageable
-        );
-        
-        return similaires.stream()
-            .map(this::convertToSummaryDto)
-            .collect(Collectors.toList());
+        return scroll(AnnonceSpecifications.hasCreateur(user), "dateCreation", "desc", cursor, size);
     }
     
-    @Transactional(readOnly = true)
+    // Plus proches voisins dans l'index de similarité; requête SQL (type, ville, prix ±30%) tant qu'il n'est pas prêt
+    public List<AnnonceSummaryDto> getSimilarAnnonces(Long annonceId, int limit) {
+        if (annonceSimilarityIndex.isReady()) {
+            Optional<List<Long>> ids = annonceSimilarityIndex.similarTo(annonceId, limit);
+            if (ids.isEmpty()) {
+                // Annonce hors index (pas ACTIVE): son vecteur est calculé depuis la base
+                Annonce annonce = transactionTemplate.execute(status -> annonceRepository.findById(annonceId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Annonce non trouvée")));
+                ids = Optional.of(annonceSimilarityIndex.nearest(annonce, limit));
+            }
+            return loadSummaries(ids.get());
+        }
+        return transactionTemplate.execute(status -> {
+            Annonce annonce = annonceRepository.findById(annonceId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Annonce non trouvée"));
+        
+            // Calculer la fourchette de prix (±30%)
+            BigDecimal prixRef = annonce.getPrix();
+            BigDecimal prixMin = prixRef.multiply(BigDecimal.valueOf(0.7));
+            BigDecimal prixMax = prixRef.multiply(BigDecimal.valueOf(1.3));
+        
+            Pageable pageable = PageRequest.of(0, limit);
+            List<Annonce> similaires = annonceRepository.findSimilarAnnonces(
+                annonceId,
+                Annonce.StatusAnnonce.ACTIVE,
+                annonce.getTypeBien(),
+                annonce.getVille(),
+                prixMin,
+                prixMax,
+                prixRef,
+                pageable
+            );
+        
+            return similaires.stream()
+                .map(this::convertToSummaryDto)
+                .collect(Collectors.toList());
+        });
+    }
+    
+    // Servies depuis les classements en mémoire (AnnonceRankings); la base ne répond que s'ils ne couvrent pas la demande
     public List<AnnonceSummaryDto> getPopularAnnonces(int limit) {
-        Pageable pageable = PageRequest.of(0, limit);
-        Page<Annonce> annonces = annonceRepository.findByStatusOrderByVuesDescDateCreationDesc(
-            Annonce.StatusAnnonce.ACTIVE, pageable);
-        
-        return annonces.getContent().stream()
-            .map(this::convertToSummaryDto)
-            .collect(Collectors.toList());
+        Optional<List<Long>> ranked = annonceRankings.popular(limit);
+        if (ranked.isPresent()) {
+            return loadSummaries(ranked.get());
+        }
+        return transactionTemplate.execute(status -> {
+            Pageable pageable = PageRequest.of(0, limit);
+            Page<Annonce> annonces = annonceRepository.findByStatusOrderByVuesDescDateCreationDesc(
+                Annonce.StatusAnnonce.ACTIVE, pageable);
+            
+            return annonces.getContent().stream()
+                .map(this::convertToSummaryDto)
+                .collect(Collectors.toList());
+        });
     }
     
-    @Transactional(readOnly = true)
     public List<AnnonceSummaryDto> getRecentAnnonces(int days, int limit) {
         LocalDateTime sinceDate = LocalDateTime.now().minusDays(days);
-        Pageable pageable = PageRequest.of(0, limit);
-        
-        Page<Annonce> annonces = annonceRepository.findByStatusAndDateCreationAfterOrderByDateCreationDesc(
-            Annonce.StatusAnnonce.ACTIVE, sinceDate, pageable);
-        
-        return annonces.getContent().stream()
-            .map(this::convertToSummaryDto)
+        Optional<List<Long>> ranked = annonceRankings.recent(sinceDate, limit);
+        if (ranked.isPresent()) {
+            return loadSummaries(ranked.get());
+        }
+        return transactionTemplate.execute(status -> {
+            Pageable pageable = PageRequest.of(0, limit);
+            Page<Annonce> annonces = annonceRepository.findByStatusAndDateCreationAfterOrderByDateCreationDesc(
+                Annonce.StatusAnnonce.ACTIVE, sinceDate, pageable);
+            
+            return annonces.getContent().stream()
+                .map(this::convertToSummaryDto)
+                .collect(Collectors.toList());
+        });
+    }
+    
+    // Résumés dans l'ordre des ids: ceux du cache sans transaction, les autres en une requête
+    private List<AnnonceSummaryDto> loadSummaries(List<Long> ids) {
+        Map<Long, AnnonceSummaryDto> summaries = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            annonceDtoCache.peekSummary(id).ifPresentOrElse(dto -> summaries.put(id, dto), () -> missing.add(id));
+        }
+        if (!missing.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> annonceRepository.findByIdIn(missing)
+                .forEach(annonce -> summaries.put(annonce.getId(), convertToSummaryDto(annonce))));
+        }
+        return ids.stream()
+            .map(summaries::get)
+            .filter(Objects::nonNull)
             .collect(Collectors.toList());
     }
     
     // Statistics
     @Transactional(readOnly = true)
     public AnnonceStatsDto getMyAnnonceStats(String userEmail) {
-        User user = userRepository.findByEmail(userEmail)
+        User user = userIdentityCache.findByEmail(userEmail)
             .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Utilisateur non trouvé"));
         
-        AnnonceStatsDto stats = new AnnonceStatsDto();
-        stats.setTotalAnnonces(annonceRepository.countByCreateur(user));
-        stats.setAnnoncesActives(annonceRepository.countByCreateurAndStatus(user, Annonce.StatusAnnonce.ACTIVE));
-        stats.setAnnoncesInactives(annonceRepository.countByCreateurAndStatus(user, Annonce.StatusAnnonce.INACTIVE));
-        stats.setAnnoncesVendues(annonceRepository.countByCreateurAndStatus(user, Annonce.StatusAnnonce.VENDU));
-        stats.setAnnoncesLouees(annonceRepository.countByCreateurAndStatus(user, Annonce.StatusAnnonce.LOUE));
-        
-        Long totalVues = annonceRepository.sumVuesByCreateur(user);
-        stats.setTotalVues(totalVues != null ? totalVues : 0L);
-        
-        Long totalFavoris = annonceRepository.sumFavorisByCreateur(user);
-        stats.setTotalFavoris(totalFavoris != null ? totalFavoris : 0L);
-        
-        return stats;
+        return annonceStatsCache.getByCreateur(user.getId());
     }
     
     @Transactional(readOnly = true)
     public AnnonceStatsDto getGlobalStats() {
-        AnnonceStatsDto stats = new AnnonceStatsDto();
-        stats.setTotalAnnonces(annonceRepository.count());
-        stats.setAnnoncesActives(annonceRepository.countByStatus(Annonce.StatusAnnonce.ACTIVE));
-        stats.setAnnoncesInactives(annonceRepository.countByStatus(Annonce.StatusAnnonce.INACTIVE));
-        stats.setAnnoncesVendues(annonceRepository.countByStatus(Annonce.StatusAnnonce.VENDU));
-        stats.setAnnoncesLouees(annonceRepository.countByStatus(Annonce.StatusAnnonce.LOUE));
-        
-        Double prixMoyen = annonceRepository.avgPrixByStatus(Annonce.StatusAnnonce.ACTIVE);
-        stats.setPrixMoyen(prixMoyen != null ? BigDecimal.valueOf(prixMoyen) : BigDecimal.ZERO);
+        return annonceStatsCache.getGlobal();
+    }
+    
+    // Helper Methods
+    private AnnonceScrollDto scroll(Specification<Annonce> spec, String sortBy, String sortDirection, String cursor, int size) {
+        if (size < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "La taille de page doit être positive");
+        }
+        AnnonceCursor.SortKey sortKey = AnnonceCursor.SortKey.from(sortBy);
+        Sort.Direction direction = "asc".equalsIgnoreCase(sortDirection) ? Sort.Direction.ASC : Sort.Direction.DESC;
+        
+        Specification<Annonce> pageSpec = spec;
+        if (cursor != null && !cursor.isBlank()) {
+            AnnonceCursor position = AnnonceCursor.decode(cursor, sortKey, direction);
+            pageSpec = spec.and(AnnonceSpecifications.seekAfter(
+                sortKey.getProperty(), sortKey.isNullable(), position.isAscending(), position.getValue(), position.getId()));
+        }
         
-        Double surfaceMoyenne = annonceRepository.avgSurfaceByStatus(Annonce.StatusAnnonce.ACTIVE);
-        stats.setSurfaceMoyenne(surfaceMoyenne != null ? surfaceMoyenne.intValue() : 0);
+        // Une ligne de plus que demandé suffit à savoir s'il reste une page; le créateur est joint
+        List<Annonce> rows = annonceRepository.findBy(pageSpec,
+            query -> query.sortBy(AnnonceCursor.sort(sortKey, direction)).project("createur").limit(size + 1).all());
+        boolean hasNext = rows.size() > size;
+        List<Annonce> content = hasNext ? rows.subList(0, size) : rows;
+        String nextCursor = hasNext
+            ? AnnonceCursor.after(content.get(content.size() - 1), sortKey, direction).encode()
+            : null;
+        
+        return new AnnonceScrollDto(
+            content.stream().map(this::convertToSummaryDto).collect(Collectors.toList()),
+            nextCursor, hasNext, Map.of());
+    }
+    
+    private static class SearchPlan {
+        private final Specification<Annonce> spec;
+        private final Map<String, Map<String, Long>> facettes;
         
-        return stats;
+        SearchPlan(Specification<Annonce> spec, Map<String, Map<String, Long>> facettes) {
+            this.spec = spec;
+            this.facettes = facettes;
+        }
     }
     
-    // Helper Methods
     private Sort createSort(String sortBy, String sortDirection) {
         Sort.Direction direction = "asc".equalsIgnoreCase(sortDirection) ? 
             Sort.Direction.ASC : Sort.Direction.DESC;
@@ -388,19 +560,8 @@ public class AnnonceService {
     }
     
     // Batch Operations
-    @Transactional
-    public void markExpiredAnnonces() {
-        List<Annonce> expiredAnnonces = annonceRepository.findByDateExpirationBefore(LocalDateTime.now());
-        
-        for (Annonce annonce : expiredAnnonces) {
-            if (annonce.getStatus() == Annonce.StatusAnnonce.ACTIVE) {
-                annonce.setStatus(Annonce.StatusAnnonce.EXPIRE);
-            }
-        }
-        
-        if (!expiredAnnonces.isEmpty()) {
-            annonceRepository.saveAll(expiredAnnonces);
-            log.info("Marked {} annonces as expired", expiredAnnonces.size());
-        }
+    // Passage immédiat du balayeur planifié, par tranches et sans charger les entités
+    public long markExpiredAnnonces() {
+        return annonceExpirySweeper.sweep(true);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,313 @@
+package esprit.user.service;
+
+import esprit.user.entity.Annonce;
+import esprit.user.event.AnnonceEvent;
+import esprit.user.repository.AnnonceRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Vecteurs de caractéristiques des annonces ACTIVE pour les annonces similaires.
+// Un tableau float[] contigu par type de transaction (une location n'est pas comparable à une vente),
+// parcouru en entier: quelques dizaines de milliers de vecteurs de 9 floats tiennent sous la milliseconde.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class AnnonceSimilarityIndex {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    // prix et surface en log2 (un doublement = 1), chambres et salles de bain par paires, 5 équipements
+    private static final int DIMENSIONS = 9;
+    private static final int NUMERIC_DIMENSIONS = 4;
+    private static final float ROOM_SCALE = 0.5f;
+    private static final float EQUIPEMENT_WEIGHT = 0.5f;
+
+    // Distances au carré: autre type de bien ~ prix x4, autre ville ~ prix x2.8
+    private static final float TYPE_PENALTY = 4f;
+    private static final float CITY_PENALTY = 2f;
+    // Caractéristique absente d'un côté: écart forfaitaire plutôt qu'une valeur inventée
+    private static final float MISSING_PENALTY = 0.25f;
+
+    private static final int UNKNOWN_CITY = -1;
+
+    private final AnnonceRepository annonceRepository;
+
+    @Value("${app.similarity.enabled:true}")
+    private boolean enabled;
+
+    private final Map<Annonce.TypeTransaction, Bucket> buckets = new EnumMap<>(Annonce.TypeTransaction.class);
+    private final Map<Long, Bucket> bucketOf = new HashMap<>();
+    private final Map<String, Integer> cityCodes = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+
+    {
+        for (Annonce.TypeTransaction typeTransaction : Annonce.TypeTransaction.values()) {
+            buckets.put(typeTransaction, new Bucket());
+        }
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        if (!enabled) {
+            log.info("Index de similarité désactivé");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long afterId = 0L;
+        int loaded = 0;
+        List<Object[]> rows;
+        try {
+            do {
+                rows = annonceRepository.findSimilarityFieldsByStatusAfterId(
+                    Annonce.StatusAnnonce.ACTIVE, afterId, PageRequest.of(0, LOAD_BATCH_SIZE));
+                for (Object[] row : rows) {
+                    afterId = (Long) row[0];
+                    put(afterId, (Annonce.TypeTransaction) row[1], (Annonce.TypeBien) row[2], (String) row[3],
+                        encode((BigDecimal) row[4], (Integer) row[5], (Integer) row[6], (Integer) row[7],
+                            (Boolean) row[8], (Boolean) row[9], (Boolean) row[10], (Boolean) row[11], (Boolean) row[12]));
+                    loaded++;
+                }
+            } while (rows.size() == LOAD_BATCH_SIZE);
+        } catch (DataAccessException e) {
+            // getSimilarAnnonces garde la requête SQL tant que l'index n'est pas prêt
+            log.warn("Impossible de charger l'index de similarité: {}", e.getMessage());
+            return;
+        }
+        ready = true;
+        log.info("Index de similarité chargé: {} annonces en {} ms", loaded, System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAnnonceEvent(AnnonceEvent event) {
+        if (!enabled) {
+            return;
+        }
+        Annonce annonce = event.getAnnonce();
+        if (annonce == null || annonce.getStatus() != Annonce.StatusAnnonce.ACTIVE || annonce.getTypeTransaction() == null) {
+            remove(event.getAnnonceId());
+            return;
+        }
+        put(annonce.getId(), annonce.getTypeTransaction(), annonce.getTypeBien(), annonce.getVille(), encode(annonce));
+    }
+
+    // Voisins d'une annonce indexée; vide si elle n'est pas dans l'index (pas ACTIVE)
+    public Optional<List<Long>> similarTo(Long annonceId, int limit) {
+        lock.readLock().lock();
+        try {
+            Bucket bucket = bucketOf.get(annonceId);
+            if (bucket == null) {
+                return Optional.empty();
+            }
+            int position = bucket.positions.get(annonceId);
+            float[] vector = Arrays.copyOfRange(bucket.vectors, position * DIMENSIONS, (position + 1) * DIMENSIONS);
+            return Optional.of(bucket.nearest(vector, bucket.typeCodes[position], bucket.cityCodes[position], annonceId, limit));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Voisins d'une annonce lue en base (inactive, expirée...): son vecteur est calculé à la volée
+    public List<Long> nearest(Annonce reference, int limit) {
+        if (reference.getTypeTransaction() == null) {
+            return List.of();
+        }
+        float[] vector = encode(reference);
+        lock.readLock().lock();
+        try {
+            return buckets.get(reference.getTypeTransaction()).nearest(vector, typeCode(reference.getTypeBien()),
+                cityCodes.getOrDefault(cityKey(reference.getVille()), UNKNOWN_CITY), reference.getId(), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(Long id, Annonce.TypeTransaction typeTransaction, Annonce.TypeBien typeBien, String ville, float[] vector) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+            Bucket bucket = buckets.get(typeTransaction);
+            bucket.add(id, vector, typeCode(typeBien), cityCode(ville));
+            bucketOf.put(id, bucket);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(Long id) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeLocked(Long id) {
+        Bucket bucket = bucketOf.remove(id);
+        if (bucket != null) {
+            bucket.remove(id);
+        }
+    }
+
+    private static float[] encode(Annonce annonce) {
+        return encode(annonce.getPrix(), annonce.getSurface(), annonce.getNombreChambres(), annonce.getNombreSallesBain(),
+            annonce.getGarage(), annonce.getJardin(), annonce.getPiscine(), annonce.getClimatisation(), annonce.getAscenseur());
+    }
+
+    private static float[] encode(BigDecimal prix, Integer surface, Integer chambres, Integer sallesBain, Boolean... equipements) {
+        float[] vector = new float[DIMENSIONS];
+        vector[0] = prix != null && prix.signum() > 0 ? log2(prix.doubleValue()) : Float.NaN;
+        vector[1] = surface != null && surface > 0 ? log2(surface) : Float.NaN;
+        vector[2] = chambres != null ? chambres * ROOM_SCALE : Float.NaN;
+        vector[3] = sallesBain != null ? sallesBain * ROOM_SCALE : Float.NaN;
+        for (int i = 0; i < equipements.length; i++) {
+            // Non renseigné: à mi-chemin entre avec et sans
+            Boolean equipement = equipements[i];
+            vector[NUMERIC_DIMENSIONS + i] = equipement == null ? EQUIPEMENT_WEIGHT / 2
+                : equipement ? EQUIPEMENT_WEIGHT : 0f;
+        }
+        return vector;
+    }
+
+    private static float log2(double value) {
+        return (float) (Math.log(value) / Math.log(2));
+    }
+
+    private static int typeCode(Annonce.TypeBien typeBien) {
+        return typeBien != null ? typeBien.ordinal() : -1;
+    }
+
+    private static String cityKey(String ville) {
+        return TextNormalizer.fold(ville).trim();
+    }
+
+    // Appelé sous le verrou d'écriture
+    private int cityCode(String ville) {
+        String key = cityKey(ville);
+        if (key.isEmpty()) {
+            return UNKNOWN_CITY;
+        }
+        return cityCodes.computeIfAbsent(key, k -> cityCodes.size());
+    }
+
+    // Stockage en colonnes: vecteurs bout à bout, suppression par échange avec le dernier
+    private static class Bucket {
+        private float[] vectors = new float[16 * DIMENSIONS];
+        private int[] typeCodes = new int[16];
+        private int[] cityCodes = new int[16];
+        private long[] ids = new long[16];
+        private int size;
+        private final Map<Long, Integer> positions = new HashMap<>();
+
+        void add(Long id, float[] vector, int typeCode, int cityCode) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                vectors = Arrays.copyOf(vectors, capacity * DIMENSIONS);
+                typeCodes = Arrays.copyOf(typeCodes, capacity);
+                cityCodes = Arrays.copyOf(cityCodes, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+            }
+            System.arraycopy(vector, 0, vectors, size * DIMENSIONS, DIMENSIONS);
+            typeCodes[size] = typeCode;
+            cityCodes[size] = cityCode;
+            ids[size] = id;
+            positions.put(id, size);
+            size++;
+        }
+
+        void remove(Long id) {
+            Integer position = positions.remove(id);
+            if (position == null) {
+                return;
+            }
+            int last = --size;
+            if (position != last) {
+                System.arraycopy(vectors, last * DIMENSIONS, vectors, position * DIMENSIONS, DIMENSIONS);
+                typeCodes[position] = typeCodes[last];
+                cityCodes[position] = cityCodes[last];
+                ids[position] = ids[last];
+                positions.put(ids[position], position);
+            }
+        }
+
+        // k plus proches (distance croissante, puis annonce la plus récente), par insertion dans un tableau trié
+        List<Long> nearest(float[] query, int typeCode, int cityCode, Long excludeId, int limit) {
+            int k = Math.min(limit, size);
+            if (k <= 0) {
+                return List.of();
+            }
+            float[] bestDistances = new float[k];
+            long[] bestIds = new long[k];
+            int found = 0;
+            long exclude = excludeId != null ? excludeId : Long.MIN_VALUE;
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == exclude) {
+                    continue;
+                }
+                float bound = found == k ? bestDistances[k - 1] : Float.POSITIVE_INFINITY;
+                float distance = distance(query, i, typeCode, cityCode, bound);
+                if (found == k && !closer(distance, ids[i], bestDistances[k - 1], bestIds[k - 1])) {
+                    continue;
+                }
+                int j = found < k ? found++ : k - 1;
+                while (j > 0 && closer(distance, ids[i], bestDistances[j - 1], bestIds[j - 1])) {
+                    bestDistances[j] = bestDistances[j - 1];
+                    bestIds[j] = bestIds[j - 1];
+                    j--;
+                }
+                bestDistances[j] = distance;
+                bestIds[j] = ids[i];
+            }
+            List<Long> result = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                result.add(bestIds[i]);
+            }
+            return result;
+        }
+
+        // Pénalités d'abord: le calcul s'arrête dès que la distance dépasse celle du k-ième voisin
+        private float distance(float[] query, int position, int typeCode, int cityCode, float bound) {
+            float distance = 0f;
+            if (typeCodes[position] != typeCode) {
+                distance += TYPE_PENALTY;
+            }
+            if (cityCode == UNKNOWN_CITY || cityCodes[position] != cityCode) {
+                distance += CITY_PENALTY;
+            }
+            int offset = position * DIMENSIONS;
+            for (int d = 0; d < DIMENSIONS && distance <= bound; d++) {
+                float delta = query[d] - vectors[offset + d];
+                // NaN des deux côtés ou d'un seul: seules les dimensions numériques peuvent manquer
+                distance += delta == delta ? delta * delta : MISSING_PENALTY;
+            }
+            return distance;
+        }
+
+        private static boolean closer(float distance, long id, float otherDistance, long otherId) {
+            return distance < otherDistance || (distance == otherDistance && id > otherId);
+        }
+    }
+}
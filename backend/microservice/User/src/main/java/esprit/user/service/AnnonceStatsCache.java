@@ -0,0 +1,153 @@
+package esprit.user.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import esprit.user.dto.AnnonceDto.AnnonceStatsDto;
+import esprit.user.entity.Annonce;
+import esprit.user.event.AnnonceCountersFlushedEvent;
+import esprit.user.event.AnnonceEvent;
+import esprit.user.repository.AnnonceRepository;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+// Statistiques d'annonces (GET /api/annonces/stats/me et /api/annonces/stats/global): un GROUP BY status par calcul,
+// gardé en cache jusqu'à ce que les annonces concernées changent. Le TTL couvre les écritures des autres instances.
+@Component
+public class AnnonceStatsCache {
+
+    private static final Long GLOBAL = 0L;
+    // Taille des listes IN pour retrouver les propriétaires d'un lot de compteurs
+    private static final int LOOKUP_CHUNK_SIZE = 500;
+
+    private final AnnonceRepository annonceRepository;
+    private final boolean enabled;
+    private final Cache<Long, AnnonceStatsDto> byCreateur;
+    private final Cache<Long, AnnonceStatsDto> global;
+
+    public AnnonceStatsCache(AnnonceRepository annonceRepository,
+                             @Value("${app.cache.annonce-stats.enabled:true}") boolean enabled,
+                             @Value("${app.cache.annonce-stats.max-size:10000}") long maxSize,
+                             @Value("${app.cache.annonce-stats.ttl-seconds:300}") long ttlSeconds) {
+        this.annonceRepository = annonceRepository;
+        this.enabled = enabled;
+        this.byCreateur = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+        this.global = Caffeine.newBuilder()
+            .maximumSize(1)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+    }
+
+    public AnnonceStatsDto getByCreateur(Long createurId) {
+        if (!enabled) {
+            return loadByCreateur(createurId);
+        }
+        return copy(byCreateur.get(createurId, this::loadByCreateur));
+    }
+
+    public AnnonceStatsDto getGlobal() {
+        if (!enabled) {
+            return loadGlobal();
+        }
+        return copy(global.get(GLOBAL, key -> loadGlobal()));
+    }
+
+    private AnnonceStatsDto loadByCreateur(Long createurId) {
+        AnnonceStatsDto stats = new AnnonceStatsDto();
+        for (Object[] row : annonceRepository.getStatsByCreateurId(createurId)) {
+            long count = ((Number) row[1]).longValue();
+            count(stats, (Annonce.StatusAnnonce) row[0], count);
+            stats.setTotalVues(stats.getTotalVues() + longValue(row[2]));
+            stats.setTotalFavoris(stats.getTotalFavoris() + longValue(row[3]));
+        }
+        return stats;
+    }
+
+    private AnnonceStatsDto loadGlobal() {
+        AnnonceStatsDto stats = new AnnonceStatsDto();
+        stats.setPrixMoyen(BigDecimal.ZERO);
+        for (Object[] row : annonceRepository.getStatsByStatus()) {
+            Annonce.StatusAnnonce status = (Annonce.StatusAnnonce) row[0];
+            count(stats, status, ((Number) row[1]).longValue());
+            // Moyennes sur les annonces actives seulement
+            if (status == Annonce.StatusAnnonce.ACTIVE) {
+                if (row[2] != null) {
+                    stats.setPrixMoyen(BigDecimal.valueOf(((Number) row[2]).doubleValue()));
+                }
+                if (row[3] != null) {
+                    stats.setSurfaceMoyenne(((Number) row[3]).intValue());
+                }
+            }
+        }
+        return stats;
+    }
+
+    private static void count(AnnonceStatsDto stats, Annonce.StatusAnnonce status, long count) {
+        stats.setTotalAnnonces(stats.getTotalAnnonces() + count);
+        switch (status) {
+            case ACTIVE -> stats.setAnnoncesActives(count);
+            case INACTIVE -> stats.setAnnoncesInactives(count);
+            case VENDU -> stats.setAnnoncesVendues(count);
+            case LOUE -> stats.setAnnoncesLouees(count);
+            default -> {
+            }
+        }
+    }
+
+    // Création, modification, suppression, expiration: statuts et moyennes changent
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onAnnonceEvent(AnnonceEvent event) {
+        if (event.getCreateurId() != null) {
+            byCreateur.invalidate(event.getCreateurId());
+        }
+        global.invalidateAll();
+    }
+
+    // Les vues et favoris ne touchent que les statistiques des propriétaires; rien à chercher si le cache est vide
+    @EventListener
+    public void onCountersFlushed(AnnonceCountersFlushedEvent event) {
+        if (byCreateur.estimatedSize() == 0) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>(event.getDeltas().keySet());
+        try {
+            for (int from = 0; from < ids.size(); from += LOOKUP_CHUNK_SIZE) {
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + LOOKUP_CHUNK_SIZE));
+                for (Object[] row : annonceRepository.findCreateurIdsByIdIn(chunk)) {
+                    if (row[1] != null) {
+                        byCreateur.invalidate((Long) row[1]);
+                    }
+                }
+            }
+        } catch (DataAccessException e) {
+            // Propriétaires inconnus: tout recalculer plutôt que servir des sommes périmées
+            byCreateur.invalidateAll();
+        }
+    }
+
+    public void clear() {
+        byCreateur.invalidateAll();
+        global.invalidateAll();
+    }
+
+    private static long longValue(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+
+    private static AnnonceStatsDto copy(AnnonceStatsDto source) {
+        AnnonceStatsDto copy = new AnnonceStatsDto();
+        BeanUtils.copyProperties(source, copy);
+        return copy;
+    }
+}
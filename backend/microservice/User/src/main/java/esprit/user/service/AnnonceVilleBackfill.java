@@ -0,0 +1,59 @@
+package esprit.user.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Rattrapage de ville_normalisee (colonne ajoutée sur une base existante, ou lignes écrites hors JPA):
+// le repli accents/casse se fait en Java (TextNormalizer.villeKey), par tranches de chunk-size lignes.
+// D'ici là, ces annonces ne sortent pas d'un filtre ville résolu en base.
+@Component
+@Slf4j
+public class AnnonceVilleBackfill {
+
+    private static final String SELECT_SQL =
+        "SELECT id, ville FROM annonces WHERE ville_normalisee IS NULL AND ville IS NOT NULL ORDER BY id LIMIT ?";
+    private static final String UPDATE_SQL = "UPDATE annonces SET ville_normalisee = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+
+    public AnnonceVilleBackfill(JdbcTemplate jdbcTemplate,
+                                @Value("${app.annonces.ville.backfill-chunk-size:5000}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.chunkSize = chunkSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        long start = System.currentTimeMillis();
+        int updated = 0;
+        try {
+            List<Object[]> batch;
+            do {
+                batch = new ArrayList<>();
+                for (Map<String, Object> row : jdbcTemplate.queryForList(SELECT_SQL, chunkSize)) {
+                    batch.add(new Object[] {TextNormalizer.villeKey((String) row.get("ville")), row.get("id")});
+                }
+                if (!batch.isEmpty()) {
+                    jdbcTemplate.batchUpdate(UPDATE_SQL, batch);
+                    updated += batch.size();
+                }
+            } while (batch.size() == chunkSize);
+        } catch (DataAccessException e) {
+            log.warn("Rattrapage des villes normalisées interrompu après {} annonces: {}", updated, e.getMessage());
+            return;
+        }
+        if (updated > 0) {
+            log.info("Villes normalisées rattrapées: {} annonces en {} ms", updated, System.currentTimeMillis() - start);
+        }
+    }
+}
@@ -1,13 +1,13 @@
 package esprit.user.service;
 
 import esprit.user.dto.CommentCreateRequest;
+import esprit.user.dto.AnnonceDto.AnnonceRatingStatsDto;
 import esprit.user.dto.CommentResponse;
 import esprit.user.entity.Annonce;
 import esprit.user.entity.Comment;
 import esprit.user.entity.User;
 import esprit.user.repository.AnnonceRepository;
 import esprit.user.repository.CommentRepository;
-import esprit.user.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -16,8 +16,11 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 import esprit.user.entity.UserType;
 
 @Service
@@ -31,11 +34,14 @@ public class CommentService {
     private AnnonceRepository annonceRepository;
     
     @Autowired
-    private UserRepository userRepository;
+    private UserIdentityCache userIdentityCache;
     
     @Autowired
     private NotificationService notificationService;
     
+    @Autowired
+    private AnnonceRatingAggregates annonceRatingAggregates;
+    
     public CommentResponse createComment(Long annonceId, CommentCreateRequest request, String userEmail) {
         try {
             // Validate input
@@ -48,7 +54,7 @@ public class CommentService {
             }
             
             // Find the user
-            User user = userRepository.findByEmail(userEmail)
+            User user = userIdentityCache.findByEmail(userEmail)
                 .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé avec l'email: " + userEmail));
             
             // Find the annonce
@@ -63,6 +69,7 @@ public class CommentService {
             // Create the comment
             Comment comment = new Comment(request.getContent(), request.getRating(), annonce, user);
             Comment savedComment = commentRepository.save(comment);
+            annonceRatingAggregates.apply(annonceId, 1, null, savedComment.getRating(), false);
             
             // Send notification to the agency/owner asynchronously
             if (!annonce.getCreateur().getId().equals(user.getId())) {
@@ -85,10 +92,17 @@ public class CommentService {
             throw new IllegalArgumentException("ID de l'annonce invalide");
         }
         
-        List<Comment> comments = commentRepository.findByAnnonceIdAndParentCommentIsNullOrderByCreatedAtDesc(annonceId);
-        return comments.stream()
-            .map(CommentResponse::new)
-            .collect(Collectors.toList());
+        // Une requête pour tout le fil, auteurs compris; l'arbre est reconstruit en mémoire
+        Map<Long, CommentResponse> thread = assembleThread(annonceId, commentRepository.findThreadRowsByAnnonceId(annonceId));
+        List<CommentResponse> roots = new ArrayList<>();
+        for (CommentResponse response : thread.values()) {
+            if (response.getParentCommentId() == null) {
+                roots.add(response);
+            }
+        }
+        // Plus récents d'abord, les réponses restent dans l'ordre chronologique
+        Collections.reverse(roots);
+        return roots;
     }
     
     public Page<CommentResponse> getCommentsByAnnonceId(Long annonceId, int page, int size) {
@@ -106,24 +120,47 @@ public class CommentService {
         
         Pageable pageable = PageRequest.of(page, size);
         Page<Comment> comments = commentRepository.findByAnnonceIdAndParentCommentIsNullOrderByCreatedAtDesc(annonceId, pageable);
-        return comments.map(CommentResponse::new);
+        if (comments.isEmpty()) {
+            return comments.map(comment -> new CommentResponse(comment, annonceId, null));
+        }
+        // Page et COUNT, puis toutes les réponses de l'annonce en une requête (peu nombreuses: seuls le propriétaire
+        // et les administrateurs répondent); celles des commentaires hors page sont ignorées
+        List<Object[]> rows = new ArrayList<>();
+        for (Comment comment : comments) {
+            rows.add(new Object[] {comment, null});
+        }
+        rows.addAll(commentRepository.findReplyRowsByAnnonceId(annonceId));
+        Map<Long, CommentResponse> thread = assembleThread(annonceId, rows);
+        return comments.map(comment -> thread.get(comment.getId()));
     }
     
-    public Double getAverageRating(Long annonceId) {
-        if (annonceId == null || annonceId <= 0) {
-            throw new IllegalArgumentException("ID de l'annonce invalide");
+    // Lignes (commentaire avec son auteur, id du parent) -> réponses indexées par id, dans l'ordre des lignes,
+    // chaque réponse rattachée à son parent. Aucune association paresseuse n'est parcourue.
+    private Map<Long, CommentResponse> assembleThread(Long annonceId, List<Object[]> rows) {
+        Map<Long, CommentResponse> thread = new LinkedHashMap<>();
+        for (Object[] row : rows) {
+            Comment comment = (Comment) row[0];
+            thread.put(comment.getId(), new CommentResponse(comment, annonceId, (Long) row[1]));
         }
-        
-        Double rating = commentRepository.getAverageRatingByAnnonceId(annonceId);
-        return rating != null ? rating : 0.0;
+        for (CommentResponse response : thread.values()) {
+            if (response.getParentCommentId() != null) {
+                CommentResponse parent = thread.get(response.getParentCommentId());
+                if (parent != null) {
+                    parent.getReplies().add(response);
+                }
+            }
+        }
+        return thread;
     }
     
-    public Long getCommentCount(Long annonceId) {
+    // Lecture par clé primaire des agrégats tenus sur l'annonce, plus de AVG ni de COUNT sur le fil
+    @Transactional(readOnly = true)
+    public AnnonceRatingStatsDto getRatingStats(Long annonceId) {
         if (annonceId == null || annonceId <= 0) {
             throw new IllegalArgumentException("ID de l'annonce invalide");
         }
         
-        return commentRepository.countByAnnonceId(annonceId);
+        return annonceRatingAggregates.stats(annonceId);
     }
     
     public Page<CommentResponse> getCommentsForUserAnnonces(String userEmail, int page, int size) {
@@ -131,7 +168,7 @@ public class CommentService {
             throw new IllegalArgumentException("Email utilisateur requis");
         }
         
-        User user = userRepository.findByEmail(userEmail)
+        User user = userIdentityCache.findByEmail(userEmail)
             .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé avec l'email: " + userEmail));
         
         if (page < 0) {
@@ -157,7 +194,7 @@ public class CommentService {
     System.out.println("✅ [CommentService] Parent comment found: " + parentComment.getId());
     
     // Find user
-    User user = userRepository.findByEmail(userEmail)
+    User user = userIdentityCache.findByEmail(userEmail)
         .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
     
     System.out.println("✅ [CommentService] User found: " + user.getEmail() + " (" + user.getUserType() + ")");
@@ -191,6 +228,7 @@ public class CommentService {
     
     System.out.println("💾 [CommentService] Saving reply...");
     reply = commentRepository.save(reply);
+    annonceRatingAggregates.apply(annonce.getId(), 1, null, null, true);
     System.out.println("✅ [CommentService] Reply saved with ID: " + reply.getId());
     
     return new CommentResponse(reply);
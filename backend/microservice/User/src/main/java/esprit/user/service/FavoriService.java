@@ -0,0 +1,71 @@
+package esprit.user.service;
+
+import esprit.user.dto.AnnonceDto.FavoriStatusDto;
+import esprit.user.entity.Annonce;
+import esprit.user.entity.Favori;
+import esprit.user.entity.User;
+import esprit.user.repository.AnnonceRepository;
+import esprit.user.repository.FavoriRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+// Ajout/retrait idempotents: le compteur annonces.favoris ne bouge que si une ligne favoris a réellement changé
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FavoriService {
+
+    private final FavoriRepository favoriRepository;
+    private final AnnonceRepository annonceRepository;
+    private final UserIdentityCache userIdentityCache;
+    private final AnnonceCounterBuffer annonceCounterBuffer;
+
+    // Pas de transaction englobante: un doublon concurrent (double clic) échoue sur la contrainte
+    // unique dans la transaction propre au saveAndFlush, sans rendre l'appelant rollback-only
+    public FavoriStatusDto addFavori(Long annonceId, String userEmail) {
+        User user = findUser(userEmail);
+        Annonce annonce = findAnnonce(annonceId);
+
+        if (!favoriRepository.existsByUserIdAndAnnonceId(user.getId(), annonceId)) {
+            try {
+                favoriRepository.saveAndFlush(new Favori(user, annonce));
+                annonceCounterBuffer.increment(AnnonceCounterBuffer.Counter.FAVORIS, annonceId);
+                log.info("Annonce {} ajoutée aux favoris de {}", annonceId, userEmail);
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Favori déjà présent pour l'annonce {} et l'utilisateur {}", annonceId, userEmail);
+            }
+        }
+        return toStatus(annonce, true);
+    }
+
+    public FavoriStatusDto removeFavori(Long annonceId, String userEmail) {
+        User user = findUser(userEmail);
+        Annonce annonce = findAnnonce(annonceId);
+
+        if (favoriRepository.deleteByUserIdAndAnnonceId(user.getId(), annonceId) > 0) {
+            annonceCounterBuffer.add(AnnonceCounterBuffer.Counter.FAVORIS, annonceId, -1L);
+            log.info("Annonce {} retirée des favoris de {}", annonceId, userEmail);
+        }
+        return toStatus(annonce, false);
+    }
+
+    private FavoriStatusDto toStatus(Annonce annonce, boolean favori) {
+        long favoris = (annonce.getFavoris() != null ? annonce.getFavoris() : 0)
+            + annonceCounterBuffer.pendingDelta(AnnonceCounterBuffer.Counter.FAVORIS, annonce.getId());
+        return new FavoriStatusDto(annonce.getId(), favori, Math.max(favoris, 0));
+    }
+
+    private User findUser(String userEmail) {
+        return userIdentityCache.findByEmail(userEmail)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Utilisateur non trouvé"));
+    }
+
+    private Annonce findAnnonce(Long annonceId) {
+        return annonceRepository.findById(annonceId)
+            .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Annonce non trouvée"));
+    }
+}
@@ -0,0 +1,122 @@
+package esprit.user.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Hachage des mots de passe (connexion, inscription, changement) sur un pool dédié et borné:
+// au plus threads hachages simultanés, queue-capacity en attente, au-delà 503 plutôt que des cœurs saturés.
+// Les hachages portent l'algorithme en préfixe ({bcrypt}, {argon2}); ceux sans préfixe sont des bcrypt historiques.
+// upgradeEncoding signale un hachage d'un autre algorithme ou d'un coût différent: il est refait à la connexion.
+@Component
+@Slf4j
+public class PasswordHashingService implements PasswordEncoder {
+
+    public static final String BCRYPT = "bcrypt";
+    public static final String ARGON2 = "argon2";
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolTaskExecutor executor;
+    private final long waitTimeoutMs;
+
+    public PasswordHashingService(@Value("${app.security.password.algorithm:bcrypt}") String algorithm,
+                                  @Value("${app.security.password.bcrypt.strength:10}") int bcryptStrength,
+                                  @Value("${app.security.password.argon2.memory-kb:19456}") int argon2MemoryKb,
+                                  @Value("${app.security.password.argon2.iterations:2}") int argon2Iterations,
+                                  @Value("${app.security.password.argon2.parallelism:1}") int argon2Parallelism,
+                                  @Value("${app.security.password.threads:0}") int threads,
+                                  @Value("${app.security.password.queue-capacity:64}") int queueCapacity,
+                                  @Value("${app.security.password.wait-timeout-ms:10000}") long waitTimeoutMs) {
+        this.delegate = encoder(algorithm, bcryptStrength, argon2MemoryKb, argon2Iterations, argon2Parallelism);
+        this.waitTimeoutMs = waitTimeoutMs;
+        // 0: un thread par cœur, le hachage étant purement CPU
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("PasswordHash-");
+        executor.initialize();
+        log.info("Hachage des mots de passe: {} sur {} threads", algorithm, poolSize);
+    }
+
+    // Encodeur partagé avec le benchmark JMH: mêmes paramètres que ceux mesurés
+    public static PasswordEncoder encoder(String algorithm, int bcryptStrength,
+                                          int argon2MemoryKb, int argon2Iterations, int argon2Parallelism) {
+        if (!BCRYPT.equals(algorithm) && !ARGON2.equals(algorithm)) {
+            throw new IllegalArgumentException("Algorithme de hachage inconnu: " + algorithm);
+        }
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(algorithm, Map.of(
+            BCRYPT, new BCryptPasswordEncoder(bcryptStrength),
+            ARGON2, new Argon2PasswordEncoder(16, 32, argon2Parallelism, argon2MemoryKb, argon2Iterations)));
+        encoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+        return encoder;
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    // Simple lecture du préfixe et des paramètres: pas de passage par le pool
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future;
+        try {
+            future = executor.submit(task);
+        } catch (TaskRejectedException e) {
+            log.warn("File de hachage des mots de passe pleine");
+            throw overloaded();
+        }
+        try {
+            return future.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            log.warn("Hachage de mot de passe abandonné après {} ms d'attente", waitTimeoutMs);
+            throw overloaded();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw overloaded();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static ResponseStatusException overloaded() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Service momentanément surchargé, réessayez");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
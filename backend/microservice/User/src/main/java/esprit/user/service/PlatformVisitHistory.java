@@ -0,0 +1,241 @@
+package esprit.user.service;
+
+import esprit.user.entity.VisitHourlyAggregate;
+import esprit.user.repository.PlatformVisitRepository;
+import esprit.user.repository.VisitHourlyAggregateRepository;
+import esprit.user.repository.VisitPageAggregateRepository;
+import esprit.user.repository.VisitUserAggregateRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Historique des visites en deux niveaux: les lignes brutes de platform_visits pour les raw-days derniers jours,
+// des agrégats horaires, par page et par utilisateur au-delà. Chaque nuit les journées sorties de la rétention sont agrégées
+// puis purgées par tranches; les lectures coupent la plage à la dernière journée agrégée.
+@Component
+@Slf4j
+public class PlatformVisitHistory {
+
+    private static final String AGGREGATE_HOURS =
+        "INSERT INTO visit_hourly_aggregates (visit_date, visit_hour, visits, duration_sum, duration_count) "
+            + "SELECT visit_date, HOUR(visit_timestamp), COUNT(*), COALESCE(SUM(duration_seconds), 0), COUNT(duration_seconds) "
+            + "FROM platform_visits WHERE visit_date = ? GROUP BY visit_date, HOUR(visit_timestamp)";
+    private static final String AGGREGATE_PAGES =
+        "INSERT INTO visit_page_aggregates (visit_date, page_url, visits) "
+            + "SELECT visit_date, page_url, COUNT(*) FROM platform_visits "
+            + "WHERE visit_date = ? AND page_url IS NOT NULL GROUP BY visit_date, page_url";
+    private static final String AGGREGATE_USERS =
+        "INSERT INTO visit_user_aggregates (visit_date, user_id, visits) "
+            + "SELECT visit_date, user_id, COUNT(*) FROM platform_visits "
+            + "WHERE visit_date = ? AND user_id IS NOT NULL GROUP BY visit_date, user_id";
+
+    private final PlatformVisitRepository platformVisitRepository;
+    private final VisitHourlyAggregateRepository hourlyAggregateRepository;
+    private final VisitPageAggregateRepository pageAggregateRepository;
+    private final VisitUserAggregateRepository userAggregateRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int rawDays;
+    private final int chunkSize;
+
+    public PlatformVisitHistory(PlatformVisitRepository platformVisitRepository,
+                                VisitHourlyAggregateRepository hourlyAggregateRepository,
+                                VisitPageAggregateRepository pageAggregateRepository,
+                                VisitUserAggregateRepository userAggregateRepository,
+                                JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                @Value("${app.visits.retention.enabled:true}") boolean enabled,
+                                @Value("${app.visits.retention.raw-days:90}") int rawDays,
+                                @Value("${app.visits.retention.chunk-size:5000}") int chunkSize) {
+        this.platformVisitRepository = platformVisitRepository;
+        this.hourlyAggregateRepository = hourlyAggregateRepository;
+        this.pageAggregateRepository = pageAggregateRepository;
+        this.userAggregateRepository = userAggregateRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        // La journée en cours reste toujours brute: les agrégats en mémoire la complètent événement par événement
+        this.rawDays = Math.max(1, rawDays);
+        this.chunkSize = chunkSize;
+    }
+
+    public Map<LocalDate, Long> dailyVisits(LocalDate startDate, LocalDate endDate) {
+        Map<LocalDate, Long> visits = new TreeMap<>();
+        LocalDate watermark = aggregatedThrough();
+        if (watermark != null && !startDate.isAfter(watermark)) {
+            for (Object[] row : hourlyAggregateRepository.getVisitStatsByDateRange(startDate, min(endDate, watermark))) {
+                visits.put((LocalDate) row[0], ((Number) row[1]).longValue());
+            }
+        }
+        LocalDate rawStart = rawStart(startDate, watermark);
+        if (!rawStart.isAfter(endDate)) {
+            for (Object[] row : platformVisitRepository.getVisitStatsByDateRange(rawStart, endDate)) {
+                visits.put((LocalDate) row[0], (Long) row[1]);
+            }
+        }
+        return visits;
+    }
+
+    // Visites d'un utilisateur connecté par jour
+    public Map<LocalDate, Long> userDailyVisits(Long userId, LocalDate startDate, LocalDate endDate) {
+        Map<LocalDate, Long> visits = new TreeMap<>();
+        LocalDate watermark = aggregatedThrough();
+        if (watermark != null && !startDate.isAfter(watermark)) {
+            for (Object[] row : userAggregateRepository.countVisitsByUserIdBetween(userId, startDate, min(endDate, watermark))) {
+                visits.put((LocalDate) row[0], ((Number) row[1]).longValue());
+            }
+        }
+        LocalDate rawStart = rawStart(startDate, watermark);
+        if (!rawStart.isAfter(endDate)) {
+            for (Object[] row : platformVisitRepository.countVisitsByUserIdBetween(userId, rawStart, endDate)) {
+                visits.put((LocalDate) row[0], (Long) row[1]);
+            }
+        }
+        return visits;
+    }
+
+    public long countVisits(LocalDate startDate, LocalDate endDate) {
+        long total = 0L;
+        LocalDate watermark = aggregatedThrough();
+        if (watermark != null && !startDate.isAfter(watermark)) {
+            total += hourlyAggregateRepository.countVisitsBetween(startDate, min(endDate, watermark));
+        }
+        LocalDate rawStart = rawStart(startDate, watermark);
+        if (!rawStart.isAfter(endDate)) {
+            total += platformVisitRepository.countVisitsBetween(rawStart, endDate);
+        }
+        return total;
+    }
+
+    // Lignes (date, page, visites)
+    public List<Object[]> pagesByDay(LocalDate startDate, LocalDate endDate) {
+        List<Object[]> rows = new ArrayList<>();
+        LocalDate watermark = aggregatedThrough();
+        if (watermark != null && !startDate.isAfter(watermark)) {
+            rows.addAll(pageAggregateRepository.countPagesByDateRange(startDate, min(endDate, watermark)));
+        }
+        LocalDate rawStart = rawStart(startDate, watermark);
+        if (!rawStart.isAfter(endDate)) {
+            rows.addAll(platformVisitRepository.countPagesByDateRange(rawStart, endDate));
+        }
+        return rows;
+    }
+
+    public Map<String, Long> mostVisitedPages(LocalDate startDate, LocalDate endDate, int limit) {
+        Map<String, Long> merged = new HashMap<>();
+        LocalDate watermark = aggregatedThrough();
+        if (watermark != null && !startDate.isAfter(watermark)) {
+            for (Object[] row : pageAggregateRepository.getMostVisitedPages(startDate, min(endDate, watermark))) {
+                merged.merge((String) row[0], ((Number) row[1]).longValue(), Long::sum);
+            }
+        }
+        LocalDate rawStart = rawStart(startDate, watermark);
+        if (!rawStart.isAfter(endDate)) {
+            for (Object[] row : platformVisitRepository.getMostVisitedPages(rawStart, endDate)) {
+                if (row[0] != null) {
+                    merged.merge((String) row[0], (Long) row[1], Long::sum);
+                }
+            }
+        }
+        Map<String, Long> top = new LinkedHashMap<>();
+        merged.entrySet().stream()
+            .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+            .limit(limit)
+            .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    // Visites heure par heure (0 à 23) d'une journée, brute ou agrégée
+    public Map<Integer, Long> hourlyVisits(LocalDate date) {
+        Map<Integer, Long> visits = new TreeMap<>();
+        LocalDate watermark = aggregatedThrough();
+        if (watermark != null && !date.isAfter(watermark)) {
+            for (VisitHourlyAggregate aggregate : hourlyAggregateRepository.findByVisitDateOrderByVisitHour(date)) {
+                visits.put(aggregate.getVisitHour(), aggregate.getVisits());
+            }
+            return visits;
+        }
+        for (Object[] row : platformVisitRepository.countVisitsByHour(date)) {
+            visits.put(((Number) row[0]).intValue(), (Long) row[1]);
+        }
+        return visits;
+    }
+
+    // Une journée à la fois, dans l'ordre: le filigrane ne dépasse jamais une journée non agrégée.
+    // Si la purge s'interrompt, les agrégats font foi et la purge reprend au passage suivant.
+    @Scheduled(cron = "${app.visits.retention.cron:0 30 3 * * *}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate cutoff = LocalDate.now().minusDays(rawDays);
+        long start = System.currentTimeMillis();
+        int days = 0;
+        long purged = 0L;
+        try {
+            for (LocalDate day = platformVisitRepository.findFirstVisitDate();
+                 day != null && day.isBefore(cutoff);
+                 day = platformVisitRepository.findFirstVisitDate()) {
+                LocalDate date = day;
+                transactionTemplate.executeWithoutResult(status -> aggregate(date));
+                purged += purge(date);
+                days++;
+            }
+        } catch (DataAccessException e) {
+            log.warn("Agrégation des visites interrompue: {}", e.getMessage());
+        }
+        if (days > 0) {
+            log.info("{} journées de visites agrégées, {} lignes brutes purgées en {} ms",
+                days, purged, System.currentTimeMillis() - start);
+        }
+    }
+
+    private void aggregate(LocalDate date) {
+        if (hourlyAggregateRepository.existsByVisitDate(date)) {
+            return;
+        }
+        jdbcTemplate.update(AGGREGATE_HOURS, java.sql.Date.valueOf(date));
+        jdbcTemplate.update(AGGREGATE_PAGES, java.sql.Date.valueOf(date));
+        jdbcTemplate.update(AGGREGATE_USERS, java.sql.Date.valueOf(date));
+    }
+
+    // Transactions courtes: la table reste disponible pour l'ingestion pendant la purge
+    private long purge(LocalDate date) {
+        long purged = 0L;
+        while (true) {
+            List<Long> ids = platformVisitRepository.findIdsByVisitDate(date, PageRequest.of(0, chunkSize));
+            if (ids.isEmpty()) {
+                return purged;
+            }
+            transactionTemplate.executeWithoutResult(status -> platformVisitRepository.deleteAllByIdInBatch(ids));
+            purged += ids.size();
+        }
+    }
+
+    // Relu à chaque lecture (MAX sur l'index unique): une autre instance peut avoir agrégé et purgé entre-temps.
+    // null tant qu'aucune journée n'a été agrégée
+    private LocalDate aggregatedThrough() {
+        return hourlyAggregateRepository.findLastAggregatedDate();
+    }
+
+    private static LocalDate rawStart(LocalDate startDate, LocalDate watermark) {
+        return watermark != null && !startDate.isAfter(watermark) ? watermark.plusDays(1) : startDate;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+}
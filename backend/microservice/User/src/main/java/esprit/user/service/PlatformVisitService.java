@@ -2,24 +2,25 @@ package esprit.user.service;
 
 import esprit.user.entity.PlatformVisit;
 import esprit.user.entity.User;
-import esprit.user.repository.PlatformVisitRepository;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.UUID;
 
 @Service
 @RequiredArgsConstructor
-@Transactional
 public class PlatformVisitService {
 
-    private final PlatformVisitRepository platformVisitRepository;
+    private final PlatformVisitWriter platformVisitWriter;
 
-    public PlatformVisit recordVisit(String ipAddress, String userAgent, String sessionId, 
-                                   User user, String pageUrl) {
+    // Écriture différée par lots (PlatformVisitWriter): la visite n'a pas encore d'id au retour.
+    // Retourne sa clé, à repasser à updateVisitDuration; null si elle a été écartée (file pleine, politique DROP)
+    public String recordVisit(String ipAddress, String userAgent, String sessionId, 
+                              User user, String pageUrl) {
         PlatformVisit visit = new PlatformVisit();
+        visit.setVisitKey(UUID.randomUUID().toString());
         visit.setIpAddress(ipAddress);
         visit.setUserAgent(userAgent);
         visit.setSessionId(sessionId);
@@ -28,13 +29,11 @@ public class PlatformVisitService {
         visit.setVisitDate(LocalDate.now());
         visit.setVisitTimestamp(LocalDateTime.now());
         
-        return platformVisitRepository.save(visit);
+        return platformVisitWriter.submit(visit) ? visit.getVisitKey() : null;
     }
 
-    public void updateVisitDuration(Long visitId, long durationSeconds) {
-        platformVisitRepository.findById(visitId).ifPresent(visit -> {
-            visit.setDurationSeconds(durationSeconds);
-            platformVisitRepository.save(visit);
-        });
+    // Passe par la même file que la visite: elle est appliquée après l'écriture de celle-ci
+    public boolean updateVisitDuration(String visitKey, long durationSeconds) {
+        return platformVisitWriter.submitDuration(visitKey, durationSeconds);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,317 @@
+package esprit.user.service;
+
+import esprit.user.entity.PlatformVisit;
+import esprit.user.event.PlatformVisitEvent;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Écriture des visites en différé: les threads de requête déposent dans une file bornée sans verrou,
+// un thread dédié vide la file en INSERT multi-lignes (les ids IDENTITY empêchent le batch JDBC de Hibernate).
+// Les durées passent par la même file, rattachées par visit_key: appliquées après l'INSERT de leur lot,
+// elles trouvent toujours leur visite déjà écrite (sauf visite écartée ou lot en échec).
+@Component
+@Slf4j
+public class PlatformVisitWriter {
+
+    public enum OverflowPolicy {
+        // La visite est perdue (comptée dans dropped): la requête n'attend jamais
+        DROP,
+        // Le thread de requête écrit lui-même sa visite: ralentit les producteurs au lieu de perdre
+        CALLER_RUNS
+    }
+
+    private static final String COLUMNS = "(visit_key, visit_date, visit_timestamp, ip_address, user_agent, session_id, user_id, page_url, duration_seconds)";
+    private static final String ROW = "(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String SELECT_DURATIONS =
+        "SELECT visit_key, visit_date, ip_address, session_id, page_url, duration_seconds FROM platform_visits WHERE visit_key IN ";
+    private static final String UPDATE_DURATION = "UPDATE platform_visits SET duration_seconds = ? WHERE visit_key = ?";
+    // Attente maximale sans rien à écrire; un dépôt réveille le thread dès que la file cesse d'être vide
+    private static final long IDLE_PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private record DurationUpdate(String visitKey, long durationSeconds) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    // Visites (PlatformVisit) et durées (DurationUpdate), dans l'ordre de dépôt
+    private final MpscRingBuffer<Object> buffer;
+    private final int batchSize;
+    private final long maxLatencyNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final String fullBatchSql;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder durations = new LongAdder();
+    private final LongAdder durationsMissed = new LongAdder();
+
+    private volatile boolean running;
+    private volatile boolean parked;
+    private Thread writer;
+
+    public PlatformVisitWriter(JdbcTemplate jdbcTemplate, ApplicationEventPublisher eventPublisher,
+                               @Value("${app.visits.ingestion.capacity:8192}") int capacity,
+                               @Value("${app.visits.ingestion.batch-size:500}") int batchSize,
+                               @Value("${app.visits.ingestion.max-latency-ms:200}") long maxLatencyMs,
+                               @Value("${app.visits.ingestion.overflow-policy:DROP}") OverflowPolicy overflowPolicy) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventPublisher = eventPublisher;
+        this.buffer = new MpscRingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMs);
+        this.overflowPolicy = overflowPolicy;
+        this.fullBatchSql = insertSql(batchSize);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::drainLoop, "visit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Vide la file avant l'arrêt du contexte (la DataSource est encore ouverte)
+    @PreDestroy
+    public void stop() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!buffer.isEmpty()) {
+            log.warn("{} visites non écrites à l'arrêt", buffer.size());
+        }
+    }
+
+    public boolean submit(PlatformVisit visit) {
+        if (offer(visit)) {
+            return true;
+        }
+        if (overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+            callerRuns.increment();
+            return write(List.of(visit), List.of());
+        }
+        dropped.increment();
+        return false;
+    }
+
+    public boolean submitDuration(String visitKey, long durationSeconds) {
+        if (visitKey == null) {
+            return false;
+        }
+        DurationUpdate update = new DurationUpdate(visitKey, durationSeconds);
+        if (offer(update)) {
+            return true;
+        }
+        if (overflowPolicy == OverflowPolicy.CALLER_RUNS) {
+            callerRuns.increment();
+            return write(List.of(), List.of(update));
+        }
+        dropped.increment();
+        return false;
+    }
+
+    public Map<String, Object> metrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("accepted", accepted.sum());
+        metrics.put("dropped", dropped.sum());
+        metrics.put("callerRuns", callerRuns.sum());
+        metrics.put("written", written.sum());
+        metrics.put("failed", failed.sum());
+        metrics.put("batches", batches.sum());
+        metrics.put("durations", durations.sum());
+        metrics.put("durationsMissed", durationsMissed.sum());
+        metrics.put("pending", buffer.size());
+        metrics.put("capacity", buffer.capacity());
+        metrics.put("overflowPolicy", overflowPolicy.name());
+        return metrics;
+    }
+
+    private boolean offer(Object element) {
+        if (!running || !buffer.offer(element)) {
+            return false;
+        }
+        accepted.increment();
+        // Lu après la réservation de la case: soit le thread voit la file non vide avant de s'endormir, soit il est réveillé ici
+        if (parked) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    // Un lot part quand il est plein ou quand son plus ancien élément a attendu max-latency-ms.
+    // Une exception imprévue abandonne le lot en cours mais jamais le thread: la file continue d'être vidée
+    private void drainLoop() {
+        List<PlatformVisit> visits = new ArrayList<>(batchSize);
+        List<DurationUpdate> updates = new ArrayList<>();
+        long firstAt = 0L;
+        while (running || !buffer.isEmpty()) {
+            try {
+                Object element = buffer.poll();
+                if (element != null) {
+                    if (visits.isEmpty() && updates.isEmpty()) {
+                        firstAt = System.nanoTime();
+                    }
+                    if (element instanceof PlatformVisit visit) {
+                        visits.add(visit);
+                    } else {
+                        updates.add((DurationUpdate) element);
+                    }
+                    if (visits.size() + updates.size() >= batchSize) {
+                        write(visits, updates);
+                        visits.clear();
+                        updates.clear();
+                    }
+                    continue;
+                }
+                boolean pending = !visits.isEmpty() || !updates.isEmpty();
+                long waited = System.nanoTime() - firstAt;
+                if (pending && (!running || waited >= maxLatencyNanos)) {
+                    write(visits, updates);
+                    visits.clear();
+                    updates.clear();
+                    continue;
+                }
+                if (!buffer.isEmpty()) {
+                    // Case réservée par un producteur mais pas encore publiée
+                    Thread.onSpinWait();
+                    continue;
+                }
+                parked = true;
+                if (running && buffer.isEmpty()) {
+                    LockSupport.parkNanos(pending ? maxLatencyNanos - waited : IDLE_PARK_NANOS);
+                }
+                parked = false;
+            } catch (RuntimeException e) {
+                parked = false;
+                failed.add(Math.max(1, visits.size() + updates.size()));
+                log.error("Lot de {} visites abandonné par le thread d'écriture", visits.size() + updates.size(), e);
+                visits.clear();
+                updates.clear();
+            }
+        }
+        if (!visits.isEmpty() || !updates.isEmpty()) {
+            write(visits, updates);
+        }
+    }
+
+    private boolean write(List<PlatformVisit> visits, List<DurationUpdate> updates) {
+        boolean written = visits.isEmpty() || insert(visits);
+        if (!updates.isEmpty()) {
+            applyDurations(updates);
+        }
+        return written;
+    }
+
+    private boolean insert(List<PlatformVisit> batch) {
+        String sql = batch.size() == batchSize ? fullBatchSql : insertSql(batch.size());
+        List<Object> args = new ArrayList<>(batch.size() * 9);
+        for (PlatformVisit visit : batch) {
+            args.add(visit.getVisitKey());
+            args.add(visit.getVisitDate() != null ? Date.valueOf(visit.getVisitDate()) : null);
+            args.add(visit.getVisitTimestamp() != null ? Timestamp.valueOf(visit.getVisitTimestamp()) : null);
+            args.add(visit.getIpAddress());
+            args.add(visit.getUserAgent());
+            args.add(visit.getSessionId());
+            args.add(visit.getUser() != null ? visit.getUser().getId() : null);
+            args.add(visit.getPageUrl());
+            args.add(visit.getDurationSeconds());
+        }
+        try {
+            jdbcTemplate.update(sql, args.toArray());
+        } catch (DataAccessException e) {
+            // Données d'analyse: un lot en échec est abandonné plutôt que de bloquer la file
+            failed.add(batch.size());
+            log.warn("Échec de l'écriture de {} visites: {}", batch.size(), e.getMessage());
+            return false;
+        }
+        written.add(batch.size());
+        batches.increment();
+        for (PlatformVisit visit : batch) {
+            publish(PlatformVisitEvent.recorded(visit));
+        }
+        return true;
+    }
+
+    // Lit la durée précédente de chaque visite (pour les agrégats) puis écrit les nouvelles en un batch JDBC;
+    // seul ce thread met à jour les durées, hors CALLER_RUNS
+    private void applyDurations(List<DurationUpdate> updates) {
+        Map<String, Long> byKey = new LinkedHashMap<>();
+        for (DurationUpdate update : updates) {
+            byKey.put(update.visitKey(), update.durationSeconds());
+        }
+        String placeholders = String.join(", ", Collections.nCopies(byKey.size(), "?"));
+        try {
+            List<PlatformVisit> found = jdbcTemplate.query(SELECT_DURATIONS + "(" + placeholders + ")", (rs, rowNum) -> {
+                PlatformVisit visit = new PlatformVisit();
+                visit.setVisitKey(rs.getString(1));
+                visit.setVisitDate(rs.getDate(2).toLocalDate());
+                visit.setIpAddress(rs.getString(3));
+                visit.setSessionId(rs.getString(4));
+                visit.setPageUrl(rs.getString(5));
+                visit.setDurationSeconds(rs.getObject(6) != null ? rs.getLong(6) : null);
+                return visit;
+            }, byKey.keySet().toArray());
+            List<Object[]> args = new ArrayList<>(found.size());
+            for (PlatformVisit visit : found) {
+                args.add(new Object[]{byKey.get(visit.getVisitKey()), visit.getVisitKey()});
+            }
+            if (!args.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_DURATION, args);
+            }
+            durations.add(found.size());
+            durationsMissed.add(byKey.size() - found.size());
+            for (PlatformVisit visit : found) {
+                Long previousDuration = visit.getDurationSeconds();
+                visit.setDurationSeconds(byKey.get(visit.getVisitKey()));
+                publish(PlatformVisitEvent.durationUpdated(visit, previousDuration));
+            }
+        } catch (DataAccessException e) {
+            failed.add(byKey.size());
+            log.warn("Échec de la mise à jour de {} durées de visite: {}", byKey.size(), e.getMessage());
+        }
+    }
+
+    // Les écouteurs (statistiques, sketches, pages les plus vues) tournent sur ce thread: une erreur de l'un
+    // d'eux est comptée et journalisée, la visite reste écrite
+    private void publish(PlatformVisitEvent event) {
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (RuntimeException e) {
+            failed.increment();
+            log.error("Échec d'un écouteur de visite ({})", event.getType(), e);
+        }
+    }
+
+    private static String insertSql(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO platform_visits ").append(COLUMNS).append(" VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? ROW : ", " + ROW);
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,258 @@
+package esprit.user.service;
+
+import esprit.user.config.JwtPrincipal;
+import esprit.user.dto.AnnonceDto.AnnonceSearchDto;
+import esprit.user.entity.SubscriptionType;
+import esprit.user.entity.User;
+import esprit.user.entity.UserType;
+import esprit.user.repository.ClientAbonneRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Quota quotidien de recherches des clients abonnés, compté en mémoire par utilisateur: une fenêtre par jour
+// calendaire, comme last_search_reset. La ligne n'est lue qu'au premier passage du jour; les recherches
+// consommées partent en base par lots d'UPDATE relatifs, pour que getTotalSearchesToday reste juste.
+// Avec plusieurs instances, chacune part du compte en base au chargement: le dépassement reste borné
+// par les recherches d'un intervalle d'écriture.
+// Une recherche est comptée une fois par jeu de filtres distinct (queryKey): les pages suivantes, en offset
+// comme en curseur, ne coûtent rien, mais changer un filtre coûte une recherche quelle que soit la page.
+@Component
+@Slf4j
+public class SearchQuotaLimiter {
+
+    // L'ancienne valeur de last_search_reset décide du cumul: current_searches_today est affecté en premier
+    private static final String FLUSH_SQL =
+        "UPDATE users SET current_searches_today = CASE WHEN last_search_reset = ? "
+            + "THEN COALESCE(current_searches_today, 0) + ? ELSE ? END, last_search_reset = ? "
+            + "WHERE id = ? AND (last_search_reset IS NULL OR last_search_reset <= ?)";
+
+    // Au-delà, un jeu de filtres déjà payé est recompté (plafonds élevés d'ENTERPRISE)
+    private static final int MAX_REMEMBERED_QUERIES = 1000;
+    private static final char SEPARATOR = '\u0000';
+
+    private static final class Quota {
+        private final Long userId;
+        private final LocalDate day;
+        private volatile int limit;
+        private final AtomicInteger used;
+        private final AtomicInteger unflushed = new AtomicInteger();
+        // Jeux de filtres déjà payés aujourd'hui
+        private final Set<String> queries = ConcurrentHashMap.newKeySet();
+
+        private Quota(Long userId, LocalDate day, int limit, int used) {
+            this.userId = userId;
+            this.day = day;
+            this.limit = limit;
+            this.used = new AtomicInteger(used);
+        }
+    }
+
+    private final ClientAbonneRepository clientAbonneRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+
+    private final ConcurrentHashMap<Long, Quota> quotas = new ConcurrentHashMap<>();
+    // Quotas d'un jour passé remplacés avant l'écriture de leurs dernières recherches
+    private final ConcurrentLinkedQueue<Quota> retired = new ConcurrentLinkedQueue<>();
+
+    public SearchQuotaLimiter(ClientAbonneRepository clientAbonneRepository, JdbcTemplate jdbcTemplate,
+                              @Value("${app.search.quota.enabled:true}") boolean enabled) {
+        this.clientAbonneRepository = clientAbonneRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+    }
+
+    // false si le quota du jour est épuisé et que ces filtres n'ont pas déjà été payés aujourd'hui.
+    // Seuls les clients abonnés sont limités
+    public boolean tryAcquire(Authentication authentication, AnnonceSearchDto search) {
+        if (!enabled || authentication == null) {
+            return true;
+        }
+        Long userId;
+        UserType userType;
+        if (authentication.getPrincipal() instanceof JwtPrincipal principal) {
+            userId = principal.getId();
+            userType = principal.getUserType();
+        } else if (authentication.getPrincipal() instanceof User user) {
+            userId = user.getId();
+            userType = user.getUserType();
+        } else {
+            return true;
+        }
+        if (userType != UserType.CLIENT_ABONNE) {
+            return true;
+        }
+        Quota quota = quotaOf(userId);
+        if (quota == null) {
+            return true;
+        }
+        String key = queryKey(search);
+        if (quota.queries.contains(key)) {
+            return true;
+        }
+        // Payée avant d'être retenue: deux premières pages simultanées coûtent au pire deux recherches
+        while (true) {
+            int used = quota.used.get();
+            if (used >= quota.limit) {
+                return false;
+            }
+            if (quota.used.compareAndSet(used, used + 1)) {
+                quota.unflushed.incrementAndGet();
+                if (quota.queries.size() < MAX_REMEMBERED_QUERIES) {
+                    quota.queries.add(key);
+                }
+                return true;
+            }
+        }
+    }
+
+    // Filtres normalisés, sans page, taille ni tri: ils identifient la recherche, pas sa présentation
+    static String queryKey(AnnonceSearchDto search) {
+        StringBuilder key = new StringBuilder();
+        append(key, search.getTitre() != null ? TextNormalizer.fold(search.getTitre()).trim() : null);
+        append(key, search.getMotsCles() != null ? TextNormalizer.fold(search.getMotsCles()).trim() : null);
+        append(key, search.getVille() != null ? TextNormalizer.villeKey(search.getVille()) : null);
+        append(key, search.getTypeBien());
+        append(key, search.getTypeTransaction());
+        append(key, search.getPrixMin() != null ? search.getPrixMin().stripTrailingZeros().toPlainString() : null);
+        append(key, search.getPrixMax() != null ? search.getPrixMax().stripTrailingZeros().toPlainString() : null);
+        append(key, search.getSurfaceMin());
+        append(key, search.getSurfaceMax());
+        append(key, search.getNombreChambresMin());
+        append(key, search.getNombreSallesBainMin());
+        append(key, search.getGarage());
+        append(key, search.getJardin());
+        append(key, search.getPiscine());
+        append(key, search.getClimatisation());
+        append(key, search.getAscenseur());
+        append(key, search.getStatus());
+        return key.toString();
+    }
+
+    private static void append(StringBuilder key, Object value) {
+        // Un texte vide filtre autant qu'un texte absent
+        if (value != null && !(value instanceof String text && text.isEmpty())) {
+            key.append(value);
+        }
+        key.append(SEPARATOR);
+    }
+
+    // Recherches du jour, y compris celles pas encore écrites en base
+    public int searchesToday(Long userId, Integer persisted, LocalDate lastReset) {
+        LocalDate today = LocalDate.now();
+        Quota quota = quotas.get(userId);
+        if (quota != null && quota.day.equals(today)) {
+            return quota.used.get();
+        }
+        return today.equals(lastReset) && persisted != null ? persisted : 0;
+    }
+
+    // Changement d'abonnement: le nouveau plafond s'applique tout de suite, les recherches du jour restent comptées
+    public void updateLimit(Long userId, SubscriptionType subscriptionType) {
+        Quota quota = quotas.get(userId);
+        if (quota != null && subscriptionType != null) {
+            quota.limit = subscriptionType.getMaxSearchesPerDay();
+        }
+    }
+
+    public long secondsUntilReset() {
+        LocalDateTime now = LocalDateTime.now();
+        return Math.max(1L, Duration.between(now, now.toLocalDate().plusDays(1).atStartOfDay()).getSeconds());
+    }
+
+    @Scheduled(fixedDelayString = "${app.search.quota.flush-interval-ms:5000}")
+    public void flush() {
+        LocalDate today = LocalDate.now();
+        List<Object[]> batch = new ArrayList<>();
+        for (Quota quota = retired.poll(); quota != null; quota = retired.poll()) {
+            addToBatch(batch, quota);
+        }
+        for (Map.Entry<Long, Quota> entry : quotas.entrySet()) {
+            Quota quota = entry.getValue();
+            // Un quota d'un jour passé est retiré avant d'être vidé: une recherche qui le tiendrait encore
+            // compterait au plus pour une journée déjà terminée
+            if (quota.day.isBefore(today)) {
+                quotas.remove(entry.getKey(), quota);
+            }
+            addToBatch(batch, quota);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(FLUSH_SQL, batch);
+            log.debug("Quotas de recherche: {} clients mis à jour", batch.size());
+        } catch (DataAccessException e) {
+            // Les recherches repartiront au prochain passage; le compte en mémoire, lui, n'a pas bougé
+            log.warn("Échec de l'écriture des quotas de recherche ({} clients): {}", batch.size(), e.getMessage());
+            for (Object[] row : batch) {
+                Long userId = (Long) row[4];
+                Quota quota = quotas.get(userId);
+                if (quota != null && quota.day.equals(((java.sql.Date) row[0]).toLocalDate())) {
+                    quota.unflushed.addAndGet((Integer) row[1]);
+                } else {
+                    Quota remainder = new Quota(userId, ((java.sql.Date) row[0]).toLocalDate(), 0, 0);
+                    remainder.unflushed.set((Integer) row[1]);
+                    retired.add(remainder);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        log.info("Écriture des quotas de recherche en attente avant l'arrêt");
+        flush();
+    }
+
+    private void addToBatch(List<Object[]> batch, Quota quota) {
+        int delta = quota.unflushed.getAndSet(0);
+        if (delta > 0) {
+            java.sql.Date day = java.sql.Date.valueOf(quota.day);
+            batch.add(new Object[] {day, delta, delta, day, quota.userId, day});
+        }
+    }
+
+    // Première recherche du jour: plafond et consommation relus en base (une autre instance a pu compter)
+    private Quota quotaOf(Long userId) {
+        LocalDate today = LocalDate.now();
+        Quota quota = quotas.get(userId);
+        if (quota != null && quota.day.equals(today)) {
+            return quota;
+        }
+        List<Object[]> rows = clientAbonneRepository.findSearchQuotaById(userId);
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object[] row = rows.get(0);
+        SubscriptionType subscriptionType = (SubscriptionType) row[0];
+        int limit = subscriptionType != null ? subscriptionType.getMaxSearchesPerDay()
+            : row[1] != null ? (Integer) row[1] : SubscriptionType.BASIC.getMaxSearchesPerDay();
+        int used = today.equals(row[3]) && row[2] != null ? (Integer) row[2] : 0;
+        Quota loaded = new Quota(userId, today, limit, used);
+        return quotas.merge(userId, loaded, (current, fresh) -> {
+            if (current.day.equals(today)) {
+                return current;
+            }
+            retired.add(current);
+            return fresh;
+        });
+    }
+}
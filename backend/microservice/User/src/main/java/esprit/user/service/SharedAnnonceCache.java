@@ -0,0 +1,20 @@
+package esprit.user.service;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+// Cache L2 partagé entre les instances du service User (Redis, Hazelcast...).
+// Les valeurs doivent être traitées comme des copies: un cache distant sérialise.
+public interface SharedAnnonceCache {
+
+    Optional<Object> get(String key);
+
+    void put(String key, Object value, Duration ttl);
+
+    // Supprime les clés de l'annonce et prévient toutes les instances abonnées
+    void evict(Long annonceId, String... keys);
+
+    // Invalidations reçues des autres instances, pour vider leur L1
+    void subscribe(Consumer<Long> evictionListener);
+}
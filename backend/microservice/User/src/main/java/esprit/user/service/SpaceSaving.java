@@ -0,0 +1,161 @@
+package esprit.user.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Éléments les plus fréquents d'un flux (Space-Saving, Metwally et al.) avec capacity compteurs.
+// Un élément nouveau remplace le plus petit compteur et hérite de son compte comme erreur:
+// count - error <= vrai compte <= count, et l'erreur ne dépasse jamais total / capacity.
+// Les compteurs forment un tas min indexé: ajout en O(log capacity), top-k en O(capacity).
+// Pas thread-safe: l'appelant synchronise.
+public final class SpaceSaving {
+
+    private static final class Counter {
+        private String item;
+        private long count;
+        private long error;
+        private int position;
+
+        private Counter(String item, long count, long error) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacité invalide: " + capacity);
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    public void add(String item) {
+        add(item, 1L);
+    }
+
+    public void add(String item, long weight) {
+        if (item == null || weight <= 0) {
+            return;
+        }
+        total += weight;
+        Counter counter = counters.get(item);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.position);
+            return;
+        }
+        if (size < capacity) {
+            insert(item, weight, 0L);
+            return;
+        }
+        Counter smallest = heap[0];
+        counters.remove(smallest.item);
+        smallest.item = item;
+        smallest.error = smallest.count;
+        smallest.count += weight;
+        counters.put(item, smallest);
+        siftDown(0);
+    }
+
+    // Top de l'union de plusieurs résumés en une passe (fusion d'Agarwal et al.: un élément absent d'un résumé
+    // plein y a au plus minCount occurrences), sans reconstruire un résumé intermédiaire par jour
+    public static Map<String, Long> top(Collection<SpaceSaving> summaries, int limit) {
+        long minSum = 0L;
+        Map<String, long[]> combined = new HashMap<>();
+        for (SpaceSaving summary : summaries) {
+            long min = summary.minCount();
+            minSum += min;
+            for (Counter counter : summary.counters.values()) {
+                combined.computeIfAbsent(counter.item, item -> new long[1])[0] += counter.count - min;
+            }
+        }
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(combined.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (int i = 0; i < entries.size() && i < limit; i++) {
+            top.put(entries.get(i).getKey(), entries.get(i).getValue()[0] + minSum);
+        }
+        return top;
+    }
+
+    // Les limit éléments de plus grand compte, décroissants
+    public Map<String, Long> top(int limit) {
+        List<Counter> sorted = new ArrayList<>(counters.values());
+        sorted.sort((a, b) -> Long.compare(b.count, a.count));
+        Map<String, Long> top = new LinkedHashMap<>();
+        for (int i = 0; i < sorted.size() && i < limit; i++) {
+            top.put(sorted.get(i).item, sorted.get(i).count);
+        }
+        return top;
+    }
+
+    public long error(String item) {
+        Counter counter = counters.get(item);
+        return counter != null ? counter.error : minCount();
+    }
+
+    // 0 tant que le résumé n'est pas plein: tous les éléments vus sont alors comptés exactement
+    public long minCount() {
+        return size < capacity ? 0L : heap[0].count;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    private void insert(String item, long count, long error) {
+        Counter counter = new Counter(item, count, error);
+        counter.position = size;
+        heap[size++] = counter;
+        counters.put(item, counter);
+        siftUp(counter.position);
+    }
+
+    private void siftUp(int position) {
+        Counter counter = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(counter, position);
+    }
+
+    private void siftDown(int position) {
+        Counter counter = heap[position];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(counter, position);
+    }
+
+    private void place(Counter counter, int position) {
+        heap[position] = counter;
+        counter.position = position;
+    }
+}
@@ -0,0 +1,332 @@
+package esprit.user.service;
+
+import esprit.user.dto.StatisticsDto;
+import esprit.user.entity.UserStatus;
+import esprit.user.entity.UserType;
+import esprit.user.event.AnnonceEvent;
+import esprit.user.event.PlatformVisitEvent;
+import esprit.user.event.UserEvent;
+import esprit.user.repository.AgenceImmobiliereRepository;
+import esprit.user.repository.AnnonceRepository;
+import esprit.user.repository.PlatformVisitRepository;
+import esprit.user.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Agrégats du tableau de bord admin tenus en mémoire: utilisateurs par type et statut, agences,
+// annonces des agences vérifiées, visites par jour (30 jours) et durées du jour; les visiteurs uniques
+// viennent des esquisses HyperLogLog de VisitSketchStore, les pages les plus visitées des résumés de TopPagesTracker.
+// Chargés par quelques GROUP BY au démarrage, mis à jour par les événements, recalés périodiquement.
+// Le verrou ne couvre que les compteurs: l'instantané est construit hors verrou, depuis leur copie, car
+// esquisses et pages peuvent encore retomber sur des requêtes.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StatisticsRollup {
+
+    private static final int VISIT_DAYS = 30;
+    private static final int PAGE_DAYS = 7;
+    private static final int TOP_PAGES = 10;
+
+    private final UserRepository userRepository;
+    private final AgenceImmobiliereRepository agenceImmobiliereRepository;
+    private final AnnonceRepository annonceRepository;
+    private final PlatformVisitRepository platformVisitRepository;
+    private final VisitSketchStore visitSketchStore;
+    private final PlatformVisitHistory platformVisitHistory;
+    private final TopPagesTracker topPagesTracker;
+
+    @Value("${app.statistics.rollup.enabled:true}")
+    private boolean enabled;
+
+    // Sous forte ingestion de visites, l'instantané est réutilisé au plus pendant ce délai
+    @Value("${app.statistics.rollup.snapshot-max-age-ms:1000}")
+    private long snapshotMaxAgeMs;
+
+    private final long[][] users = new long[UserType.values().length][UserStatus.values().length];
+    private long verifiedAgencies;
+    private long unverifiedAgencies;
+    private long annoncesPubliees;
+    private final Set<Long> verifiedAgencyIds = new HashSet<>();
+    private final TreeMap<LocalDate, Long> dailyVisits = new TreeMap<>();
+    private LocalDate today;
+    private long durationSumToday;
+    private long durationCountToday;
+
+    private long version;
+    private StatisticsDto snapshot;
+    private long snapshotVersion;
+    private long snapshotAt;
+    private LocalDate snapshotDay;
+    private volatile boolean ready;
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            log.info("Agrégats de statistiques désactivés");
+            return;
+        }
+        reload();
+    }
+
+    // Recale les compteurs: écritures faites par d'autres instances ou hors service
+    @Scheduled(initialDelayString = "${app.statistics.rollup.reconcile-interval-ms:3600000}",
+               fixedDelayString = "${app.statistics.rollup.reconcile-interval-ms:3600000}")
+    public void reload() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            synchronized (this) {
+                loadLocked(LocalDate.now());
+            }
+        } catch (DataAccessException e) {
+            // StatisticsService garde ses requêtes tant que les agrégats ne sont pas chargés
+            log.warn("Impossible de charger les agrégats de statistiques: {}", e.getMessage());
+            return;
+        }
+        ready = true;
+        log.info("Agrégats de statistiques chargés en {} ms", System.currentTimeMillis() - start);
+    }
+
+    private void loadLocked(LocalDate date) {
+        for (long[] byStatus : users) {
+            Arrays.fill(byStatus, 0L);
+        }
+        for (Object[] row : userRepository.countByUserTypeAndStatus()) {
+            if (row[0] != null && row[1] != null) {
+                users[((UserType) row[0]).ordinal()][((UserStatus) row[1]).ordinal()] = (Long) row[2];
+            }
+        }
+        verifiedAgencies = 0L;
+        unverifiedAgencies = 0L;
+        for (Object[] row : agenceImmobiliereRepository.countByVerified()) {
+            if (Boolean.TRUE.equals(row[0])) {
+                verifiedAgencies = (Long) row[1];
+            } else {
+                unverifiedAgencies = (Long) row[1];
+            }
+        }
+        verifiedAgencyIds.clear();
+        verifiedAgencyIds.addAll(agenceImmobiliereRepository.findVerifiedIds());
+        annoncesPubliees = annonceRepository.countPublishedByVerifiedAgencies();
+
+        dailyVisits.clear();
+        dailyVisits.putAll(platformVisitHistory.dailyVisits(date.minusDays(VISIT_DAYS - 1), date));
+        today = date;
+        durationSumToday = 0L;
+        durationCountToday = 0L;
+        for (Object[] row : platformVisitRepository.sumAndCountDurationsByDate(date)) {
+            durationSumToday = row[0] != null ? ((Number) row[0]).longValue() : 0L;
+            durationCountToday = (Long) row[1];
+        }
+        version++;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserEvent(UserEvent event) {
+        if (!isReady() || event.getUserType() == null) {
+            return;
+        }
+        // Annonces déjà publiées par l'agence qui vient d'être vérifiée: comptées hors verrou
+        long annoncesAgence = 0L;
+        if (event.getType() == UserEvent.Type.AGENCY_VERIFIED) {
+            try {
+                annoncesAgence = annonceRepository.countByCreateurId(event.getUserId());
+            } catch (DataAccessException e) {
+                log.warn("Annonces de l'agence {} non comptées avant le prochain recalage: {}", event.getUserId(), e.getMessage());
+            }
+        }
+        synchronized (this) {
+            applyUserEvent(event, annoncesAgence);
+        }
+    }
+
+    private void applyUserEvent(UserEvent event, long annoncesAgence) {
+        long[] byStatus = users[event.getUserType().ordinal()];
+        switch (event.getType()) {
+            case REGISTERED -> {
+                byStatus[event.getStatus().ordinal()]++;
+                if (event.getUserType() == UserType.AGENCE_IMMOBILIERE) {
+                    unverifiedAgencies++;
+                }
+            }
+            case STATUS_CHANGED -> {
+                byStatus[event.getPreviousStatus().ordinal()]--;
+                byStatus[event.getStatus().ordinal()]++;
+            }
+            // Seules les annonces des agences vérifiées sont comptées
+            case AGENCY_VERIFIED -> {
+                unverifiedAgencies--;
+                verifiedAgencies++;
+                if (verifiedAgencyIds.add(event.getUserId())) {
+                    annoncesPubliees += annoncesAgence;
+                }
+            }
+        }
+        version++;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onAnnonceEvent(AnnonceEvent event) {
+        if (!isReady() || event.getCreateurId() == null || !verifiedAgencyIds.contains(event.getCreateurId())) {
+            return;
+        }
+        switch (event.getType()) {
+            case CREATED -> annoncesPubliees++;
+            case DELETED -> annoncesPubliees = Math.max(0L, annoncesPubliees - 1);
+            default -> {
+                return;
+            }
+        }
+        version++;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onVisitEvent(PlatformVisitEvent event) {
+        if (!isReady() || event.getVisitDate() == null) {
+            return;
+        }
+        roll(LocalDate.now());
+        LocalDate date = event.getVisitDate();
+        boolean isToday = date.equals(today);
+        if (event.getType() == PlatformVisitEvent.Type.RECORDED) {
+            if (!date.isBefore(today.minusDays(VISIT_DAYS - 1))) {
+                dailyVisits.merge(date, 1L, Long::sum);
+            }
+        }
+        if (isToday && event.getDuration() != null) {
+            durationSumToday += event.getDuration() - (event.getPreviousDuration() != null ? event.getPreviousDuration() : 0L);
+            if (event.getPreviousDuration() == null) {
+                durationCountToday++;
+            }
+        }
+        version++;
+    }
+
+    // Changement de jour: les compteurs "du jour" repartent de zéro, les jours sortis des fenêtres sont oubliés
+    private void roll(LocalDate date) {
+        if (date.equals(today)) {
+            return;
+        }
+        today = date;
+        durationSumToday = 0L;
+        durationCountToday = 0L;
+        dailyVisits.headMap(date.minusDays(VISIT_DAYS - 1)).clear();
+        version++;
+    }
+
+    // Copie des compteurs prise sous le verrou, le temps de construire un instantané
+    private record Counters(long[][] users, long verifiedAgencies, long unverifiedAgencies, long annoncesPubliees,
+                            TreeMap<LocalDate, Long> dailyVisits, LocalDate today, long durationSum, long durationCount,
+                            long version) {
+    }
+
+    // Une copie de l'instantané, reconstruit seulement si les compteurs ont bougé. La construction se fait
+    // hors verrou: les événements de visite (et le thread d'écriture qui les publie) ne l'attendent pas
+    public StatisticsDto snapshot() {
+        Counters counters;
+        synchronized (this) {
+            roll(LocalDate.now());
+            long now = System.currentTimeMillis();
+            if (snapshot != null && (snapshotVersion == version || now - snapshotAt < snapshotMaxAgeMs)
+                    && today.equals(snapshotDay)) {
+                return copyOf(snapshot);
+            }
+            long[][] usersCopy = new long[users.length][];
+            for (int i = 0; i < users.length; i++) {
+                usersCopy[i] = users[i].clone();
+            }
+            counters = new Counters(usersCopy, verifiedAgencies, unverifiedAgencies, annoncesPubliees,
+                new TreeMap<>(dailyVisits), today, durationSumToday, durationCountToday, version);
+        }
+        StatisticsDto built = build(counters);
+        synchronized (this) {
+            // Deux constructions concurrentes: la plus récente reste
+            if (snapshot == null || counters.version() >= snapshotVersion || !counters.today().equals(snapshotDay)) {
+                snapshot = built;
+                snapshotVersion = counters.version();
+                snapshotAt = System.currentTimeMillis();
+                snapshotDay = counters.today();
+            }
+        }
+        return copyOf(built);
+    }
+
+    private static StatisticsDto copyOf(StatisticsDto stats) {
+        StatisticsDto copy = new StatisticsDto();
+        BeanUtils.copyProperties(stats, copy);
+        return copy;
+    }
+
+    private StatisticsDto build(Counters counters) {
+        StatisticsDto stats = new StatisticsDto();
+        Map<String, Long> distribution = new HashMap<>();
+        long[] byStatus = new long[UserStatus.values().length];
+        long total = 0L;
+        for (UserType userType : UserType.values()) {
+            long count = 0L;
+            for (UserStatus status : UserStatus.values()) {
+                long n = counters.users()[userType.ordinal()][status.ordinal()];
+                count += n;
+                byStatus[status.ordinal()] += n;
+            }
+            distribution.put(userType.name(), count);
+            total += count;
+        }
+        stats.setTotalUsers(total);
+        stats.setTotalClients(distribution.get(UserType.CLIENT_ABONNE.name()));
+        stats.setTotalAgencies(distribution.get(UserType.AGENCE_IMMOBILIERE.name()));
+        stats.setTotalAdmins(distribution.get(UserType.ADMINISTRATEUR.name()));
+        stats.setUserTypeDistribution(Collections.unmodifiableMap(distribution));
+        stats.setActiveUsers(byStatus[UserStatus.ACTIVE.ordinal()]);
+        stats.setPendingUsers(byStatus[UserStatus.PENDING.ordinal()]);
+        stats.setVerifiedAgencies(counters.verifiedAgencies());
+        stats.setUnverifiedAgencies(counters.unverifiedAgencies());
+        stats.setTotalAnnoncesPublished(counters.annoncesPubliees());
+
+        LocalDate today = counters.today();
+        TreeMap<LocalDate, Long> dailyVisits = counters.dailyVisits();
+        LocalDate weekStart = today.minusDays(PAGE_DAYS - 1);
+        stats.setTotalVisitsToday(dailyVisits.getOrDefault(today, 0L));
+        stats.setTotalVisitsThisWeek(sum(dailyVisits.tailMap(weekStart, true)));
+        stats.setTotalVisitsThisMonth(sum(dailyVisits));
+        stats.setDailyVisits(Collections.unmodifiableMap(new TreeMap<>(dailyVisits.tailMap(weekStart, true))));
+        visitSketchStore.fillUniqueCounts(stats, today);
+        stats.setAverageVisitDuration(counters.durationCount() > 0
+            ? (double) counters.durationSum() / counters.durationCount() : null);
+        stats.setMostVisitedPages(Collections.unmodifiableMap(topPagesTracker.topPages(weekStart, today, TOP_PAGES)
+            .orElseGet(() -> platformVisitHistory.mostVisitedPages(weekStart, today, TOP_PAGES))));
+        return stats;
+    }
+
+    private static long sum(Map<LocalDate, Long> visits) {
+        long total = 0L;
+        for (Long count : visits.values()) {
+            total += count;
+        }
+        return total;
+    }
+}
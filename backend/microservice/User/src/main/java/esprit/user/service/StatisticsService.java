@@ -10,9 +10,7 @@ import org.springframework.stereotype.Service;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -20,9 +18,18 @@ public class StatisticsService {
 
     private final UserRepository userRepository;
     private final AgenceImmobiliereRepository agenceImmobiliereRepository;
+    private final AnnonceRepository annonceRepository;
     private final PlatformVisitRepository platformVisitRepository;
+    private final StatisticsRollup statisticsRollup;
+    private final VisitSketchStore visitSketchStore;
+    private final PlatformVisitHistory platformVisitHistory;
+    private final TopPagesTracker topPagesTracker;
 
+    // Instantané des agrégats en mémoire; les requêtes ci-dessous ne servent que tant qu'ils ne sont pas chargés
     public StatisticsDto getStatistics() {
+        if (statisticsRollup.isReady()) {
+            return statisticsRollup.snapshot();
+        }
         StatisticsDto stats = new StatisticsDto();
 
         stats.setTotalUsers(userRepository.count());
@@ -41,29 +48,23 @@ public class StatisticsService {
         LocalDate monthStart = today.minus(29, ChronoUnit.DAYS);
 
         stats.setTotalVisitsToday(platformVisitRepository.countVisitsByDate(today));
-        stats.setTotalVisitsThisWeek(platformVisitRepository.countVisitsBetween(weekStart, today));
-        stats.setTotalVisitsThisMonth(platformVisitRepository.countVisitsBetween(monthStart, today));
+        stats.setTotalVisitsThisWeek(platformVisitHistory.countVisits(weekStart, today));
+        stats.setTotalVisitsThisMonth(platformVisitHistory.countVisits(monthStart, today));
 
-        stats.setUniqueVisitorsToday(platformVisitRepository.countUniqueVisitorsByDate(today));
+        visitSketchStore.fillUniqueCounts(stats, today);
         stats.setAverageVisitDuration(platformVisitRepository.getAverageVisitDurationByDate(today));
 
         stats.setDailyVisits(getDailyVisitsMap(weekStart, today));
         stats.setUserTypeDistribution(getUserTypeDistribution());
         stats.setMostVisitedPages(getMostVisitedPages(weekStart, today));
 
-        Long totalAnnonces = agenceImmobiliereRepository.getTotalActiveAnnonces();
-        stats.setTotalAnnoncesPublished(totalAnnonces != null ? totalAnnonces : 0L);
+        stats.setTotalAnnoncesPublished(annonceRepository.countPublishedByVerifiedAgencies());
 
         return stats;
     }
 
     private Map<LocalDate, Long> getDailyVisitsMap(LocalDate startDate, LocalDate endDate) {
-        List<Object[]> dailyVisits = platformVisitRepository.getVisitStatsByDateRange(startDate, endDate);
-        return dailyVisits.stream()
-            .collect(Collectors.toMap(
-                row -> (LocalDate) row[0],
-                row -> (Long) row[1]
-            ));
+        return new HashMap<>(platformVisitHistory.dailyVisits(startDate, endDate));
     }
 
     private Map<String, Long> getUserTypeDistribution() {
@@ -76,23 +77,27 @@ public class StatisticsService {
     }
 
     private Map<String, Long> getMostVisitedPages(LocalDate startDate, LocalDate endDate) {
-        List<Object[]> pageVisits = platformVisitRepository.getMostVisitedPages(startDate, endDate);
-        return pageVisits.stream()
-            .limit(10)
-            .collect(Collectors.toMap(
-                row -> (String) row[0],
-                row -> (Long) row[1],
-                (existing, replacement) -> existing,
-                HashMap::new
-            ));
+        return topPagesTracker.topPages(startDate, endDate, 10)
+            .orElseGet(() -> platformVisitHistory.mostVisitedPages(startDate, endDate, 10));
     }
 
     public StatisticsDto getWeeklyStatistics() {
+        if (statisticsRollup.isReady()) {
+            StatisticsDto snapshot = statisticsRollup.snapshot();
+            StatisticsDto stats = new StatisticsDto();
+            stats.setTotalVisitsThisWeek(snapshot.getTotalVisitsThisWeek());
+            stats.setUniqueVisitorsThisWeek(snapshot.getUniqueVisitorsThisWeek());
+            stats.setDailyVisits(snapshot.getDailyVisits());
+            return stats;
+        }
         LocalDate today = LocalDate.now();
         LocalDate weekStart = today.minus(6, ChronoUnit.DAYS);
         
         StatisticsDto stats = new StatisticsDto();
-        stats.setTotalVisitsThisWeek(platformVisitRepository.countVisitsBetween(weekStart, today));
+        stats.setTotalVisitsThisWeek(platformVisitHistory.countVisits(weekStart, today));
+        stats.setUniqueVisitorsThisWeek(visitSketchStore.isReady()
+            ? visitSketchStore.uniqueVisitors(weekStart, today)
+            : platformVisitRepository.countUniqueVisitorsBetween(weekStart, today));
         stats.setDailyVisits(getDailyVisitsMap(weekStart, today));
         
         return stats;
@@ -100,8 +105,14 @@ public class StatisticsService {
 
     public Map<String, Long> getAnnonceStatistics() {
         Map<String, Long> stats = new HashMap<>();
-        Long totalAnnonces = agenceImmobiliereRepository.getTotalActiveAnnonces();
-        stats.put("total_annonces", totalAnnonces != null ? totalAnnonces : 0L);
+        if (statisticsRollup.isReady()) {
+            StatisticsDto snapshot = statisticsRollup.snapshot();
+            stats.put("total_annonces", snapshot.getTotalAnnoncesPublished());
+            stats.put("verified_agencies", snapshot.getVerifiedAgencies());
+            stats.put("unverified_agencies", snapshot.getUnverifiedAgencies());
+            return stats;
+        }
+        stats.put("total_annonces", annonceRepository.countPublishedByVerifiedAgencies());
         stats.put("verified_agencies", agenceImmobiliereRepository.countVerifiedAgencies());
         stats.put("unverified_agencies", agenceImmobiliereRepository.countUnverifiedAgencies());
         
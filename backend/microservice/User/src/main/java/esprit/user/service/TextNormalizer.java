@@ -0,0 +1,47 @@
+package esprit.user.service;
+
+import java.text.Normalizer;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+// Découpage et repli des accents pour l'index de recherche ("Échangé" -> "echange")
+public final class TextNormalizer {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9]+");
+
+    private static final Set<String> STOP_WORDS = Set.of(
+        "le", "la", "les", "de", "des", "du", "un", "une", "et", "ou", "au", "aux",
+        "en", "pour", "avec", "sur", "dans", "par", "a", "d", "l", "s"
+    );
+
+    private TextNormalizer() {
+    }
+
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        String lower = text.toLowerCase(Locale.FRENCH)
+            .replace("œ", "oe")
+            .replace("æ", "ae");
+        return DIACRITICS.matcher(Normalizer.normalize(lower, Normalizer.Form.NFD)).replaceAll("");
+    }
+
+    // Forme comparée d'un nom de ville, en base (ville_normalisee) comme dans l'index: "  Gabès" -> "gabes"
+    public static String villeKey(String ville) {
+        return fold(ville.trim());
+    }
+
+    public static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String token : SEPARATORS.split(fold(text))) {
+            if (!token.isEmpty() && !STOP_WORDS.contains(token)) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,99 @@
+package esprit.user.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import esprit.user.entity.UserStatus;
+import esprit.user.event.UserEvent;
+import esprit.user.repository.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+
+// Révocations pour la validation JWT sans état: id utilisateur -> instant (secondes) avant lequel ses tokens sont refusés.
+// Une entrée n'a plus d'effet une fois expirés les tokens émis avant elle: elle vit la durée d'un token.
+// Les suspensions faites ailleurs (autre instance, base) sont relues périodiquement parmi les comptes récemment connectés.
+@Component
+@Slf4j
+public class TokenRevocationCache {
+
+    private static final List<UserStatus> BLOCKED = List.of(UserStatus.SUSPENDED, UserStatus.DELETED);
+
+    private final UserRepository userRepository;
+    private final boolean enabled;
+    private final long tokenLifetimeMs;
+    private final Cache<Long, Long> revokedAt;
+    private volatile boolean ready;
+
+    public TokenRevocationCache(UserRepository userRepository,
+                                @Value("${app.jwt.stateless-validation.enabled:true}") boolean enabled,
+                                @Value("${app.jwt.expiration:86400000}") long tokenLifetimeMs,
+                                @Value("${app.jwt.revocation.max-size:100000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.tokenLifetimeMs = tokenLifetimeMs;
+        this.revokedAt = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofMillis(tokenLifetimeMs))
+            .build();
+    }
+
+    // Tant que les révocations ne sont pas chargées, le filtre relit l'utilisateur à chaque requête
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    // iat est à la seconde: un token émis dans la seconde de la révocation reste accepté
+    public boolean isRevoked(Long userId, Date issuedAt) {
+        Long since = revokedAt.getIfPresent(userId);
+        return since != null && (issuedAt == null || issuedAt.getTime() / 1000 < since);
+    }
+
+    public void revoke(Long userId) {
+        revokedAt.put(userId, System.currentTimeMillis() / 1000);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserEvent(UserEvent event) {
+        if (event.getType() == UserEvent.Type.STATUS_CHANGED && BLOCKED.contains(event.getStatus())) {
+            revoke(event.getUserId());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            log.info("Validation JWT sans état désactivée");
+            return;
+        }
+        refresh();
+    }
+
+    // Seul un compte connecté depuis moins d'une durée de token peut en détenir un encore valide
+    @Scheduled(fixedDelayString = "${app.jwt.revocation.refresh-interval-ms:30000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        try {
+            List<Long> ids = userRepository.findIdsByStatusInAndLastLoginSince(BLOCKED,
+                LocalDateTime.now().minus(Duration.ofMillis(tokenLifetimeMs)));
+            for (Long id : ids) {
+                revokedAt.asMap().putIfAbsent(id, now);
+            }
+            ready = true;
+        } catch (DataAccessException e) {
+            log.warn("Impossible de relire les comptes bloqués: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package esprit.user.service;
+
+import esprit.user.event.PlatformVisitEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+// Pages les plus visitées: un résumé Space-Saving par jour sur window-days jours, alimenté par les visites écrites.
+// Le top d'une plage fusionne les résumés des jours concernés, sans GROUP BY sur platform_visits.
+// Tant qu'une journée a moins de capacity pages distinctes, ses comptes sont exacts.
+@Component
+@Slf4j
+public class TopPagesTracker {
+
+    private final PlatformVisitHistory platformVisitHistory;
+    private final boolean enabled;
+    private final int windowDays;
+    private final int capacity;
+
+    private final TreeMap<LocalDate, SpaceSaving> days = new TreeMap<>();
+    // Visites reçues pendant le chargement, rejouées sur les résumés chargés; null hors chargement
+    private List<PlatformVisitEvent> pendingDuringLoad;
+    private volatile boolean ready;
+
+    public TopPagesTracker(PlatformVisitHistory platformVisitHistory,
+                           @Value("${app.visits.top-pages.enabled:true}") boolean enabled,
+                           @Value("${app.visits.top-pages.window-days:30}") int windowDays,
+                           @Value("${app.visits.top-pages.capacity:256}") int capacity) {
+        this.platformVisitHistory = platformVisitHistory;
+        this.enabled = enabled;
+        this.windowDays = windowDays;
+        this.capacity = capacity;
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    // Un GROUP BY (date, page) sur la fenêtre, une seule fois au démarrage, hors verrou. Les visites écrites
+    // pendant la requête sont mises de côté puis rejouées: aucune n'est perdue, seules celles validées
+    // à l'instant où la requête démarre peuvent compter deux fois
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            log.info("Suivi des pages les plus visitées désactivé");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        synchronized (this) {
+            pendingDuringLoad = new ArrayList<>();
+        }
+        List<Object[]> rows;
+        try {
+            rows = new ArrayList<>(platformVisitHistory.pagesByDay(today.minusDays(windowDays - 1), today));
+        } catch (DataAccessException e) {
+            // StatisticsService garde le GROUP BY tant que les résumés ne sont pas chargés
+            synchronized (this) {
+                pendingDuringLoad = null;
+            }
+            log.warn("Impossible de charger les pages les plus visitées: {}", e.getMessage());
+            return;
+        }
+        // Les pages les plus visitées d'abord: ce sont elles que le résumé garde si la journée déborde
+        rows.sort((a, b) -> Long.compare(((Number) b[2]).longValue(), ((Number) a[2]).longValue()));
+        int replayed;
+        synchronized (this) {
+            days.clear();
+            for (Object[] row : rows) {
+                days.computeIfAbsent((LocalDate) row[0], d -> new SpaceSaving(capacity))
+                    .add((String) row[1], ((Number) row[2]).longValue());
+            }
+            replayed = pendingDuringLoad.size();
+            pendingDuringLoad.forEach(this::record);
+            pendingDuringLoad = null;
+            ready = true;
+        }
+        log.info("Pages les plus visitées chargées en {} ms ({} jours, {} visites rejouées)",
+            System.currentTimeMillis() - start, days.size(), replayed);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onVisitEvent(PlatformVisitEvent event) {
+        if (!enabled || event.getType() != PlatformVisitEvent.Type.RECORDED
+                || event.getPageUrl() == null || event.getVisitDate() == null) {
+            return;
+        }
+        if (pendingDuringLoad != null) {
+            pendingDuringLoad.add(event);
+        } else if (ready) {
+            record(event);
+        }
+    }
+
+    private void record(PlatformVisitEvent event) {
+        LocalDate windowStart = LocalDate.now().minusDays(windowDays - 1);
+        if (event.getVisitDate().isBefore(windowStart)) {
+            return;
+        }
+        days.computeIfAbsent(event.getVisitDate(), d -> new SpaceSaving(capacity)).add(event.getPageUrl());
+        days.headMap(windowStart).clear();
+    }
+
+    // Vide si la plage sort de la fenêtre ou si les résumés ne sont pas chargés: l'appelant interroge la base
+    public Optional<Map<String, Long>> topPages(LocalDate startDate, LocalDate endDate, int limit) {
+        if (!isReady() || startDate.isBefore(LocalDate.now().minusDays(windowDays - 1))) {
+            return Optional.empty();
+        }
+        synchronized (this) {
+            return Optional.of(SpaceSaving.top(days.subMap(startDate, true, endDate, true).values(), limit));
+        }
+    }
+}
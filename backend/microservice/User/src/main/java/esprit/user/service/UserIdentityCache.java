@@ -0,0 +1,186 @@
+package esprit.user.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import esprit.user.entity.User;
+import esprit.user.repository.UserRepository;
+import org.hibernate.Hibernate;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+// Utilisateurs par email et par id pour les lectures (authentification, propriétaire, auteur d'un commentaire).
+// Le cache garde une copie détachée sans la collection paresseuse comments; chaque requête HTTP reçoit sa propre copie,
+// mémorisée pour la durée de la requête. Les écritures passent par UserRepository dans UserService, qui invalide.
+@Component
+public class UserIdentityCache {
+
+    private static final String MEMO = UserIdentityCache.class.getName() + ".memo";
+    private static final int STAMP_STRIPES = 64;
+
+    private final UserRepository userRepository;
+    private final boolean enabled;
+    private final Cache<String, User> byEmail;
+    private final Cache<Long, User> byId;
+    // Compteurs d'invalidation par tranche de clés (email ou id): un chargement commencé avant une invalidation
+    // de sa clé ne laisse pas sa copie en cache
+    private final AtomicLongArray evictionStamps = new AtomicLongArray(STAMP_STRIPES);
+
+    public UserIdentityCache(UserRepository userRepository,
+                             @Value("${app.cache.users.enabled:true}") boolean enabled,
+                             @Value("${app.cache.users.max-size:10000}") long maxSize,
+                             @Value("${app.cache.users.ttl-seconds:120}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        this.enabled = enabled;
+        this.byEmail = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+        this.byId = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+    }
+
+    public Optional<User> findByEmail(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        return memoized(email, () -> {
+            User cached = enabled ? byEmail.getIfPresent(email) : null;
+            if (cached != null) {
+                return cached;
+            }
+            long stamp = stamp(email);
+            return load(email, stamp, userRepository.findByEmail(email).orElse(null));
+        });
+    }
+
+    public Optional<User> findById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        return memoized(id, () -> {
+            User cached = enabled ? byId.getIfPresent(id) : null;
+            if (cached != null) {
+                return cached;
+            }
+            long stamp = stamp(id);
+            return load(id, stamp, userRepository.findById(id).orElse(null));
+        });
+    }
+
+    // Immédiatement, puis après commit: une lecture concurrente ne peut pas remettre en cache l'état d'avant l'écriture
+    public void evict(User user) {
+        evict(user.getId(), user.getEmail());
+    }
+
+    public void evict(Long id, String email) {
+        evictNow(id, email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evictNow(id, email);
+                }
+            });
+        }
+    }
+
+    public void clear() {
+        byEmail.invalidateAll();
+        byId.invalidateAll();
+    }
+
+    private void evictNow(Long id, String email) {
+        if (id != null) {
+            evictionStamps.incrementAndGet(stripe(id));
+            byId.invalidate(id);
+        }
+        if (email != null) {
+            evictionStamps.incrementAndGet(stripe(email));
+            byEmail.invalidate(email);
+        }
+        Map<Object, User> memo = memo();
+        if (memo != null) {
+            memo.values().removeIf(user -> user.getId().equals(id) || user.getEmail().equals(email));
+        }
+    }
+
+    // Mise en cache puis contrôle du compteur de la clé lue: une invalidation survenue depuis la lecture
+    // (l'éviction après commit d'une écriture concurrente) retire la copie qui vient d'être posée
+    private User load(Object key, long stamp, User user) {
+        if (user == null) {
+            return null;
+        }
+        User template = copy(user);
+        if (enabled) {
+            byEmail.put(template.getEmail(), template);
+            byId.put(template.getId(), template);
+            if (stamp(key) != stamp) {
+                byEmail.asMap().remove(template.getEmail(), template);
+                byId.asMap().remove(template.getId(), template);
+            }
+        }
+        return template;
+    }
+
+    private long stamp(Object key) {
+        return evictionStamps.get(stripe(key));
+    }
+
+    private static int stripe(Object key) {
+        return Math.floorMod(key.hashCode(), STAMP_STRIPES);
+    }
+
+    // Une copie par requête: le modèle en cache n'est jamais exposé aux appelants
+    private Optional<User> memoized(Object key, Supplier<User> loader) {
+        Map<Object, User> memo = memo();
+        User user = memo != null ? memo.get(key) : null;
+        if (user == null) {
+            User template = loader.get();
+            if (template == null) {
+                return Optional.empty();
+            }
+            user = copy(template);
+            if (memo != null) {
+                memo.put(user.getEmail(), user);
+                memo.put(user.getId(), user);
+            }
+        }
+        return Optional.of(user);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Object, User> memo() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Map<Object, User> memo = (Map<Object, User>) attributes.getAttribute(MEMO, RequestAttributes.SCOPE_REQUEST);
+        if (memo == null) {
+            memo = new HashMap<>();
+            attributes.setAttribute(MEMO, memo, RequestAttributes.SCOPE_REQUEST);
+        }
+        return memo;
+    }
+
+    // Même sous-classe (agence, client, admin), sans les commentaires: une collection paresseuse détachée ne se charge plus
+    private static User copy(User source) {
+        User unproxied = (User) Hibernate.unproxy(source);
+        User copy = BeanUtils.instantiateClass(unproxied.getClass());
+        BeanUtils.copyProperties(unproxied, copy, "comments");
+        return copy;
+    }
+}
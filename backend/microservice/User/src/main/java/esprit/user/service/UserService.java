@@ -2,14 +2,17 @@ package esprit.user.service;
 
 import esprit.user.dto.*;
 import esprit.user.entity.*;
+import esprit.user.event.UserEvent;
 import esprit.user.repository.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -29,6 +32,10 @@ public class UserService {
     private final AgenceImmobiliereRepository agenceImmobiliereRepository;
     private final PasswordEncoder passwordEncoder;
     private final EmailService emailService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TokenRevocationCache tokenRevocationCache;
+    private final UserIdentityCache userIdentityCache;
+    private final SearchQuotaLimiter searchQuotaLimiter;
     
     @Value("${app.email.verification.enabled:true}")
     private boolean emailVerificationEnabled;
@@ -48,6 +55,7 @@ public class UserService {
             user.setEmailVerified(false);
             
             User savedUser = userRepository.save(user);
+            eventPublisher.publishEvent(UserEvent.registered(savedUser));
             try {
                 emailService.sendVerificationEmail(savedUser);
                 log.info("Email de vérification envoyé à : {}", savedUser.getEmail());
@@ -63,6 +71,7 @@ public class UserService {
             user.setEmailVerified(true);
             
             User savedUser = userRepository.save(user);
+            eventPublisher.publishEvent(UserEvent.registered(savedUser));
             log.info("Utilisateur créé et activé automatiquement (mode développement) : {}", savedUser.getEmail());
             return savedUser;
         }
@@ -113,10 +122,15 @@ public class UserService {
         Optional<User> userOpt = userRepository.findByVerificationToken(token);
         if (userOpt.isPresent()) {
             User user = userOpt.get();
+            UserStatus previousStatus = user.getStatus();
             user.setEmailVerified(true);
             user.setStatus(UserStatus.ACTIVE);
             user.setVerificationToken(null);
             User savedUser = userRepository.save(user);
+            userIdentityCache.evict(savedUser);
+            if (previousStatus != UserStatus.ACTIVE) {
+                eventPublisher.publishEvent(UserEvent.statusChanged(savedUser, previousStatus));
+            }
             
             // Envoyer l'email de bienvenue de manière asynchrone
             try {
@@ -131,8 +145,9 @@ public class UserService {
         return false;
     }
 
+    // Lecture seule: copie détachée servie par le cache, à ne pas sauvegarder
     public Optional<User> findByEmail(String email) {
-        return userRepository.findByEmail(email);
+        return userIdentityCache.findByEmail(email);
     }
 
     public void updateLastLogin(String email) {
@@ -140,6 +155,7 @@ public class UserService {
         userOpt.ifPresent(user -> {
             user.setLastLogin(LocalDateTime.now());
             userRepository.save(user);
+            userIdentityCache.evict(user);
         });
     }
 
@@ -181,14 +197,20 @@ public class UserService {
             agence.setZonesCouverture(updateDto.getZonesCouverture());
         }
 
+        userIdentityCache.evict(user);
         return userRepository.save(user);
     }
 
     public void deleteUser(Long id) {
         User user = userRepository.findById(id)
             .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
+        UserStatus previousStatus = user.getStatus();
         user.setStatus(UserStatus.DELETED);
         userRepository.save(user);
+        userIdentityCache.evict(user);
+        if (previousStatus != UserStatus.DELETED) {
+            eventPublisher.publishEvent(UserEvent.statusChanged(user, previousStatus));
+        }
     }
 
     public List<User> searchUsers(String keyword) {
@@ -198,13 +220,20 @@ public class UserService {
     public void verifyAgency(Long agencyId) {
         AgenceImmobiliere agence = agenceImmobiliereRepository.findById(agencyId)
             .orElseThrow(() -> new RuntimeException("Agence non trouvée"));
+        boolean alreadyVerified = agence.isVerified();
         agence.setVerified(true);
         agenceImmobiliereRepository.save(agence);
+        userIdentityCache.evict(agence);
+        if (!alreadyVerified) {
+            eventPublisher.publishEvent(UserEvent.agencyVerified(agence));
+        }
     }
 
     public User updateCurrentUser(String email, UserUpdateRequest updateRequest) {
         User user = userRepository.findByEmail(email)
             .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
+        // Ancien email: c'est la clé en cache
+        userIdentityCache.evict(user);
 
         // Update basic fields only if provided (partial update)
         if (updateRequest.getNom() != null) {
@@ -219,6 +248,8 @@ public class UserService {
                 throw new RuntimeException("Cet email est déjà utilisé");
             }
             user.setEmail(updateRequest.getEmail());
+            // Les tokens en cours portent l'ancien email en sujet
+            tokenRevocationCache.revoke(user.getId());
         }
         if (updateRequest.getTelephone() != null) {
             user.setTelephone(updateRequest.getTelephone());
@@ -249,6 +280,7 @@ public class UserService {
         if (user instanceof ClientAbonne client) {
             if (updateRequest.getSubscriptionType() != null) {
                 client.setSubscriptionType(SubscriptionType.valueOf(updateRequest.getSubscriptionType()));
+                searchQuotaLimiter.updateLimit(client.getId(), client.getSubscriptionType());
             }
         }
 
@@ -301,15 +333,27 @@ public class UserService {
             throw new RuntimeException("Mot de passe actuel incorrect");
         }
 
-        // Check if new password is different from current
-        if (passwordEncoder.matches(newPassword, user.getMotDePasse())) {
+        // Le mot de passe actuel vient d'être vérifié: une comparaison suffit, sans second hachage
+        if (newPassword.equals(currentPassword)) {
             throw new RuntimeException("Le nouveau mot de passe doit être différent de l'ancien");
         }
 
         // Update password
         user.setMotDePasse(passwordEncoder.encode(newPassword));
         userRepository.save(user);
+        userIdentityCache.evict(user);
         
         log.info("Mot de passe changé avec succès pour l'utilisateur: {}", email);
     }
+
+    // Appelé par DaoAuthenticationProvider après une connexion réussie, hachage déjà refait
+    public UserDetails rehashPassword(UserDetails userDetails, String encodedPassword) {
+        User user = userRepository.findByEmail(userDetails.getUsername())
+            .orElseThrow(() -> new RuntimeException("Utilisateur non trouvé"));
+        user.setMotDePasse(encodedPassword);
+        User savedUser = userRepository.save(user);
+        userIdentityCache.evict(savedUser);
+        log.info("Mot de passe re-haché avec les paramètres actuels pour l'utilisateur: {}", user.getEmail());
+        return savedUser;
+    }
 }
\ No newline at end of file
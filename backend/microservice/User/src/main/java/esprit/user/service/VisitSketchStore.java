@@ -0,0 +1,253 @@
+package esprit.user.service;
+
+import esprit.user.dto.StatisticsDto;
+import esprit.user.entity.VisitSketch;
+import esprit.user.event.PlatformVisitEvent;
+import esprit.user.repository.PlatformVisitRepository;
+import esprit.user.repository.VisitSketchRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Esquisses HyperLogLog journalières des visiteurs distincts (IP) et des sessions distinctes.
+// Les jours de la fenêtre restent en mémoire et sont réécrits périodiquement dans visit_sketches;
+// l'écriture fusionne avec la ligne existante (maximum des registres), donc plusieurs instances
+// peuvent alimenter la même journée sans se perdre de visiteurs.
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class VisitSketchStore {
+
+    private final VisitSketchRepository visitSketchRepository;
+    private final PlatformVisitRepository platformVisitRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${app.visits.sketches.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.visits.sketches.window-days:30}")
+    private int windowDays;
+
+    private final Map<VisitSketch.Kind, Map<LocalDate, HyperLogLog>> sketches = new EnumMap<>(VisitSketch.Kind.class);
+    private final Map<VisitSketch.Kind, Set<LocalDate>> dirty = new EnumMap<>(VisitSketch.Kind.class);
+    private volatile boolean ready;
+
+    {
+        for (VisitSketch.Kind kind : VisitSketch.Kind.values()) {
+            sketches.put(kind, new ConcurrentHashMap<>());
+            dirty.put(kind, ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            log.info("Esquisses de visiteurs désactivées");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        LocalDate today = LocalDate.now();
+        LocalDate windowStart = today.minusDays(windowDays - 1);
+        int backfilled = 0;
+        try {
+            Map<VisitSketch.Kind, Set<LocalDate>> persisted = new EnumMap<>(VisitSketch.Kind.class);
+            for (VisitSketch.Kind kind : VisitSketch.Kind.values()) {
+                persisted.put(kind, new HashSet<>());
+            }
+            for (VisitSketch sketch : visitSketchRepository.findByVisitDateBetween(windowStart, today)) {
+                mergeInto(sketch.getKind(), sketch.getVisitDate(), sketch.getRegisters());
+                persisted.get(sketch.getKind()).add(sketch.getVisitDate());
+            }
+            // Journées visitées avant la mise en place des esquisses: reconstruites une fois depuis les visites
+            for (LocalDate date = windowStart; !date.isAfter(today); date = date.plusDays(1)) {
+                for (VisitSketch.Kind kind : VisitSketch.Kind.values()) {
+                    if (!persisted.get(kind).contains(date) && backfill(kind, date)) {
+                        backfilled++;
+                    }
+                }
+            }
+        } catch (DataAccessException e) {
+            // Les statistiques gardent le COUNT(DISTINCT) du jour tant que les esquisses ne sont pas chargées
+            log.warn("Impossible de charger les esquisses de visiteurs: {}", e.getMessage());
+            return;
+        }
+        ready = true;
+        flush();
+        log.info("Esquisses de visiteurs chargées en {} ms ({} journées reconstruites)",
+            System.currentTimeMillis() - start, backfilled);
+    }
+
+    private boolean backfill(VisitSketch.Kind kind, LocalDate date) {
+        List<String> values = kind == VisitSketch.Kind.IP
+            ? platformVisitRepository.findDistinctIpAddressesByDate(date)
+            : platformVisitRepository.findDistinctSessionIdsByDate(date);
+        if (values.isEmpty()) {
+            return false;
+        }
+        HyperLogLog sketch = new HyperLogLog();
+        values.forEach(sketch::add);
+        mergeInto(kind, date, sketch.toBytes());
+        dirty.get(kind).add(date);
+        return true;
+    }
+
+    // Alimenté dès le démarrage: les visites écrites pendant le chargement ne sont pas perdues
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onVisitEvent(PlatformVisitEvent event) {
+        if (!enabled || event.getType() != PlatformVisitEvent.Type.RECORDED || event.getVisitDate() == null) {
+            return;
+        }
+        add(VisitSketch.Kind.IP, event.getVisitDate(), event.getIpAddress());
+        add(VisitSketch.Kind.SESSION, event.getVisitDate(), event.getSessionId());
+    }
+
+    private void add(VisitSketch.Kind kind, LocalDate date, String value) {
+        if (value == null) {
+            return;
+        }
+        HyperLogLog sketch = sketches.get(kind).computeIfAbsent(date, d -> new HyperLogLog());
+        boolean changed;
+        synchronized (sketch) {
+            changed = sketch.add(value);
+        }
+        if (changed) {
+            dirty.get(kind).add(date);
+        }
+    }
+
+    public long uniqueVisitors(LocalDate from, LocalDate to) {
+        return estimate(VisitSketch.Kind.IP, from, to);
+    }
+
+    public long uniqueSessions(LocalDate from, LocalDate to) {
+        return estimate(VisitSketch.Kind.SESSION, from, to);
+    }
+
+    // Visiteurs uniques du jour, de la semaine et du mois (erreur type HyperLogLog.STANDARD_ERROR);
+    // COUNT(DISTINCT) exacts tant que les esquisses ne sont pas chargées
+    public void fillUniqueCounts(StatisticsDto stats, LocalDate today) {
+        LocalDate weekStart = today.minusDays(6);
+        LocalDate monthStart = today.minusDays(29);
+        if (isReady()) {
+            stats.setUniqueVisitorsToday(uniqueVisitors(today, today));
+            stats.setUniqueVisitorsThisWeek(uniqueVisitors(weekStart, today));
+            stats.setUniqueVisitorsThisMonth(uniqueVisitors(monthStart, today));
+            stats.setUniqueSessionsToday(uniqueSessions(today, today));
+            return;
+        }
+        stats.setUniqueVisitorsToday(platformVisitRepository.countUniqueVisitorsByDate(today));
+        stats.setUniqueVisitorsThisWeek(platformVisitRepository.countUniqueVisitorsBetween(weekStart, today));
+        stats.setUniqueVisitorsThisMonth(platformVisitRepository.countUniqueVisitorsBetween(monthStart, today));
+        stats.setUniqueSessionsToday(platformVisitRepository.countUniqueSessionsByDate(today));
+    }
+
+    // Union des journées [from, to]: la fenêtre vient de la mémoire, les jours plus anciens de la base
+    public long estimate(VisitSketch.Kind kind, LocalDate from, LocalDate to) {
+        HyperLogLog union = new HyperLogLog();
+        LocalDate windowStart = LocalDate.now().minusDays(windowDays - 1);
+        Map<LocalDate, HyperLogLog> inMemory = sketches.get(kind);
+        for (LocalDate date = from.isBefore(windowStart) ? windowStart : from; !date.isAfter(to); date = date.plusDays(1)) {
+            HyperLogLog sketch = inMemory.get(date);
+            if (sketch != null) {
+                synchronized (sketch) {
+                    union.merge(sketch);
+                }
+            }
+        }
+        if (from.isBefore(windowStart)) {
+            LocalDate end = to.isBefore(windowStart) ? to : windowStart.minusDays(1);
+            for (VisitSketch sketch : visitSketchRepository.findByKindAndVisitDateBetween(kind, from, end)) {
+                union.merge(sketch.getRegisters());
+            }
+        }
+        return union.estimate();
+    }
+
+    @Scheduled(fixedDelayString = "${app.visits.sketches.flush-interval-ms:60000}")
+    public void flush() {
+        if (!isReady()) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        LocalDate windowStart = today.minusDays(windowDays - 1);
+        for (VisitSketch.Kind kind : VisitSketch.Kind.values()) {
+            Map<LocalDate, HyperLogLog> inMemory = sketches.get(kind);
+            Set<LocalDate> pending = dirty.get(kind);
+            // Le jour courant est toujours relu, même sans visite locale, pour suivre les autres instances
+            Set<LocalDate> dates = new HashSet<>(pending);
+            dates.add(today);
+            for (LocalDate date : dates) {
+                // Retiré avant la copie: un ajout concurrent remarque la journée pour le passage suivant
+                pending.remove(date);
+                HyperLogLog sketch = inMemory.computeIfAbsent(date, d -> new HyperLogLog());
+                byte[] registers;
+                synchronized (sketch) {
+                    registers = sketch.toBytes();
+                }
+                try {
+                    byte[] merged = transactionTemplate.execute(status -> persist(kind, date, registers));
+                    // Les visiteurs vus par les autres instances rejoignent l'esquisse locale
+                    synchronized (sketch) {
+                        sketch.merge(merged);
+                    }
+                } catch (DataAccessException e) {
+                    pending.add(date);
+                    log.warn("Échec de l'écriture de l'esquisse {} du {}: {}", kind, date, e.getMessage());
+                }
+            }
+            inMemory.keySet().removeIf(date -> date.isBefore(windowStart) && !pending.contains(date));
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private byte[] persist(VisitSketch.Kind kind, LocalDate date, byte[] registers) {
+        Optional<VisitSketch> existing = visitSketchRepository.findByVisitDateAndKind(date, kind);
+        if (existing.isEmpty()) {
+            if (HyperLogLog.fromBytes(registers).isEmpty()) {
+                return registers;
+            }
+            visitSketchRepository.save(new VisitSketch(date, kind, registers));
+            return registers;
+        }
+        VisitSketch row = existing.get();
+        HyperLogLog merged = HyperLogLog.fromBytes(row.getRegisters());
+        if (merged.merge(registers)) {
+            row.setRegisters(merged.toBytes());
+            row.setUpdatedAt(LocalDateTime.now());
+        }
+        return row.getRegisters();
+    }
+
+    private void mergeInto(VisitSketch.Kind kind, LocalDate date, byte[] registers) {
+        HyperLogLog sketch = sketches.get(kind).computeIfAbsent(date, d -> new HyperLogLog());
+        synchronized (sketch) {
+            sketch.merge(registers);
+        }
+    }
+}
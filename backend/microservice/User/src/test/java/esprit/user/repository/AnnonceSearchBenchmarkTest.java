@@ -0,0 +1,250 @@
+package esprit.user.repository;
+
+import esprit.user.dto.AnnonceDto.AnnonceSearchDto;
+import esprit.user.entity.Annonce;
+import esprit.user.service.TextNormalizer;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Compare la requête "IS NULL OR" historique et les Specifications sur un jeu de données généré.
+// Lancement: mvn test -Dtest=AnnonceSearchBenchmarkTest -Dbenchmark=true [-Dbenchmark.rows=500000]
+// Pour MySQL, surcharger spring.datasource.* et le dialecte en ligne de commande.
+@SpringBootTest
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestPropertySource(properties = {
+    "spring.datasource.url=jdbc:h2:mem:benchmarkdb;DB_CLOSE_DELAY=-1",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.show-sql=false",
+    "spring.mail.host=localhost",
+    "app.search.index.enabled=false",
+    "app.search.facets.enabled=false"
+})
+public class AnnonceSearchBenchmarkTest {
+
+    // Requête catch-all utilisée par searchAnnonces avant les Specifications
+    private static final String LEGACY_QUERY = "SELECT a FROM Annonce a WHERE " +
+        "(:titre IS NULL OR LOWER(a.titre) LIKE LOWER(CONCAT('%', :titre, '%'))) AND " +
+        "(:motsCles IS NULL OR LOWER(a.titre) LIKE LOWER(CONCAT('%', :motsCles, '%')) " +
+        "    OR LOWER(a.description) LIKE LOWER(CONCAT('%', :motsCles, '%'))) AND " +
+        "(:ville IS NULL OR LOWER(a.ville) LIKE LOWER(CONCAT('%', :ville, '%'))) AND " +
+        "(:typeBien IS NULL OR a.typeBien = :typeBien) AND " +
+        "(:typeTransaction IS NULL OR a.typeTransaction = :typeTransaction) AND " +
+        "(:prixMin IS NULL OR a.prix >= :prixMin) AND " +
+        "(:prixMax IS NULL OR a.prix <= :prixMax) AND " +
+        "(:surfaceMin IS NULL OR a.surface >= :surfaceMin) AND " +
+        "(:surfaceMax IS NULL OR a.surface <= :surfaceMax) AND " +
+        "(:nombreChambres IS NULL OR a.nombreChambres >= :nombreChambres) AND " +
+        "(:nombreSallesBain IS NULL OR a.nombreSallesBain >= :nombreSallesBain) AND " +
+        "(:garage IS NULL OR a.garage = :garage) AND " +
+        "(:jardin IS NULL OR a.jardin = :jardin) AND " +
+        "(:piscine IS NULL OR a.piscine = :piscine) AND " +
+        "(:climatisation IS NULL OR a.climatisation = :climatisation) AND " +
+        "(:ascenseur IS NULL OR a.ascenseur = :ascenseur) AND " +
+        "a.status = :status ORDER BY a.dateCreation DESC";
+
+    private static final String[] VILLES = {"Tunis", "Sfax", "Sousse", "Nabeul", "Bizerte", "Monastir", "Ariana", "Gabes", "La Marsa"};
+    private static final int WARMUP = 20;
+    private static final int ITERATIONS = 200;
+
+    @Autowired
+    private AnnonceRepository annonceRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @BeforeAll
+    void seed() {
+        int rows = Integer.getInteger("benchmark.rows", 500_000);
+        jdbcTemplate.update("INSERT INTO users (nom, prenom, email, mot_de_passe, adresse, user_type, status, email_verified) " +
+            "VALUES ('Bench', 'Mark', 'bench@test.com', 'x', 'Tunis', 'UTILISATEUR', 'ACTIVE', true)");
+        Long userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE email = 'bench@test.com'", Long.class);
+
+        Random random = new Random(42);
+        Annonce.TypeBien[] typesBien = Annonce.TypeBien.values();
+        Annonce.TypeTransaction[] typesTransaction = Annonce.TypeTransaction.values();
+        Annonce.StatusAnnonce[] statuts = Annonce.StatusAnnonce.values();
+        String sql = "INSERT INTO annonces (titre, description, prix, type_bien, type_transaction, adresse, ville, code_postal, " +
+            "ville_normalisee, surface, nombre_chambres, nombre_salles_bain, garage, jardin, piscine, climatisation, ascenseur, status, " +
+            "user_id, nom_contact, telephone_contact, vues, favoris, date_creation, date_miseajour) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0, 0, ?, ?)";
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> batch = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            Annonce.TypeBien typeBien = typesBien[random.nextInt(typesBien.length)];
+            String ville = VILLES[random.nextInt(VILLES.length)];
+            // 80% des annonces sont actives, comme en production
+            Annonce.StatusAnnonce status = random.nextInt(10) < 8 ? Annonce.StatusAnnonce.ACTIVE : statuts[random.nextInt(statuts.length)];
+            Timestamp date = Timestamp.valueOf(now.minusMinutes(random.nextInt(525_600)));
+            batch.add(new Object[] {
+                typeBien.getDisplayName() + " " + i + " à " + ville,
+                "Annonce générée pour le benchmark de recherche, bien numéro " + i + (random.nextInt(20) == 0 ? " avec vue mer" : ""),
+                BigDecimal.valueOf(20_000 + random.nextInt(980_000)),
+                typeBien.name(),
+                typesTransaction[random.nextInt(typesTransaction.length)].name(),
+                "Rue " + i,
+                ville,
+                "1000",
+                TextNormalizer.villeKey(ville),
+                30 + random.nextInt(470),
+                random.nextInt(6),
+                1 + random.nextInt(3),
+                random.nextBoolean(),
+                random.nextBoolean(),
+                random.nextInt(5) == 0,
+                random.nextBoolean(),
+                random.nextBoolean(),
+                status.name(),
+                userId,
+                "Contact",
+                "12345678",
+                date,
+                date
+            });
+            if (batch.size() == 5_000) {
+                jdbcTemplate.batchUpdate(sql, batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, batch);
+        }
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @Test
+    void compareLegacyQueryWithSpecifications() {
+        Pageable pageable = PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, "dateCreation"));
+        Map<String, AnnonceSearchDto> scenarios = new LinkedHashMap<>();
+        scenarios.put("aucun filtre", new AnnonceSearchDto());
+
+        AnnonceSearchDto ville = new AnnonceSearchDto();
+        ville.setVille("Sousse");
+        scenarios.put("ville", ville);
+
+        AnnonceSearchDto villeMinuscules = new AnnonceSearchDto();
+        villeMinuscules.setVille("la marsa");
+        scenarios.put("ville en minuscules", villeMinuscules);
+
+        AnnonceSearchDto prix = new AnnonceSearchDto();
+        prix.setPrixMin(new BigDecimal("100000"));
+        prix.setPrixMax(new BigDecimal("150000"));
+        scenarios.put("fourchette de prix", prix);
+
+        AnnonceSearchDto surface = new AnnonceSearchDto();
+        surface.setSurfaceMin(120);
+        surface.setSurfaceMax(140);
+        surface.setTypeTransaction(Annonce.TypeTransaction.LOCATION);
+        scenarios.put("surface + transaction", surface);
+
+        AnnonceSearchDto combine = new AnnonceSearchDto();
+        combine.setVille("Tunis");
+        combine.setTypeBien(Annonce.TypeBien.VILLA);
+        combine.setPrixMax(new BigDecimal("300000"));
+        combine.setPiscine(true);
+        scenarios.put("ville + type + prix + piscine", combine);
+
+        AnnonceSearchDto motsCles = new AnnonceSearchDto();
+        motsCles.setMotsCles("vue mer");
+        scenarios.put("mots-clés", motsCles);
+
+        System.out.printf("%n%-32s %12s %12s %12s %12s%n", "scénario", "legacy p50", "legacy p99", "spec p50", "spec p99");
+        scenarios.forEach((name, search) -> {
+            Function<AnnonceSearchDto, Page<Annonce>> legacy = s -> legacySearch(s, pageable);
+            Function<AnnonceSearchDto, Page<Annonce>> spec = s -> annonceRepository.findAll(
+                AnnonceSpecifications.forSearch(s, Annonce.StatusAnnonce.ACTIVE), pageable);
+
+            // Mêmes résultats avant de comparer les temps
+            Long legacyTotal = transactionTemplate.execute(tx -> legacy.apply(search).getTotalElements());
+            Long specTotal = transactionTemplate.execute(tx -> spec.apply(search).getTotalElements());
+            assertEquals(legacyTotal, specTotal, name);
+
+            long[] legacyTimes = measure(search, legacy);
+            long[] specTimes = measure(search, spec);
+            System.out.printf("%-32s %10.2fms %10.2fms %10.2fms %10.2fms%n", name,
+                percentile(legacyTimes, 50), percentile(legacyTimes, 99),
+                percentile(specTimes, 50), percentile(specTimes, 99));
+        });
+    }
+
+    private long[] measure(AnnonceSearchDto search, Function<AnnonceSearchDto, Page<Annonce>> query) {
+        long[] times = new long[ITERATIONS];
+        for (int i = 0; i < WARMUP + ITERATIONS; i++) {
+            long start = System.nanoTime();
+            transactionTemplate.execute(tx -> query.apply(search).getNumberOfElements());
+            if (i >= WARMUP) {
+                times[i - WARMUP] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(times);
+        return times;
+    }
+
+    private static double percentile(long[] sortedNanos, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(index, 0)] / 1_000_000.0;
+    }
+
+    private Page<Annonce> legacySearch(AnnonceSearchDto s, Pageable pageable) {
+        TypedQuery<Annonce> query = entityManager.createQuery(LEGACY_QUERY, Annonce.class);
+        TypedQuery<Long> count = entityManager.createQuery(
+            LEGACY_QUERY.replace("SELECT a FROM", "SELECT COUNT(a) FROM").replace(" ORDER BY a.dateCreation DESC", ""), Long.class);
+        for (TypedQuery<?> q : List.of(query, count)) {
+            q.setParameter("titre", s.getTitre());
+            q.setParameter("motsCles", s.getMotsCles());
+            q.setParameter("ville", s.getVille());
+            q.setParameter("typeBien", s.getTypeBien());
+            q.setParameter("typeTransaction", s.getTypeTransaction());
+            q.setParameter("prixMin", s.getPrixMin());
+            q.setParameter("prixMax", s.getPrixMax());
+            q.setParameter("surfaceMin", s.getSurfaceMin());
+            q.setParameter("surfaceMax", s.getSurfaceMax());
+            q.setParameter("nombreChambres", s.getNombreChambresMin());
+            q.setParameter("nombreSallesBain", s.getNombreSallesBainMin());
+            q.setParameter("garage", s.getGarage());
+            q.setParameter("jardin", s.getJardin());
+            q.setParameter("piscine", s.getPiscine());
+            q.setParameter("climatisation", s.getClimatisation());
+            q.setParameter("ascenseur", s.getAscenseur());
+            q.setParameter("status", Annonce.StatusAnnonce.ACTIVE);
+        }
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize());
+        return new PageImpl<>(query.getResultList(), pageable, count.getSingleResult());
+    }
+}
@@ -0,0 +1,210 @@
+package esprit.user.service;
+
+import esprit.user.dto.AnnonceDto.AnnonceScrollDto;
+import esprit.user.dto.AnnonceDto.AnnonceSearchDto;
+import esprit.user.dto.AnnonceDto.AnnonceSearchResultDto;
+import esprit.user.dto.AnnonceDto.AnnonceStatsDto;
+import esprit.user.dto.AnnonceDto.AnnonceSummaryDto;
+import esprit.user.entity.Annonce;
+import esprit.user.event.AnnonceEvent;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Nombre de requêtes SQL par page de résultats, quel que soit le nombre d'annonces affichées
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestPropertySource(properties = {
+    "spring.datasource.url=jdbc:h2:mem:querycountdb;DB_CLOSE_DELAY=-1",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "spring.mail.host=localhost",
+    "app.search.index.enabled=false",
+    "app.search.facets.enabled=false"
+})
+public class AnnonceServiceQueryCountTest {
+
+    private static final int PAGE_SIZE = 20;
+
+    @Autowired
+    private AnnonceService annonceService;
+
+    @Autowired
+    private AnnonceDtoCache annonceDtoCache;
+
+    @Autowired
+    private AnnonceRankings annonceRankings;
+
+    @Autowired
+    private AnnonceStatsCache annonceStatsCache;
+
+    @Autowired
+    private UserIdentityCache userIdentityCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeAll
+    void seed() {
+        // Plusieurs créateurs pour qu'un chargement ligne par ligne se remarque
+        for (int u = 0; u < 5; u++) {
+            jdbcTemplate.update("INSERT INTO users (nom, prenom, email, mot_de_passe, adresse, user_type, status, email_verified) " +
+                "VALUES (?, ?, ?, 'x', 'Tunis', 'UTILISATEUR', 'ACTIVE', true)", "Nom" + u, "Prenom" + u, "user" + u + "@test.com");
+        }
+        List<Long> userIds = jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id", Long.class);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < 30; i++) {
+            jdbcTemplate.update("INSERT INTO annonces (titre, description, prix, type_bien, type_transaction, adresse, ville, " +
+                    "code_postal, status, user_id, nom_contact, telephone_contact, vues, favoris, date_creation, date_miseajour) " +
+                    "VALUES (?, 'Description', 100000, 'VILLA', 'VENTE', 'Rue', 'Tunis', '1000', 'ACTIVE', ?, 'Contact', '12345678', 0, 0, ?, ?)",
+                "Annonce " + i, userIds.get(i % userIds.size()), now, now);
+        }
+        List<Long> annonceIds = jdbcTemplate.queryForList("SELECT id FROM annonces", Long.class);
+        for (Long annonceId : annonceIds) {
+            for (int k = 0; k < 3; k++) {
+                jdbcTemplate.update("INSERT INTO annonce_images (annonce_id, image_url) VALUES (?, ?)",
+                    annonceId, "/uploads/" + annonceId + "-" + k + ".jpg");
+            }
+        }
+    }
+
+    @BeforeEach
+    void resetStatistics() {
+        // Chaque test mesure le chemin froid, sans résumés déjà en cache
+        annonceDtoCache.clear();
+        annonceStatsCache.clear();
+        userIdentityCache.clear();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void searchPageUsesConstantNumberOfStatements() {
+        AnnonceSearchDto search = new AnnonceSearchDto();
+        search.setSize(PAGE_SIZE);
+
+        AnnonceSearchResultDto result = annonceService.searchAnnonces(search);
+
+        assertEquals(PAGE_SIZE, result.getPage().getNumberOfElements());
+        assertPopulated(result.getPage().getContent());
+        // Page + créateurs (jointure), COUNT(*), images de la page (un IN)
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void scrollPageUsesConstantNumberOfStatements() {
+        AnnonceSearchDto search = new AnnonceSearchDto();
+        search.setSize(PAGE_SIZE);
+
+        AnnonceScrollDto result = annonceService.scrollAnnonces(search, null);
+
+        assertEquals(PAGE_SIZE, result.getContent().size());
+        assertPopulated(result.getContent());
+        // Pas de COUNT(*) en mode curseur
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void warmSearchPageSkipsImageLoading() {
+        AnnonceSearchDto search = new AnnonceSearchDto();
+        search.setSize(PAGE_SIZE);
+        annonceService.searchAnnonces(search);
+        statistics.clear();
+
+        AnnonceSearchResultDto result = annonceService.searchAnnonces(search);
+
+        assertPopulated(result.getPage().getContent());
+        // Résumés servis par le cache: il ne reste que la page et le COUNT(*)
+        assertEquals(2, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void warmPopularAnnoncesServedFromMemory() {
+        // Lignes insérées en SQL après le démarrage: seul le recalage les fait entrer dans le classement
+        annonceRankings.reconcile();
+        annonceService.getPopularAnnonces(10);
+        statistics.clear();
+
+        List<AnnonceSummaryDto> result = annonceService.getPopularAnnonces(10);
+
+        assertEquals(10, result.size());
+        assertPopulated(result);
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void myStatsUseSingleGroupedQuery() {
+        AnnonceStatsDto stats = annonceService.getMyAnnonceStats("user0@test.com");
+
+        assertEquals(6, stats.getTotalAnnonces());
+        assertEquals(6, stats.getAnnoncesActives());
+        // Utilisateur + un GROUP BY status (auparavant sept requêtes de comptage et de somme)
+        assertEquals(2, statistics.getPrepareStatementCount());
+
+        statistics.clear();
+        annonceService.getMyAnnonceStats("user0@test.com");
+        // Statistiques et utilisateur servis par les caches
+        assertEquals(0, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void globalStatsUseSingleGroupedQuery() {
+        AnnonceStatsDto stats = annonceService.getGlobalStats();
+
+        assertEquals(30, stats.getTotalAnnonces());
+        assertEquals(30, stats.getAnnoncesActives());
+        assertEquals(0, stats.getPrixMoyen().compareTo(java.math.BigDecimal.valueOf(100000.0)));
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void myStatsRecomputedWhenListingChanges() {
+        Long userId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE email = 'user1@test.com'", Long.class);
+        Long annonceId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM annonces WHERE user_id = ?", Long.class, userId);
+        assertEquals(6, annonceService.getMyAnnonceStats("user1@test.com").getAnnoncesActives());
+
+        jdbcTemplate.update("UPDATE annonces SET status = 'VENDU' WHERE id = ?", annonceId);
+        try {
+            Annonce annonce = new Annonce();
+            annonce.setId(annonceId);
+            annonceStatsCache.onAnnonceEvent(new AnnonceEvent(AnnonceEvent.Type.UPDATED, annonceId, userId, annonce));
+
+            AnnonceStatsDto stats = annonceService.getMyAnnonceStats("user1@test.com");
+            assertEquals(5, stats.getAnnoncesActives());
+            assertEquals(1, stats.getAnnoncesVendues());
+        } finally {
+            jdbcTemplate.update("UPDATE annonces SET status = 'ACTIVE' WHERE id = ?", annonceId);
+            annonceStatsCache.clear();
+        }
+    }
+
+    private void assertPopulated(List<AnnonceSummaryDto> content) {
+        for (AnnonceSummaryDto dto : content) {
+            assertNotNull(dto.getCreateurNom());
+            assertNotNull(dto.getCreateurType());
+            assertTrue(dto.getPremierImage().startsWith("/uploads/"));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package esprit.user.service;
+
+import esprit.user.dto.CommentResponse;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Nombre de requêtes SQL par chargement d'un fil de commentaires, quelle que soit sa taille
+@SpringBootTest
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestPropertySource(properties = {
+    "spring.datasource.url=jdbc:h2:mem:commentcountdb;DB_CLOSE_DELAY=-1",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.properties.hibernate.generate_statistics=true",
+    "spring.mail.host=localhost"
+})
+public class CommentServiceQueryCountTest {
+
+    private static final int TOP_LEVEL = 50;
+
+    @Autowired
+    private CommentService commentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Long annonceId;
+    private Statistics statistics;
+
+    @BeforeAll
+    void seed() {
+        // Plusieurs auteurs pour qu'un chargement auteur par auteur se remarque
+        for (int u = 0; u < 6; u++) {
+            jdbcTemplate.update("INSERT INTO users (nom, prenom, email, mot_de_passe, adresse, user_type, status, email_verified) " +
+                "VALUES (?, ?, ?, 'x', 'Tunis', 'UTILISATEUR', 'ACTIVE', true)", "Nom" + u, "Prenom" + u, "author" + u + "@test.com");
+        }
+        List<Long> userIds = jdbcTemplate.queryForList("SELECT id FROM users ORDER BY id", Long.class);
+        Long ownerId = userIds.get(0);
+        LocalDateTime base = LocalDateTime.now().minusDays(1);
+        jdbcTemplate.update("INSERT INTO annonces (titre, description, prix, type_bien, type_transaction, adresse, ville, " +
+                "code_postal, status, user_id, nom_contact, telephone_contact, vues, favoris, date_creation, date_miseajour) " +
+                "VALUES ('Annonce', 'Description', 100000, 'VILLA', 'VENTE', 'Rue', 'Tunis', '1000', 'ACTIVE', ?, 'Contact', '12345678', 0, 0, ?, ?)",
+            ownerId, Timestamp.valueOf(base), Timestamp.valueOf(base));
+        annonceId = jdbcTemplate.queryForObject("SELECT id FROM annonces", Long.class);
+
+        // Chaque commentaire reçoit une réponse du propriétaire, et chaque réponse une réponse de l'auteur
+        for (int i = 0; i < TOP_LEVEL; i++) {
+            Long commentId = insertComment(userIds.get(1 + i % 5), null, 4, base.plusMinutes(i * 3L));
+            Long replyId = insertComment(ownerId, commentId, 0, base.plusMinutes(i * 3L + 1));
+            insertComment(userIds.get(1 + i % 5), replyId, 0, base.plusMinutes(i * 3L + 2));
+        }
+    }
+
+    @BeforeEach
+    void resetStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    void fullThreadUsesOneStatement() {
+        List<CommentResponse> thread = commentService.getCommentsByAnnonceId(annonceId);
+
+        assertEquals(TOP_LEVEL, thread.size());
+        // Plus récents d'abord
+        assertTrue(thread.get(0).getCreatedAt().isAfter(thread.get(TOP_LEVEL - 1).getCreatedAt()));
+        assertThread(thread);
+        // Commentaires et auteurs (jointure), sans chargement par nœud
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void threadPageUsesConstantNumberOfStatements() {
+        Page<CommentResponse> page = commentService.getCommentsByAnnonceId(annonceId, 0, 10);
+
+        assertEquals(10, page.getNumberOfElements());
+        assertEquals(TOP_LEVEL, page.getTotalElements());
+        assertThread(page.getContent());
+        // Page + auteurs, COUNT(*), réponses + auteurs
+        assertEquals(3, statistics.getPrepareStatementCount());
+    }
+
+    private void assertThread(List<CommentResponse> roots) {
+        for (CommentResponse root : roots) {
+            assertNull(root.getParentCommentId());
+            assertEquals(annonceId, root.getAnnonceId());
+            assertTrue(root.getUserName().startsWith("Prenom"));
+            assertEquals(1, root.getReplies().size());
+            CommentResponse reply = root.getReplies().get(0);
+            assertEquals(root.getId(), reply.getParentCommentId());
+            assertEquals("Prenom0 Nom0", reply.getUserName());
+            assertEquals(1, reply.getReplies().size());
+            assertEquals(root.getUserId(), reply.getReplies().get(0).getUserId());
+        }
+    }
+
+    private Long insertComment(Long userId, Long parentId, int rating, LocalDateTime createdAt) {
+        jdbcTemplate.update("INSERT INTO comments (content, rating, annonce_id, user_id, parent_comment_id, created_at, updated_at) " +
+            "VALUES ('Commentaire', ?, ?, ?, ?, ?, ?)", rating, annonceId, userId, parentId,
+            Timestamp.valueOf(createdAt), Timestamp.valueOf(createdAt));
+        return jdbcTemplate.queryForObject("SELECT MAX(id) FROM comments", Long.class);
+    }
+}
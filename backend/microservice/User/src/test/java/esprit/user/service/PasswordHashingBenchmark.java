@@ -0,0 +1,76 @@
+package esprit.user.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+// Débit de hachage (inscription, changement) et de vérification (connexion) par algorithme et coût,
+// avec autant de threads que de cœurs: le débit mesuré est celui que le pool de PasswordHashingService peut tenir.
+// Lancement: mvn test -Dtest=PasswordHashingBenchmark -Dbenchmark=true
+//   [-Dbenchmark.params=bcrypt:10,bcrypt:12,argon2:19456:2] [-Dbenchmark.threads=8]
+// Paramètres: bcrypt:<strength> ou argon2:<memory-kb>:<iterations>[:<parallelism>]
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PasswordHashingBenchmark {
+
+    private static final String PASSWORD = "MotDePasse#2024";
+
+    @Param({"bcrypt:10", "bcrypt:11", "bcrypt:12", "argon2:19456:2", "argon2:47104:1"})
+    public String parameters;
+
+    private PasswordEncoder encoder;
+    private String encoded;
+
+    @Setup
+    public void setup() {
+        String[] parts = parameters.split(":");
+        encoder = PasswordHashingService.BCRYPT.equals(parts[0])
+            ? PasswordHashingService.encoder(parts[0], Integer.parseInt(parts[1]), 19456, 2, 1)
+            : PasswordHashingService.encoder(parts[0], 10, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                parts.length > 3 ? Integer.parseInt(parts[3]) : 1);
+        encoded = encoder.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public String hash() {
+        return encoder.encode(PASSWORD);
+    }
+
+    @Benchmark
+    public boolean verify() {
+        return encoder.matches(PASSWORD, encoded);
+    }
+
+    @Test
+    void run() throws RunnerException {
+        ChainedOptionsBuilder options = new OptionsBuilder()
+            .include(PasswordHashingBenchmark.class.getName())
+            .forks(1)
+            .warmupIterations(2)
+            .warmupTime(org.openjdk.jmh.runner.options.TimeValue.seconds(2))
+            .measurementIterations(3)
+            .measurementTime(org.openjdk.jmh.runner.options.TimeValue.seconds(3))
+            .threads(Integer.getInteger("benchmark.threads", Runtime.getRuntime().availableProcessors()));
+        String params = System.getProperty("benchmark.params");
+        if (params != null) {
+            options.param("parameters", params.split(","));
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,100 @@
+package esprit.user.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Coûts minimaux: on vérifie le format des hachages et la reconnaissance des anciens, pas leur robustesse
+public class PasswordHashingServiceTest {
+
+    private static final String PASSWORD = "MotDePasse#2024";
+
+    @Test
+    void legacyBcryptHashStillMatchesAndIsUpgraded() {
+        PasswordHashingService service = service("bcrypt", 4, 1, 64);
+        String legacy = new BCryptPasswordEncoder(4).encode(PASSWORD);
+
+        assertTrue(service.matches(PASSWORD, legacy));
+        assertFalse(service.matches("autre", legacy));
+        // Sans préfixe {bcrypt}: re-haché à la prochaine connexion
+        assertTrue(service.upgradeEncoding(legacy));
+        service.shutdown();
+    }
+
+    @Test
+    void costOrAlgorithmChangeRequiresRehash() {
+        PasswordHashingService bcrypt4 = service("bcrypt", 4, 1, 64);
+        String encoded = bcrypt4.encode(PASSWORD);
+        assertTrue(encoded.startsWith("{bcrypt}"));
+        assertFalse(bcrypt4.upgradeEncoding(encoded));
+
+        PasswordHashingService bcrypt5 = service("bcrypt", 5, 1, 64);
+        assertTrue(bcrypt5.matches(PASSWORD, encoded));
+        assertTrue(bcrypt5.upgradeEncoding(encoded));
+
+        PasswordHashingService argon2 = service("argon2", 4, 1, 64);
+        assertTrue(argon2.matches(PASSWORD, encoded));
+        assertTrue(argon2.upgradeEncoding(encoded));
+        String rehashed = argon2.encode(PASSWORD);
+        assertTrue(rehashed.startsWith("{argon2}"));
+        assertTrue(argon2.matches(PASSWORD, rehashed));
+        assertFalse(argon2.upgradeEncoding(rehashed));
+
+        bcrypt4.shutdown();
+        bcrypt5.shutdown();
+        argon2.shutdown();
+    }
+
+    @Test
+    void saturatedPoolRejectsWithServiceUnavailable() throws Exception {
+        // Un thread, une place en file: une rafale de hachages coûteux déborde.
+        // Quatre appelants réellement simultanés, quel que soit le nombre de cœurs de la machine
+        PasswordHashingService service = service("bcrypt", 12, 1, 1);
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<String>> burst = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                burst.add(callers.submit(() -> {
+                    start.await();
+                    return service.encode(PASSWORD);
+                }));
+            }
+            start.countDown();
+            long rejected = 0;
+            for (Future<String> future : burst) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    ResponseStatusException cause = assertInstanceOf(ResponseStatusException.class, e.getCause());
+                    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, cause.getStatusCode());
+                    rejected++;
+                }
+            }
+            assertTrue(rejected > 0);
+        } finally {
+            callers.shutdownNow();
+            service.shutdown();
+        }
+    }
+
+    private static PasswordHashingService service(String algorithm, int bcryptStrength, int threads, int queueCapacity) {
+        // Argon2 au plus bas (8 Ko, une passe) pour garder le test rapide
+        return new PasswordHashingService(algorithm, bcryptStrength, 8, 1, 1, threads, queueCapacity, 10000);
+    }
+}
@@ -0,0 +1,89 @@
+package esprit.user.service;
+
+import esprit.user.event.PlatformVisitEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// La durée d'une visite rejoint sa ligne même quand elle est déposée avant l'écriture différée de la visite
+@SpringBootTest
+@TestPropertySource(properties = {
+    "spring.datasource.url=jdbc:h2:mem:visitwriterdb;DB_CLOSE_DELAY=-1",
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.mail.host=localhost",
+    "app.visits.ingestion.max-latency-ms=50"
+})
+public class PlatformVisitServiceTest {
+
+    @Autowired
+    private PlatformVisitService platformVisitService;
+
+    @Autowired
+    private PlatformVisitWriter platformVisitWriter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Écouteur en panne sur une page: le thread d'écriture doit y survivre
+    @TestConfiguration
+    static class FailingListenerConfig {
+
+        @EventListener
+        public void onVisit(PlatformVisitEvent event) {
+            if ("/panne".equals(event.getPageUrl())) {
+                throw new IllegalStateException("écouteur en panne");
+            }
+        }
+    }
+
+    @Test
+    void durationIsAppliedToVisitByKey() throws InterruptedException {
+        String first = platformVisitService.recordVisit("10.0.0.1", "agent", "session-1", null, "/annonces");
+        String second = platformVisitService.recordVisit("10.0.0.2", "agent", "session-2", null, "/annonces");
+        assertNotNull(first);
+        assertNotNull(second);
+        assertTrue(platformVisitService.updateVisitDuration(first, 42L));
+        assertTrue(platformVisitService.updateVisitDuration(first, 45L));
+
+        List<Long> durations = List.of();
+        for (int i = 0; i < 100 && (durations.size() < 2 || durations.get(0) == null); i++) {
+            Thread.sleep(20);
+            durations = jdbcTemplate.queryForList(
+                "SELECT duration_seconds FROM platform_visits WHERE visit_key IN (?, ?) ORDER BY ip_address",
+                Long.class, first, second);
+        }
+        assertEquals(2, durations.size());
+        assertEquals(45L, durations.get(0));
+        assertNull(durations.get(1));
+    }
+
+    @Test
+    void writerSurvivesFailingListener() throws InterruptedException {
+        long failedBefore = (Long) platformVisitWriter.metrics().get("failed");
+        assertNotNull(platformVisitService.recordVisit("10.0.1.1", "agent", "session-3", null, "/panne"));
+        String after = null;
+        Long count = 0L;
+        for (int i = 0; i < 100 && count < 2; i++) {
+            Thread.sleep(20);
+            if (after == null && (Long) platformVisitWriter.metrics().get("failed") > failedBefore) {
+                after = platformVisitService.recordVisit("10.0.1.2", "agent", "session-4", null, "/apres-panne");
+                assertNotNull(after);
+            }
+            count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM platform_visits WHERE page_url IN ('/panne', '/apres-panne')", Long.class);
+        }
+        assertEquals(2L, count);
+    }
+}